@@ -251,8 +251,8 @@ function RunningButton({
   const fetchRegisters = useRegisterStore(s => s.fetchRegisters);
   const fetchMemory = useMemoryViewStore(s => s.fetchMemoryValues);
   const stopRunning = useRunningStore(s => s.stopRunning);
-  const fetchLoad = useRunningStore(s => s.fetchLoad);
-  const toggleIsRunning = useRunningStore(s => s.toggleIsRunning);
+  const rerun = useRunningStore(s => s.rerun);
+  const setIsRunning = useRunningStore(s => s.setIsRunning);
   const fetchVarMemoryValue = useWatchStore(s => s.fetchVarMemoryValue);
   
   return (
@@ -294,9 +294,8 @@ function RunningButton({
       </button>}
       <button
         onClick={async () => {
-          await stopRunning();
-          await fetchLoad();
-          toggleIsRunning();
+          await rerun();
+          setIsRunning(true);
           useRunningStore.getState().setIsPaused(true);
         }}
         className="hover:bg-gray-100 p-2 rounded-md transition-colors"
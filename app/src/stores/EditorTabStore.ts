@@ -1,5 +1,6 @@
 import { create } from 'zustand';
 import { useProjectStore } from './ProjectStore';
+import { useRunningStore } from './RunningStore';
 import path from 'path-browserify';
 
 export interface EditorTab {
@@ -167,13 +168,16 @@ export const useEditorTabStore = create<EditorTabState>((set, get) => ({
 
   clearTabs: () => set(() => ({ tabs: [], activeTabIdx: -1 })),
 
-  setIsModified: (idx, isModified) =>
+  setIsModified: (idx, isModified) => {
+    // the loaded program no longer matches the sources, a rerun has to load them again
+    if (isModified) useRunningStore.getState().setSourcesChanged(true);
     set(state => ({
       tabs: state.tabs.map(tab => ({
         ...tab,
         isModified: tab.idx === idx ? isModified : tab.isModified,
       })),
-    })),
+    }));
+  },
 
   // Breakpoint 관련 함수들
   addBreakpoint: (idx, lineNumber) =>
@@ -36,6 +36,8 @@ interface MemoryViewState {
   totalMemorySize: number;
   loadedRanges: Set<string>;
   loadingRanges: Set<string>;
+  // generation of the last /memory.bin read, the next fetch asks only for what changed since
+  memoryGeneration: number | null;
 
   setMode: (newMode: MachineMode) => void;
   setMemoryRange: (memoryRange: { start: number; end: number }) => void;
@@ -61,6 +63,7 @@ export const useMemoryViewStore = create<MemoryViewState>((set, get) => ({
   visibleRange: { start: 0, end: 256 },
   loadedRanges: new Set(),
   loadingRanges: new Set(),
+  memoryGeneration: null,
 
 setMode: newMode => {
   const totalSize = newMode === 'SIC' ? 0x8000 : 0x100000;
@@ -73,6 +76,7 @@ setMode: newMode => {
     memoryValues: [],
     loadedRanges: new Set(),
     loadingRanges: new Set(),
+    memoryGeneration: null,
     changedNodes: new Set(),
     labels: [],
     visibleRange: { start: 0, end: 256 },
@@ -98,7 +102,13 @@ setMode: newMode => {
   })();
 },
 
-  setMemoryRange: memoryRange => set({ memoryRange }),
+  // a generation only covers the range it was read with, so a new range is read in full
+  setMemoryRange: memoryRange =>
+    set(state =>
+      state.memoryRange.start === memoryRange.start && state.memoryRange.end === memoryRange.end
+        ? { memoryRange }
+        : { memoryRange, memoryGeneration: null },
+    ),
   setMemoryValues: memoryValues => set({ memoryValues }),
   setLabels: labels => set({ labels }),
   updateMemoryNode: (index, patch) =>
@@ -227,32 +237,45 @@ setMode: newMode => {
   },
 
   fetchMemoryValues: async () => {
-    const { memoryRange } = get();
+    const { memoryRange, memoryGeneration } = get();
     try {
-      const res = await axios.post('http://localhost:9090/memory', {
-        start: memoryRange.start,
-        end: memoryRange.end,
-      });
-      const data = res.data;
-      const newValues = data.values.map((value: number) => ({
-        value: value.toString(16).toUpperCase().padStart(2, '0'),
-        status: 'normal' as const,
-      }));
+      // binary response: generation (8 bytes), then ranges of start (4), length (4) and bytes, big-endian
+      const res = await axios.post(
+        'http://localhost:9090/memory.bin',
+        {
+          start: memoryRange.start,
+          end: memoryRange.end,
+          since: memoryGeneration ?? undefined,
+        },
+        { responseType: 'arraybuffer' },
+      );
+      const view = new DataView(res.data);
+      const generation = view.getUint32(0) * 2 ** 32 + view.getUint32(4);
 
       set(state => {
         const mergedValues = [...state.memoryValues];
         const changedNodes = new Set<number>();
-        newValues.forEach((newNode: any, i: any) => {
-          const globalIndex = memoryRange.start + i;
-          const oldNode = state.memoryValues[globalIndex];
-          if (oldNode && oldNode.value !== newNode.value) {
-            changedNodes.add(globalIndex);
-          }
-          if (globalIndex < mergedValues.length) {
-            mergedValues[globalIndex] = newNode;
+        for (let offset = 8; offset < view.byteLength; ) {
+          const start = view.getUint32(offset);
+          const length = view.getUint32(offset + 4);
+          offset += 8;
+          for (let i = 0; i < length; i++) {
+            const globalIndex = start + i;
+            const newNode = {
+              value: view.getUint8(offset + i).toString(16).toUpperCase().padStart(2, '0'),
+              status: 'normal' as const,
+            };
+            const oldNode = state.memoryValues[globalIndex];
+            if (oldNode && oldNode.value !== newNode.value) {
+              changedNodes.add(globalIndex);
+            }
+            if (globalIndex < mergedValues.length) {
+              mergedValues[globalIndex] = newNode;
+            }
           }
-        });
-        return { memoryValues: mergedValues, changedNodes };
+          offset += length;
+        }
+        return { memoryValues: mergedValues, changedNodes, memoryGeneration: generation };
       });
     } catch (error) {
       console.error('메모리 값 fetch 실패:', error);
@@ -18,11 +18,14 @@ interface RunningState {
   isReady: boolean;
   loadedFiles: LoadedFile[];
   delayTime: number;
+  sourcesChanged: boolean;
   setDelayTime: (delayTime: number) => void;
   setIsRunning: (isRunning: boolean) => void;
   toggleIsRunning: () => void;
   fetchBegin: () => void;
   fetchLoad: () => Promise<void>;
+  rerun: () => Promise<void>;
+  setSourcesChanged: (sourcesChanged: boolean) => void;
   setLoadedFiles: (files: LoadedFile[]) => void;
   loadToListfileAndWatch: () => void;
   stopRunning: () => void;
@@ -78,7 +81,10 @@ export const useRunningStore = create<RunningState>((set, get) => ({
   isReady: false,
   loadedFiles: [],
   delayTime: 1000,
+  // set by an edit after the last successful /load, a rerun then has to build again
+  sourcesChanged: false,
   setDelayTime: delayTime => set({ delayTime }),
+  setSourcesChanged: sourcesChanged => set({ sourcesChanged }),
   setIsPaused: isPaused => set({ isPaused }),
   setIsRunning: isRunning => set({ isRunning }),
   toggleIsRunning: () => set(state => ({ isRunning: !state.isRunning })),
@@ -124,7 +130,7 @@ export const useRunningStore = create<RunningState>((set, get) => ({
         start: data.registers.PC,
         end: data.registers.PC + 256,
       });
-      set({ loadedFiles: files });
+      set({ loadedFiles: files, sourcesChanged: false });
       loadToListfileAndWatch();
     } else {
       // 실패 → 에러 스토어에 기록
@@ -193,6 +199,29 @@ export const useRunningStore = create<RunningState>((set, get) => ({
       }
     }
   },
+  // the server keeps the machine as it was right after the last /load, so a rerun of unchanged
+  // sources goes back to it with /restore; /begin and /load only when there is nothing to restore
+  rerun: async () => {
+    const { loadedFiles, sourcesChanged, stopRunning, fetchLoad } = get();
+    if (loadedFiles.length > 0 && !sourcesChanged) {
+      const res = await axios.post('http://localhost:9090/restore', { loaded: true });
+      const data = res.data;
+      if (data.ok) {
+        useRegisterStore.getState().setAll(data.registers);
+        const { setMemoryRange, fetchMemoryValues } = useMemoryViewStore.getState();
+        setMemoryRange({
+          start: data.registers.PC,
+          end: data.registers.PC + 256,
+        });
+        await fetchMemoryValues();
+        useWatchStore.getState().fetchVarMemoryValue();
+        return;
+      }
+      console.log('restore response: ', data);
+    }
+    await stopRunning();
+    await fetchLoad();
+  },
   loadToListfileAndWatch: async () => {
     const { loadedFiles } = get();
     const { addWatch, fetchVarMemoryValue } = useWatchStore.getState();
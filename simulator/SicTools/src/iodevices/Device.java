@@ -21,4 +21,17 @@ public class Device {
     public void reset() {
     }
 
+    /**
+     * @return the position in the underlying stream, -1 if the device has none.
+     */
+    public long position() {
+        return -1;
+    }
+
+    /**
+     * Move back (or forth) to a position returned by {@link #position()}.
+     */
+    public void seek(long position) {
+    }
+
 }
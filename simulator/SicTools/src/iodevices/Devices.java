@@ -56,6 +56,24 @@ public class Devices {
         return devices[idx].test();
     }
 
+    /**
+     * @return the position of every device, see {@link Device#position()}.
+     */
+    public long[] positions() {
+        long[] positions = new long[devices.length];
+        for (int i = 0; i < devices.length; i++)
+            positions[i] = devices[i].position();
+        return positions;
+    }
+
+    /**
+     * Move the devices back to positions returned by {@link #positions()}; -1 leaves a device as is.
+     */
+    public void seek(long[] positions) {
+        for (int i = 0; i < devices.length && i < positions.length; i++)
+            if (positions[i] >= 0) devices[i].seek(positions[i]);
+    }
+
     public Devices(int count) {
         assert count > 2;
         devices = new Device[count];
@@ -59,6 +59,30 @@ public class FileDevice extends Device {
         }
     }
 
+    // a file not opened yet is at its start
+    @Override
+    public long position() {
+        if (file == null) return 0;
+        try {
+            return file.getFilePointer();
+        } catch (IOException e) {
+            LOG.severe(String.format("Cannot get the position in file '%s'", filename));
+            return 0;
+        }
+    }
+
+    @Override
+    public void seek(long position) {
+        if (file == null && position == 0) return;
+        if (file == null) openFile();
+        if (file == null) return;
+        try {
+            file.seek(position);
+        } catch (IOException e) {
+            LOG.severe(String.format("Cannot seek in file '%s'", filename));
+        }
+    }
+
     public FileDevice(String filename) {
         this.filename = filename;
     }
@@ -1,7 +1,6 @@
 package sic.asm;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -29,8 +28,14 @@ public class ErrorCatcher {
     }
 
     public void add(AsmError err) {
-        errs.add(err);
-        Collections.sort(errs);
+        // keep errs sorted by location, after errors at the same location
+        int lo = 0, hi = errs.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (errs.get(mid).compareTo(err) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        errs.add(lo, err);
     }
 
     public void printByRow(int row) {
@@ -37,7 +37,7 @@ public class Loader {
     }
 
     public static void loadRawCode(Machine machine, int address, byte[] code) {
-        System.arraycopy(code, 0, machine.memory.memory, address, code.length);
+        machine.memory.setBytesRaw(address, code);
         machine.registers.setPC(address);
     }
 
@@ -17,6 +17,11 @@ import java.util.function.Predicate;
 public class Executor {
     public static final int MaxSpeed = 100000000; // Hz
 
+    /**
+     * Reason why {@link #runBatch(long, long)} returned.
+     */
+    public enum StopReason { LIMIT, TIMEOUT, HALT, BREAKPOINT, DATA_BREAKPOINT }
+
     public final Machine machine;
     private Timer timer;
     private int timerPeriod;        // timer period in miliseconds
@@ -119,6 +124,44 @@ public class Executor {
         }, 0, timerPeriod);
     }
 
+    /**
+     * Run synchronously on the calling thread (no timer) until the instruction limit,
+     * the time budget, a halt or a breakpoint is reached.
+     * @param maxInstructions Maximum number of instructions to execute.
+     * @param timeBudgetNanos Wall-clock budget in nanoseconds, unlimited if not positive.
+     * @return Reason why the run stopped.
+     */
+    public StopReason runBatch(long maxInstructions, long timeBudgetNanos) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        for (long i = 0; i < maxInstructions; i++) {
+            // reading the clock is not free, so only check it every 4096 instructions
+            if (timeBudgetNanos > 0 && (i & 0xFFF) == 0xFFF && System.nanoTime() - deadline >= 0) {
+                return StopReason.TIMEOUT;
+            }
+            int oldPC = machine.registers.getPC();
+
+            try {
+                machine.execute();
+
+                if (!dataBreakpoints.isEnabled()) {
+                    // Enable data breakpoints in case they got disabled because they were triggered.
+                    dataBreakpoints.enable();
+                }
+            } catch (DataBreakpointException ex) {
+                machine.registers.setPC(oldPC); // reset PC to old one - instruction didn't execute anyway
+                hasChanged = true;
+                return StopReason.DATA_BREAKPOINT;
+            }
+
+            hasChanged = true;
+            // check if the same instruction: halt J halt
+            if (oldPC == machine.registers.getPC()) return StopReason.HALT;
+            // check breakpoints
+            if (breakpoints.has(machine.registers.getPC())) return StopReason.BREAKPOINT;
+        }
+        return StopReason.LIMIT;
+    }
+
     public void start() {
         Predicate<Machine> stopPredicate = x -> false; // Never stop - no additional stop condition
         runUntil(stopPredicate);
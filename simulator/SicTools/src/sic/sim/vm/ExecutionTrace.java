@@ -0,0 +1,189 @@
+package sic.sim.vm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary trace of the executed instructions, for looking into long runs afterwards.
+ *
+ * Every instruction appends one fixed-width record of {@link #RECORD_BYTES} bytes, little endian:
+ * <pre>
+ *  0  int   PC
+ *  4  int   effective address (operand address or jump target), -1 for none
+ *  8  int   start of the memory read or write, -1 for none
+ * 12  byte  first instruction byte (opcode and ni flags)
+ * 13  byte  instruction size
+ * 14  byte  access: {@link #NONE}, {@link #READ} or {@link #WRITE}
+ * 15  byte  access length
+ * </pre>
+ * Records are numbered from 0 since the trace was created or cleared and kept in a ring of
+ * {@link #capacity()} records, the oldest are overwritten. The ring is off-heap or in a file mapped
+ * into memory, which starts with a {@link #HEADER_BYTES}-byte header (magic "SICTRACE", record size,
+ * capacity and the number of records written, updated with every record) and can be read after
+ * the simulator is gone. Recording allocates nothing.
+ */
+public final class ExecutionTrace implements Closeable {
+
+    public static final int RECORD_BYTES = 16;
+    public static final int HEADER_BYTES = 32;
+    public static final int NONE = 0, READ = 1, WRITE = 2;
+
+    private static final long MAGIC = 0x4543415254434953L;     // "SICTRACE"
+    // records per buffer, a buffer is at most 2 GiB
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final long capacity;
+    private final ByteBuffer[] segments;
+    // only for a file
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+
+    private long recorded;
+    private long next;          // slot of the next record
+
+    private ExecutionTrace(long capacity, FileChannel channel) throws IOException {
+        if (capacity <= 0) throw new IllegalArgumentException("trace capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.channel = channel;
+        segments = new ByteBuffer[(int) ((capacity + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long records = Math.min(capacity - ((long) i << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT);
+            int bytes = (int) records * RECORD_BYTES;
+            ByteBuffer segment = channel == null
+                    ? ByteBuffer.allocateDirect(bytes)
+                    : channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + ((long) i << SEGMENT_SHIFT) * RECORD_BYTES, bytes);
+            segments[i] = segment.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (channel == null) {
+            header = null;
+            return;
+        }
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(0, MAGIC);
+        header.putInt(8, RECORD_BYTES);
+        header.putLong(16, capacity);
+        header.putLong(24, 0);
+    }
+
+    /**
+     * A trace kept in off-heap memory.
+     */
+    public static ExecutionTrace offHeap(long capacity) {
+        try {
+            return new ExecutionTrace(capacity, null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);     // no file, no I/O
+        }
+    }
+
+    /**
+     * A trace written to a file (created or truncated) through a memory mapping.
+     */
+    public static ExecutionTrace mapped(Path file, long capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new ExecutionTrace(capacity, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of records written, the next record gets this number
+     */
+    public long recorded() {
+        return recorded;
+    }
+
+    /**
+     * @return the number of the oldest record still kept
+     */
+    public long first() {
+        return Math.max(0, recorded - capacity);
+    }
+
+    public void clear() {
+        recorded = 0;
+        next = 0;
+        if (header != null) header.putLong(24, 0);
+    }
+
+    void record(int pc, int opcode, int size, int target, int access, int accessAddress, int accessLength) {
+        ByteBuffer segment = segments[(int) (next >>> SEGMENT_SHIFT)];
+        int at = (int) (next & SEGMENT_MASK) * RECORD_BYTES;
+        segment.putInt(at, pc);
+        segment.putInt(at + 4, target);
+        segment.putInt(at + 8, accessAddress);
+        segment.put(at + 12, (byte) opcode);
+        segment.put(at + 13, (byte) size);
+        segment.put(at + 14, (byte) access);
+        segment.put(at + 15, (byte) accessLength);
+        if (++next == capacity) next = 0;
+        recorded++;
+        if (header != null) header.putLong(24, recorded);
+    }
+
+    // ********** Reading, n between first() and recorded() - 1 *****************
+
+    private ByteBuffer segment(long n) {
+        return segments[(int) (n % capacity >>> SEGMENT_SHIFT)];
+    }
+
+    private int offset(long n) {
+        return (int) (n % capacity & SEGMENT_MASK) * RECORD_BYTES;
+    }
+
+    public int pc(long n) {
+        return segment(n).getInt(offset(n));
+    }
+
+    public int target(long n) {
+        return segment(n).getInt(offset(n) + 4);
+    }
+
+    public int accessAddress(long n) {
+        return segment(n).getInt(offset(n) + 8);
+    }
+
+    public int opcode(long n) {
+        return segment(n).get(offset(n) + 12) & 0xFF;
+    }
+
+    public int size(long n) {
+        return segment(n).get(offset(n) + 13);
+    }
+
+    public int access(long n) {
+        return segment(n).get(offset(n) + 14);
+    }
+
+    public int accessLength(long n) {
+        return segment(n).get(offset(n) + 15);
+    }
+
+    /**
+     * Writes a file trace out and closes it; an off-heap trace is freed with the object.
+     * Stop recording to the trace first.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) return;
+        header.force();
+        for (ByteBuffer segment : segments) ((MappedByteBuffer) segment).force();
+        channel.close();
+    }
+}
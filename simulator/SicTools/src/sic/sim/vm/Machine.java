@@ -6,7 +6,8 @@ import sic.sim.breakpoints.DataBreakpointException;
 import sic.sim.breakpoints.ReadDataBreakpointException;
 import sic.sim.breakpoints.WriteDataBreakpointException;
 
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.EmptyStackException;
 
 /**
  * Pure SIC machine: only 3-byte instructions with optional ,X indexing.
@@ -31,8 +32,18 @@ public class Machine {
     private MemorySpan lastExecAddr;
     private MemorySpan lastExecRead;
     private MemorySpan lastExecWrite;
+    // when off, lastExecAddr/Read/Write are not updated (nobody is looking at them, e.g. batch runs)
+    private boolean spanTracking = true;
 
-    private Stack<Integer> addressBelowJSUB = new Stack<>();
+    // addresses below executed JSUBs, kept as a primitive stack to avoid boxing
+    private int[] addressBelowJSUB = new int[16];
+    private int jsubDepth;
+
+    // the last executed instructions for stepping back, null when off
+    private UndoLog undoLog;
+
+    // binary trace of the executed instructions, null when off
+    private ExecutionTrace trace;
 
     // ************ Constructor
 
@@ -51,6 +62,18 @@ public class Machine {
         return instructionCount;
     }
 
+    public boolean isSpanTracking() {
+        return spanTracking;
+    }
+
+    /**
+     * Enable or disable updating of lastExecAddr/Read/Write. Disabled tracking leaves the spans cleared.
+     */
+    public void setSpanTracking(boolean spanTracking) {
+        this.spanTracking = spanTracking;
+        if (!spanTracking) clearLastExecReadWrite();
+    }
+
     public MemorySpan getLastExecAddr() {
         return lastExecAddr;
     }
@@ -60,6 +83,7 @@ public class Machine {
     }
 
     private void setLastExecRead(int startAddress, int spanLength) {
+        if (!spanTracking) return;
         lastExecWrite.clear();
         lastExecRead.set(startAddress, spanLength);
     }
@@ -69,6 +93,7 @@ public class Machine {
     }
 
     private void setLastExecWrite(int startAddress, int spanLength) {
+        if (!spanTracking) return;
         lastExecRead.clear();
         lastExecWrite.set(startAddress, spanLength);
     }
@@ -90,33 +115,34 @@ public class Machine {
     }
 
     // Effective address in pure SIC: absolute 15-bit address plus optional ,X
-    private int effectiveAddr(Flags flags, int addr) {
-        if (flags.isIndexed()) {
+    // (flags is the second instruction byte, only its X bit is used; no Flags object per instruction)
+    private int effectiveAddr(int flags, int addr) {
+        if ((flags & Flags.INDEXED) != 0) {
             addr += registers.getXs();
         }
         return addr;
     }
 
     // loads/stores (pure SIC: always memory operand; no immediate/indirect)
-    private int loadWord(Flags flags, int addr15) throws ReadDataBreakpointException {
+    private int loadWord(int flags, int addr15) throws ReadDataBreakpointException {
         int addr = effectiveAddr(flags, addr15);
         setLastExecRead(addr, 3);
         return memory.getWord(addr);
     }
 
-    private int loadByte(Flags flags, int addr15) throws ReadDataBreakpointException {
+    private int loadByte(int flags, int addr15) throws ReadDataBreakpointException {
         int addr = effectiveAddr(flags, addr15);
         setLastExecRead(addr, 1);
         return memory.getByte(addr);
     }
 
-    private void storeWord(Flags flags, int addr15, int word) throws WriteDataBreakpointException {
+    private void storeWord(int flags, int addr15, int word) throws WriteDataBreakpointException {
         int addr = effectiveAddr(flags, addr15);
         setLastExecWrite(addr, 3);
         memory.setWord(addr, word);
     }
 
-    private void storeByte(Flags flags, int addr15, int _byte) throws WriteDataBreakpointException {
+    private void storeByte(int flags, int addr15, int _byte) throws WriteDataBreakpointException {
         int addr = effectiveAddr(flags, addr15);
         setLastExecWrite(addr, 1);
         memory.setByte(addr, _byte);
@@ -131,30 +157,86 @@ public class Machine {
     }
 
     public void execute() throws DataBreakpointException {
+        if (trace != null) {
+            executeTraced();
+            return;
+        }
+        executeLogged();
+    }
+
+    private void executeLogged() throws DataBreakpointException {
+        if (undoLog == null) {
+            executeInstruction();
+            return;
+        }
+        undoLog.begin(this);
+        try {
+            executeInstruction();
+        } catch (DataBreakpointException | RuntimeException e) {
+            // the instruction did not complete, there is nothing to undo
+            undoLog.discard();
+            throw e;
+        }
+        undoLog.end();
+    }
+
+    // the record needs the spans, so they are tracked for the instruction even when tracking is off
+    private void executeTraced() throws DataBreakpointException {
+        int pc = registers.getPC();
+        int opcode = memory.getByteRaw(pc);
+        int target = targetAddress(pc);
+        boolean tracking = spanTracking;
+        spanTracking = true;
+        try {
+            executeLogged();
+            if (lastExecWrite.getSpanLength() > 0)
+                trace.record(pc, opcode, 3, target,
+                        ExecutionTrace.WRITE, lastExecWrite.getStartAddress(), lastExecWrite.getSpanLength());
+            else if (lastExecRead.getSpanLength() > 0)
+                trace.record(pc, opcode, 3, target,
+                        ExecutionTrace.READ, lastExecRead.getStartAddress(), lastExecRead.getSpanLength());
+            else
+                trace.record(pc, opcode, 3, target, ExecutionTrace.NONE, -1, 0);
+        } finally {
+            spanTracking = tracking;
+            if (!tracking) clearLastExecReadWrite();
+        }
+    }
+
+    // the address the instruction at the given address operates on or jumps to, -1 if out of memory
+    private int targetAddress(int address) {
+        if (address + 3 > MAX_ADDRESS + 1) return -1;
+        if ((memory.getByteRaw(address) & 0xFC) == Opcode.RSUB) return registers.getL();
+        int b1 = memory.getByteRaw(address + 1);
+        int target = effectiveAddr(b1, ((b1 & 0x7F) << 8) | memory.getByteRaw(address + 2));
+        return target >= 0 && target <= MAX_ADDRESS ? target : -1;
+    }
+
+    private void executeInstruction() throws DataBreakpointException {
         instructionCount++;
-        lastExecRead.clear();
-        lastExecWrite.clear();
-        lastExecAddr.setStartAddress(registers.getPC());
-        lastExecAddr.setSpanLength(0);
+        if (spanTracking) {
+            lastExecRead.clear();
+            lastExecWrite.clear();
+            lastExecAddr.set(registers.getPC(), 0);
+        }
 
         // Pure SIC: always 3 bytes
         int b0 = fetch(); // opcode (ni=00 already)
         int b1 = fetch(); // x bit in MSB, high 7 bits of address
         int b2 = fetch(); // low 8 bits of address
-        lastExecAddr.setSpanLength(3);
+        if (spanTracking) lastExecAddr.setSpanLength(3);
 
-        Flags flags = new Flags(b0, b1); // our Flags keeps only X from b1
         int opcode = b0 & 0xFC;
         int addr15 = ((b1 & 0x7F) << 8) | (b2 & 0xFF);
 
-        if (execSIC(opcode, flags, addr15)) {
+        if (execSIC(opcode, b1, addr15)) {
             return;
         }
 
         invalidOpcode(b0);
     }
 
-    private boolean execSIC(int opcode, Flags flags, int operandAddr) throws DataBreakpointException {
+    private boolean execSIC(int opcode, int flags, int operandAddr) throws DataBreakpointException {
         switch (opcode) {
             // ***** stores *****
             case Opcode.STA: storeWord(flags, operandAddr, registers.getA()); break;
@@ -245,16 +327,144 @@ public class Machine {
         return true;
     }
 
+    // ********** Snapshots *****************
+
+    /**
+     * The state of a machine at some point: registers, memory (sharing its pages copy-on-write),
+     * the JSUB stack, the instruction count and the device positions.
+     */
+    public static final class Snapshot {
+        private final Registers registers = new Registers();
+        private final Memory.Image memory;
+        private final int[] addressBelowJSUB;
+        private final int instructionCount;
+        private final long[] devicePositions;
+
+        private Snapshot(Machine machine) {
+            registers.copyFrom(machine.registers);
+            memory = machine.memory.save();
+            addressBelowJSUB = Arrays.copyOf(machine.addressBelowJSUB, machine.jsubDepth);
+            instructionCount = machine.instructionCount;
+            devicePositions = machine.devices.positions();
+        }
+
+        public int getInstructionCount() {
+            return instructionCount;
+        }
+    }
+
+    /**
+     * @return bytes of the memory pages this machine and the snapshots hold (null ones are skipped),
+     *         a page shared between them counted once
+     */
+    public long memoryBytes(Snapshot... snapshots) {
+        Memory.Image[] images = new Memory.Image[snapshots.length];
+        for (int i = 0; i < snapshots.length; i++)
+            images[i] = snapshots[i] == null ? null : snapshots[i].memory;
+        return (long) memory.dataPages(images) * Memory.PAGE_SIZE;
+    }
+
+    /**
+     * @return the current state, O(pages) as the memory is not copied.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Return to a snapshot of this (or another) machine; only the pages written since are touched.
+     */
+    public void restore(Snapshot snapshot) {
+        registers.copyFrom(snapshot.registers);
+        memory.restore(snapshot.memory);
+        if (addressBelowJSUB.length < snapshot.addressBelowJSUB.length)
+            addressBelowJSUB = new int[snapshot.addressBelowJSUB.length];
+        System.arraycopy(snapshot.addressBelowJSUB, 0, addressBelowJSUB, 0, snapshot.addressBelowJSUB.length);
+        jsubDepth = snapshot.addressBelowJSUB.length;
+        instructionCount = snapshot.instructionCount;
+        devices.seek(snapshot.devicePositions);
+        clearLastExecReadWrite();
+        if (undoLog != null) undoLog.clear();
+    }
+
+    // ********** Reverse execution *****************
+
+    /**
+     * Keep an undo log of the last executed instructions for {@link #stepBack()}.
+     * @param instructions how many instructions can be undone, 0 turns the log off
+     */
+    public void setUndoCapacity(int instructions) {
+        undoLog = instructions > 0 ? new UndoLog(instructions) : null;
+        memory.setUndoLog(undoLog);
+    }
+
+    /**
+     * @return the undo log, null when off
+     */
+    public UndoLog getUndoLog() {
+        return undoLog;
+    }
+
+    /**
+     * Undo the last executed instruction: registers, the written memory, the JSUB stack and the
+     * instruction count go back to what they were before it. Devices are not rewound.
+     * @return false if there is nothing (more) to undo
+     */
+    public boolean stepBack() {
+        if (undoLog == null || !undoLog.undo(this)) return false;
+        clearLastExecReadWrite();
+        return true;
+    }
+
+    int jsubDepth() {
+        return jsubDepth;
+    }
+
+    // the entry a JSUB would overwrite next
+    int jsubSlot() {
+        return jsubDepth < addressBelowJSUB.length ? addressBelowJSUB[jsubDepth] : 0;
+    }
+
+    // the stack only grows, so an earlier depth always fits
+    void restoreJsub(int depth, int slot) {
+        jsubDepth = depth;
+        if (depth < addressBelowJSUB.length) addressBelowJSUB[depth] = slot;
+    }
+
+    void setInstructionCount(int instructionCount) {
+        this.instructionCount = instructionCount;
+    }
+
+    // ********** Tracing *****************
+
+    /**
+     * Record every executed instruction to the trace, null turns tracing off. The machine does not
+     * close the trace.
+     */
+    public void setTrace(ExecutionTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @return the trace, null when off
+     */
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
+
     // ********** Step over functionality *****************
 
     /** Push the address below current JSUB to the stack, so we can step out later. */
     private void pushJSUB() {
-        this.addressBelowJSUB.push(this.registers.getPC());
+        if (jsubDepth == addressBelowJSUB.length)
+            addressBelowJSUB = Arrays.copyOf(addressBelowJSUB, 2 * jsubDepth);
+        addressBelowJSUB[jsubDepth++] = this.registers.getPC();
     }
 
     /** Pop the last address below current JSUB (on RSUB). */
     private void popJSUB() {
-        this.addressBelowJSUB.pop();
+        if (jsubDepth == 0) throw new EmptyStackException();
+        jsubDepth--;
     }
 
     /**
@@ -262,7 +472,7 @@ public class Machine {
      * @return null if no item on stack - no JSUB encountered, otherwise last address.
      */
     public Integer getAddressBelowLastJSUB() {
-        if (this.addressBelowJSUB.isEmpty()) return null;
-        else return this.addressBelowJSUB.peek();
+        if (jsubDepth == 0) return null;
+        else return this.addressBelowJSUB[jsubDepth - 1];
     }
 }
@@ -2,76 +2,299 @@ package sic.sim.vm;
 
 import sic.common.Conversion;
 import sic.common.Logger;
-import sic.common.SICXE;
 import sic.sim.breakpoints.DataBreakpoints;
 import sic.sim.breakpoints.ReadDataBreakpointException;
 import sic.sim.breakpoints.WriteDataBreakpointException;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * Memory
+ *
+ * The bytes are kept in 4 KiB pages. Untouched pages all refer to one shared zero page and a page
+ * gets its own array on the first write, so a new or reset memory costs only the page table.
+ * {@link #copyFrom(Memory)} shares the pages of another memory copy-on-write: both memories copy
+ * a shared page before writing to it.
  * @author jure
  */
 public class Memory {
 
-    public final byte[] memory;
+    public static final int PAGE_SHIFT = 12;        // 4 KiB pages
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int OFFSET_MASK = PAGE_SIZE - 1;
+
+    // never written, every untouched page refers to it
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+
+    private final int capacity;
+    private final byte[][] pages;
+    // the pages this memory may write to, null for the zero page and pages shared with another memory
+    private final byte[][] ownedPages;
 
     public DataBreakpoints dataBreakpoints = new DataBreakpoints();
 
+    // pages written since a generation, for clients that fetch only changed memory
+    public final PageGenerations generations;
+
+    // saves the bytes instructions overwrite, null when off
+    private UndoLog undoLog;
+
     public Memory(int capacity) {
-        this.memory = new byte[capacity];
+        this.capacity = capacity;
+        this.pages = new byte[(capacity + PAGE_SIZE - 1) >>> PAGE_SHIFT][];
+        this.ownedPages = new byte[pages.length][];
+        Arrays.fill(pages, ZERO_PAGE);
+        this.generations = new PageGenerations(capacity);
     }
 
+    public int capacity() {
+        return capacity;
+    }
+
+    // drops the written pages, O(pages) instead of O(bytes)
     public void reset() {
-        Arrays.fill(memory, (byte)0);
+        Arrays.fill(pages, ZERO_PAGE);
+        Arrays.fill(ownedPages, null);
+        changedAll();
+    }
+
+    /**
+     * Make the content of this memory equal to the source, sharing its pages copy-on-write.
+     * Neither memory may be executing while the pages are shared out.
+     */
+    public void copyFrom(Memory source) {
+        if (source == this) return;
+        if (source.capacity != capacity)
+            throw new IllegalArgumentException("memory capacity " + source.capacity + " differs from " + capacity);
+        for (int page = 0; page < pages.length; page++) {
+            source.ownedPages[page] = null;
+            ownedPages[page] = null;
+            pages[page] = source.pages[page];
+        }
+        changedAll();
+    }
+
+    /**
+     * The content of a memory at some point, sharing the pages with it copy-on-write.
+     */
+    public static final class Image {
+        private final byte[][] pages;
+
+        private Image(byte[][] pages) {
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * @return the current content, O(pages): the pages are shared, not copied.
+     */
+    public Image save() {
+        Arrays.fill(ownedPages, null);
+        return new Image(pages.clone());
+    }
+
+    /**
+     * Bring back the content saved in the image. Only the pages that differ from it are
+     * stamped as written (and dropped from the decode caches); an image page is never written,
+     * so a page still holding the same array is unchanged.
+     */
+    public void restore(Image image) {
+        if (image.pages.length != pages.length)
+            throw new IllegalArgumentException("memory image has " + image.pages.length + " pages instead of " + pages.length);
+        for (int page = 0; page < pages.length; page++) {
+            if (pages[page] == image.pages[page]) continue;
+            pages[page] = image.pages[page];
+            ownedPages[page] = null;
+            int start = page << PAGE_SHIFT;
+            written(start, Math.min(PAGE_SIZE, capacity - start));
+        }
+    }
+
+    /**
+     * @return the number of pages with their own array, i.e. written and not shared.
+     */
+    public int ownedPages() {
+        int count = 0;
+        for (byte[] page : ownedPages)
+            if (page != null) count++;
+        return count;
     }
+
+    /**
+     * @return the number of pages holding data (any but the zero page) in this memory and the images,
+     *         a page shared between them is counted once
+     */
+    public int dataPages(Image... images) {
+        Set<byte[]> held = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (byte[] page : pages)
+            if (page != ZERO_PAGE) held.add(page);
+        for (Image image : images) {
+            if (image == null) continue;
+            for (byte[] page : image.pages)
+                if (page != ZERO_PAGE) held.add(page);
+        }
+        return held.size();
+    }
+
+    private void changedAll() {
+        generations.writtenAll();
+    }
+
+    void setUndoLog(UndoLog undoLog) {
+        this.undoLog = undoLog;
+    }
+
+    // stamp the written pages
+    private void written(int address, int length) {
+        generations.written(address, length);
+    }
+
+    // the page to write to, copied first if it is the zero page or shared
+    private byte[] writable(int page) {
+        byte[] owned = ownedPages[page];
+        return owned != null ? owned : own(page);
+    }
+
+    private byte[] own(int page) {
+        byte[] copy = pages[page].clone();
+        pages[page] = copy;
+        ownedPages[page] = copy;
+        return copy;
+    }
+
     /**
      * Checks if the address is inside memory bounds
      * @return true if address is invalid
      */
     private boolean checkAddress(int address) {
-        boolean invalid = address < 0 || address >= memory.length;
+        boolean invalid = address < 0 || address >= capacity;
         if (invalid)
             Logger.fmterr("Invalid memory address '%s', %d", Conversion.addrToHex(address), address);
         return invalid;
     }
 
+    /**
+     * @return true if the whole span lies inside memory
+     */
+    private boolean inRange(int address, int length) {
+        return address >= 0 && address <= capacity - length;
+    }
+
+    // Direct accessors, callers check the range and data breakpoints
+
+    private int read(int address) {
+        return pages[address >>> PAGE_SHIFT][address & OFFSET_MASK] & 0xFF;
+    }
+
+    private void write(int address, int value) {
+        writable(address >>> PAGE_SHIFT)[address & OFFSET_MASK] = (byte)value;
+    }
+
+    private int readWord(int address) {
+        int offset = address & OFFSET_MASK;
+        if (offset > PAGE_SIZE - 3) return readWordAcross(address);
+        byte[] page = pages[address >>> PAGE_SHIFT];
+        return (page[offset] & 0xFF) << 16 | (page[offset + 1] & 0xFF) << 8 | page[offset + 2] & 0xFF;
+    }
+
+    // a word that ends on the next page, kept out of the hot path
+    private int readWordAcross(int address) {
+        return read(address) << 16 | read(address + 1) << 8 | read(address + 2);
+    }
+
+    private void writeWord(int address, int value) {
+        if (undoLog != null) undoLog.write(this, address, 3);
+        int offset = address & OFFSET_MASK;
+        if (offset > PAGE_SIZE - 3) {
+            writeWordAcross(address, value);
+        } else {
+            byte[] page = writable(address >>> PAGE_SHIFT);
+            page[offset] = (byte)(value >> 16);
+            page[offset + 1] = (byte)(value >> 8);
+            page[offset + 2] = (byte)value;
+        }
+        written(address, 3);
+    }
+
+    private void writeWordAcross(int address, int value) {
+        write(address, value >> 16);
+        write(address + 1, value >> 8);
+        write(address + 2, value);
+    }
+
+    // the 48-bit SIC/XE float layout, converted as sicxe.common.SICXE does
+    // (the sic copies of those helpers are deprecated)
+    private static double bitsToFloat(long bits) {
+        return Double.longBitsToDouble(bits << 16);
+    }
+
+    private static long floatToBits(double value) {
+        return Double.doubleToLongBits(value) >> 16;
+    }
+
+    private double readFloat(int address) {
+        long bits = (long)readWord(address) << 24 | readWord(address + 3);
+        return bitsToFloat(bits);
+    }
+
+    private void writeFloat(int address, double value) {
+        long bits = floatToBits(value);
+        writeWord(address, (int)(bits >> 24));
+        writeWord(address + 3, (int)bits);
+    }
+
     // ----------------------------------------------
     // Memory access methods that trigger breakpoints
     // ----------------------------------------------
+    // Without active data breakpoints multi-byte accesses take a fast path
+    // with a single range check; otherwise every byte is checked on its own.
 
     public int getByte(int address) throws ReadDataBreakpointException {
         if (checkAddress(address)) return 0;
-        dataBreakpoints.checkRead(address);
-        return ((int)memory[address]) & 0xFF;
+        if (dataBreakpoints.isActive()) dataBreakpoints.checkRead(address);
+        return read(address);
     }
 
     public void setByte(int address, int value) throws WriteDataBreakpointException {
         if (checkAddress(address)) return;
-        dataBreakpoints.checkWrite(address);
-        memory[address] = (byte)(value & 0xFF);
+        if (dataBreakpoints.isActive()) dataBreakpoints.checkWrite(address);
+        if (undoLog != null) undoLog.write(this, address, 1);
+        write(address, value);
+        written(address, 1);
     }
 
     public int getWord(int address) throws ReadDataBreakpointException {
+        if (!dataBreakpoints.isActive() && inRange(address, 3)) return readWord(address);
         return getByte(address + 2) | getByte(address + 1) << 8 | getByte(address) << 16;
     }
 
     public void setWord(int address, int value) throws WriteDataBreakpointException {
+        if (!dataBreakpoints.isActive() && inRange(address, 3)) {
+            writeWord(address, value);
+            return;
+        }
         setByte(address, value >> 16);
         setByte(address + 1, value >> 8);
         setByte(address + 2, value);
     }
 
     public double getFloat(int address) throws ReadDataBreakpointException {
+        if (!dataBreakpoints.isActive() && inRange(address, 6)) return readFloat(address);
         long bits  =  (long)getByte(address)  << 40 | (long)getByte(address+1) << 32 |
                       (long)getByte(address+2) << 24 | getByte(address+3) << 16 |
                       getByte(address+4) << 8  | getByte(address+5);
-        return SICXE.bitsToFloat(bits);
+        return bitsToFloat(bits);
     }
 
     public void setFloat(int address, double value) throws WriteDataBreakpointException {
-        long bits = SICXE.floatToBits(value);
+        if (!dataBreakpoints.isActive() && inRange(address, 6)) {
+            writeFloat(address, value);
+            return;
+        }
+        long bits = floatToBits(value);
         setByte(address, (int)(bits >> 40));
         setByte(address + 1, (int)(bits >> 32));
         setByte(address + 2, (int)(bits >> 24));
@@ -89,33 +312,79 @@ public class Memory {
 
     public int getByteRaw(int address) {
         if (checkAddress(address)) return 0;
-        return ((int)memory[address]) & 0xFF;
+        return read(address);
     }
 
     public void setByteRaw(int address, int value) {
         if (checkAddress(address)) return;
-        memory[address] = (byte)(value & 0xFF);
+        if (undoLog != null) undoLog.write(this, address, 1);
+        write(address, value);
+        written(address, 1);
     }
 
     public int getWordRaw(int address) {
+        if (inRange(address, 3)) return readWord(address);
         return getByteRaw(address + 2) | getByteRaw(address + 1) << 8 | getByteRaw(address) << 16;
     }
 
     public void setWordRaw(int address, int value) {
+        if (inRange(address, 3)) {
+            writeWord(address, value);
+            return;
+        }
         setByteRaw(address, value >> 16);
         setByteRaw(address + 1, value >> 8);
         setByteRaw(address + 2, value);
     }
 
+    // copy length bytes from memory into dst, a page at a time
+    public void getBytesRaw(int address, byte[] dst, int offset, int length) {
+        if (length <= 0) return;
+        if (!inRange(address, length)) {
+            for (int i = 0; i < length; i++) dst[offset + i] = (byte)getByteRaw(address + i);
+            return;
+        }
+        while (length > 0) {
+            int inPage = address & OFFSET_MASK;
+            int n = Math.min(length, PAGE_SIZE - inPage);
+            System.arraycopy(pages[address >>> PAGE_SHIFT], inPage, dst, offset, n);
+            address += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void setBytesRaw(int address, byte[] bytes) {
+        if (bytes.length == 0) return;
+        if (!inRange(address, bytes.length)) {
+            for (int i = 0; i < bytes.length; i++) setByteRaw(address + i, bytes[i]);
+            return;
+        }
+        if (undoLog != null) undoLog.write(this, address, bytes.length);
+        for (int offset = 0; offset < bytes.length; ) {
+            int at = address + offset;
+            int inPage = at & OFFSET_MASK;
+            int n = Math.min(bytes.length - offset, PAGE_SIZE - inPage);
+            System.arraycopy(bytes, offset, writable(at >>> PAGE_SHIFT), inPage, n);
+            offset += n;
+        }
+        written(address, bytes.length);
+    }
+
     public double getFloatRaw(int address) {
+        if (inRange(address, 6)) return readFloat(address);
         long bits = (long)getByteRaw(address)  << 40 | (long)getByteRaw(address+1) << 32 |
                 (long)getByteRaw(address+2) << 24 | getByteRaw(address+3) << 16 |
                 getByteRaw(address+4) << 8  | getByteRaw(address+5);
-        return SICXE.bitsToFloat(bits);
+        return bitsToFloat(bits);
     }
 
     public void setFloatRaw(int address, double value) {
-        long bits = SICXE.floatToBits(value);
+        if (inRange(address, 6)) {
+            writeFloat(address, value);
+            return;
+        }
+        long bits = floatToBits(value);
         setByteRaw(address, (int)(bits >> 40));
         setByteRaw(address + 1, (int)(bits >> 32));
         setByteRaw(address + 2, (int)(bits >> 24));
@@ -0,0 +1,136 @@
+package sic.sim.vm;
+
+/**
+ * Undo log of the last executed instructions, for stepping back.
+ *
+ * A bounded ring of entries, one per instruction: before the instruction executes the machine
+ * records its registers, the JSUB stack top and the instruction count, and memory saves the bytes
+ * the instruction overwrites (a single span, the one reported as lastExecWrite). The oldest entries
+ * are overwritten, an entry takes {@link #BYTES_PER_ENTRY} bytes. Devices are not rewound.
+ */
+public class UndoLog {
+
+    // 12 ints, 2 longs and a byte
+    public static final int BYTES_PER_ENTRY = 65;
+    // longest span an entry keeps, a float is 6 bytes
+    private static final int MAX_WRITE = 8;
+
+    private final int capacity;
+    private final int[] pc, a, x, l, s, t, b, cc;
+    private final long[] f;
+    private final int[] jsubDepth, jsubTop, count;
+    private final int[] writeAddress;
+    private final byte[] writeLength;
+    private final long[] writeOld;
+
+    private int next;           // slot of the next entry
+    private int size;
+    // between begin and end memory writes belong to the last entry
+    private boolean recording;
+
+    public UndoLog(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("undo log capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        pc = new int[capacity]; a = new int[capacity]; x = new int[capacity]; l = new int[capacity];
+        s = new int[capacity]; t = new int[capacity]; b = new int[capacity]; cc = new int[capacity];
+        f = new long[capacity];
+        jsubDepth = new int[capacity]; jsubTop = new int[capacity]; count = new int[capacity];
+        writeAddress = new int[capacity];
+        writeLength = new byte[capacity];
+        writeOld = new long[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of instructions that can be undone
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        recording = false;
+    }
+
+    private int last() {
+        return next == 0 ? capacity - 1 : next - 1;
+    }
+
+    void begin(Machine machine) {
+        int i = next;
+        Registers r = machine.registers;
+        pc[i] = r.getPC();
+        a[i] = r.getA(); x[i] = r.getX(); l[i] = r.getL();
+        s[i] = r.getS(); t[i] = r.getT(); b[i] = r.getB();
+        cc[i] = r.getCC();
+        f[i] = Double.doubleToRawLongBits(r.getF());
+        jsubDepth[i] = machine.jsubDepth();
+        jsubTop[i] = machine.jsubSlot();
+        count[i] = machine.getInstructionCount();
+        writeLength[i] = 0;
+        next = i + 1 == capacity ? 0 : i + 1;
+        if (size < capacity) size++;
+        recording = true;
+    }
+
+    void end() {
+        recording = false;
+    }
+
+    // drops the entry of an instruction that threw (a data breakpoint stops it before it writes);
+    // with a full log the oldest entry, overwritten by begin, is lost as well
+    void discard() {
+        if (!recording) return;
+        recording = false;
+        next = last();
+        size--;
+    }
+
+    // called by memory before it overwrites the bytes
+    void write(Memory memory, int address, int length) {
+        if (!recording) return;
+        int i = last();
+        int saved = writeLength[i];
+        if (saved == 0) writeAddress[i] = address;
+        if (address != writeAddress[i] + saved || saved + length > MAX_WRITE) {
+            // not a single short span, the instruction can not be undone and neither can the older ones
+            clear();
+            return;
+        }
+        long old = writeOld[i];
+        for (int k = 0; k < length; k++)
+            old = old << 8 | memory.getByteRaw(address + k);
+        writeOld[i] = old;
+        writeLength[i] = (byte) (saved + length);
+    }
+
+    /**
+     * Undo the last logged instruction.
+     * @return false if there is nothing to undo
+     */
+    boolean undo(Machine machine) {
+        if (size == 0) return false;
+        int i = last();
+        next = i;
+        size--;
+
+        int length = writeLength[i];
+        long old = writeOld[i];
+        for (int k = length - 1; k >= 0; k--, old >>>= 8)
+            machine.memory.setByteRaw(writeAddress[i] + k, (int) old & 0xFF);
+
+        Registers r = machine.registers;
+        r.setPC(pc[i]);
+        r.setA(a[i]); r.setX(x[i]); r.setL(l[i]);
+        r.setS(s[i]); r.setT(t[i]); r.setB(b[i]);
+        r.setCC(cc[i]);
+        r.setF(Double.longBitsToDouble(f[i]));
+        machine.restoreJsub(jsubDepth[i], jsubTop[i]);
+        machine.setInstructionCount(count[i]);
+        return true;
+    }
+}
@@ -6,11 +6,15 @@ import sicxe.asm.Options;
 import sicxe.ast.Program;
 import sicxe.common.Mnemonics;
 import sicxe.common.Utils;
+import sicxe.link.LinkerError;
+import sicxe.link.utils.BinaryObject;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Sic/XE assembler.
@@ -29,6 +33,7 @@ public class Asm {
     private Writer lstwriter;
     private Writer logwriter;
     private Writer objwriter;
+    private String basename;
 
     static void printHelp() {
         System.out.print(
@@ -41,6 +46,7 @@ public class Asm {
         "\n" +
         "    -obj-dense         Dense object files (without space).\n" +
         "    -obj-slack         Slack object files (with space).\n" +
+        "    -obj-binary        Also write a binary object file (.sxo).\n" +
         "    -space-require     Require whitespace after labels and mnemonics.\n" +
         "    -space-forgo\n" +
         "    -comment-dot-require  Require dots in comments.\n" +
@@ -70,6 +76,7 @@ public class Asm {
             String arg = args[last];
             if ("-obj-dense".equals(arg)) Options.addSpaceInObj = false;
             if ("-obj-slack".equals(arg)) Options.addSpaceInObj = true;
+            if ("-obj-binary".equals(arg)) Options.binaryObj = true;
             if ("-space-require".equals(arg)) Options.requireWhitespace = true;
             if ("-space-forgo".equals(arg)) Options.requireWhitespace = false;
             if ("-comment-dot-require".equals(arg)) Options.requireCommentDot = true;
@@ -90,7 +97,7 @@ public class Asm {
         // prepare files
         String filename = args[last];
         input = Utils.readFile(filename);
-        String basename = Utils.getFileBasename(filename);
+        basename = Utils.getFileBasename(filename);
         lstwriter = Utils.createFileWriter(basename + ".lst");
         logwriter = Utils.createFileWriter(basename + ".log");
         objwriter = Utils.createFileWriter(basename + ".obj");
@@ -116,6 +123,8 @@ public class Asm {
             if (stdin) objwriter.write("********************** Text ********************\n");
             assembler.generateObj(program, objwriter, Options.addSpaceInObj);
             objwriter.flush();
+            if (!stdin && Options.binaryObj)
+                Files.write(Path.of(basename + BinaryObject.EXTENSION), assembler.generateBinaryObj(program));
             if (!stdin) {
                 lstwriter.close();
                 logwriter.close();
@@ -123,6 +132,8 @@ public class Asm {
             }
         } catch (IOException e) {
             System.err.println("Error while generating files.");
+        } catch (LinkerError e) {
+            System.err.println("Error while generating the binary object: " + e.getMessage());
         }
         errorCatcher.print();
     }
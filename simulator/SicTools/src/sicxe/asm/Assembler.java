@@ -1,11 +1,24 @@
 package sicxe.asm;
 
+import sicxe.asm.parsing.ParsedSource;
 import sicxe.asm.parsing.Parser;
 import sicxe.asm.visitors.*;
+import sicxe.ast.Command;
 import sicxe.ast.Program;
+import sicxe.ast.directives.DirectiveEQU;
+import sicxe.ast.directives.DirectiveEXTDEF;
+import sicxe.ast.directives.DirectiveEXTREF;
 import sicxe.common.Mnemonics;
+import sicxe.link.LinkerError;
+import sicxe.link.utils.BinaryObject;
 
+import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
  * TODO: write a short description
@@ -25,24 +38,101 @@ public class Assembler {
     }
 
     public Program assemble(String input) {
-        errorCatcher.clear();
+        return assemble(input, null);
+    }
 
-        // phase zero: parse the source code
+    /**
+     * Assemble a new version of the source, the commands above its first changed line
+     * and below its last changed line are not parsed again.
+     * @param source the source parsed before, updated to the input; null to parse all
+     */
+    public Program assemble(String input, ParsedSource source) {
+        Program program = resolveLabels(parse(input, source));
+        new ResolveRelative(program, errorCatcher).visitCommands();        // resolve BASE and import/export
+        new ResolveSymbols(program, errorCatcher).visitCommands();         // resolve instructions
+        // TODO: check for undefined symbols, unevaluated expressions
+
+        if (source != null) source.setResolved(null);
+        return program;
+    }
+
+    /**
+     * Report the errors assemble() would, into errorCatcher, for the editor.
+     * The last two passes share a walk: an instruction only needs the BASE, EXTREFs and EXTDEFs above it.
+     * If one of those further down may have changed an error, the source goes back to assemble().
+     */
+    public void check(String input) {
+        check(input, null);
+    }
+
+    /**
+     * check() a new version of the source, see assemble(String, ParsedSource).
+     * When the edit kept the addresses of the other commands, only the changed commands and the
+     * instructions using their labels are resolved again, see ResolvedSource.
+     */
+    public void check(String input, ParsedSource source) {
+        Program program = parse(input, source);
+        ResolvedSource resolved = source == null ? null : source.resolved();
+        if (resolved != null && resolved.recheck(source, errorCatcher)) return;
+        if (source != null) source.setResolved(null);
+
+        Set<AsmError> parseErrors = Collections.newSetFromMap(new IdentityHashMap<>());
+        parseErrors.addAll(errorCatcher.errs);
+        resolveLabels(program);
+        ErrorCatcher symbolErrors = new ErrorCatcher();
+        Visitor resolveRelative = new ResolveRelative(program, errorCatcher);
+        Visitor resolveSymbols = new ResolveSymbols(program, symbolErrors);
+        if (source == null) {
+            new FusedVisitor(program, errorCatcher, resolveRelative, resolveSymbols).visitCommands();
+        } else {
+            // also record where the commands were resolved, for the next version of the source
+            resolved = new ResolvedSource(program);
+            new FusedVisitor(program, errorCatcher, resolveRelative, resolveSymbols,
+                    new RecordContexts(program, errorCatcher, resolved)).visitCommands();
+        }
+        if (symbolErrors.count() > 0 && externalsAfter(program, symbolErrors.errs.get(0))) {
+            assemble(input, source);
+            return;
+        }
+        List<AsmError> labelErrors = new ArrayList<>();
+        for (AsmError err : errorCatcher.errs)
+            if (!parseErrors.contains(err)) labelErrors.add(err);
+        for (AsmError err : symbolErrors.errs)
+            errorCatcher.add(err);
+        if (resolved != null && resolved.keepErrors(source, labelErrors, symbolErrors.errs))
+            source.setResolved(resolved);
+    }
+
+    private static boolean externalsAfter(Program program, AsmError err) {
+        for (Command command : program.commands)
+            if ((command instanceof DirectiveEXTREF || command instanceof DirectiveEXTDEF)
+                    && (err.loc == null || command.loc.pos > err.loc.pos))
+                return true;
+        return false;
+    }
+
+    // parse the source code
+    private Program parse(String input, ParsedSource source) {
+        errorCatcher.clear();
         parser.begin(input);
-        Program program = parser.parseProgram();
+        return parser.parseProgram(source);
+    }
+
+    // resolve everything up to labels and EQUs
+    private Program resolveLabels(Program program) {
+        // without EQUs the EQU passes have nothing to do
+        boolean equs = false;
+        for (Command command : program.commands)
+            equs |= command instanceof DirectiveEQU;
 
         // phase one: absolute expressions
-        new DefineEQUs(program, errorCatcher).visitCommands();             // define EQUs
-        new EvalEQUs(program, errorCatcher, false).visitCommands();        // EQUs: resolve absolute expressions
-        new ResolveAbsolute(program, errorCatcher).visitCommands();        // resolve START and RESx
+        if (equs) new DefineEQUs(program, errorCatcher).visitCommands();             // define EQUs
+        if (equs) new EvalEQUs(program, errorCatcher, false).visitCommands();        // EQUs: resolve absolute expressions
+        new ResolveAbsolute(program, errorCatcher).visitCommands();                  // resolve START and RESx
 
         // phase two: relative expressions
-        new ResolveBlocks(program, errorCatcher).visitByStructure();       // define labels, resolve block sizes, resolve ORGs
-        new EvalEQUs(program, errorCatcher, true).visitCommands();         // resolve also relative EQUs
-        new ResolveRelative(program, errorCatcher).visitCommands();        // resolve BASE and import/export
-        new ResolveSymbols(program, errorCatcher).visitCommands();         // resolve instructions
-        // TODO: check for undefined symbols, unevaluated expressions
-
+        new ResolveBlocks(program, errorCatcher).visitByStructure();                 // define labels, resolve block sizes, resolve ORGs
+        if (equs) new EvalEQUs(program, errorCatcher, true).visitCommands();         // resolve also relative EQUs
         return program;
     }
 
@@ -58,4 +148,11 @@ public class Assembler {
         new WriteText(program, errorCatcher, writer, addSpaceInObj).visitByStructure();
     }
 
+    // the object in the binary format of BinaryObject, converted from the dense text
+    public byte[] generateBinaryObj(Program program) throws LinkerError {
+        StringWriter text = new StringWriter();
+        generateObj(program, text, false);
+        return BinaryObject.write(BinaryObject.fromText(text.toString()));
+    }
+
 }
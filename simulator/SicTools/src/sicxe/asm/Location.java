@@ -7,8 +7,8 @@ package sicxe.asm;
  */
 public class Location {
 
-    public final int pos;
-    public final int row;
+    public int pos;
+    public int row;
     public final int col;
     public int length;
 
@@ -26,6 +26,12 @@ public class Location {
         this.length = length;
     }
 
+    // move the location by the characters and lines inserted (or removed, if negative) above it
+    public void shift(int chars, int rows) {
+        pos += chars;
+        row += rows;
+    }
+
     @Override
     public String toString() {
         return row + ", " + col;
@@ -14,6 +14,7 @@ public class Options {
 
     // obj generator
     public static boolean addSpaceInObj = false;       // add space between fields in obj files
+    public static boolean binaryObj = false;           // also write a binary object file (.sxo)
 
     public static boolean indirectX = false;           // allow indirect indexed addressing
 }
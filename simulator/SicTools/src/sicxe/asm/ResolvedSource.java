@@ -0,0 +1,237 @@
+package sicxe.asm;
+
+import sicxe.asm.parsing.ParsedSource;
+import sicxe.ast.Command;
+import sicxe.ast.Comment;
+import sicxe.ast.Program;
+import sicxe.ast.Section;
+import sicxe.ast.directives.DirectiveEXTDEF;
+import sicxe.ast.directives.DirectiveEXTREF;
+import sicxe.ast.directives.DirectiveFe;
+import sicxe.ast.expression.Expr;
+import sicxe.ast.instructions.Instruction;
+import sicxe.ast.instructions.InstructionF34Base;
+import sicxe.ast.instructions.InstructionF3m;
+import sicxe.ast.instructions.InstructionF4m;
+import sicxe.ast.instructions.InstructionLiteral;
+import sicxe.ast.storage.StorageData;
+import sicxe.ast.storage.StorageRes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the syntax check resolved for a source, kept to check the next version of the source
+ * without resolving all of it again (see {@link Assembler#check(String, ParsedSource)}).
+ * That works when the edit only replaced instructions, data and comments by others of the same
+ * total size: every other command keeps its address, so only the labels of the changed commands
+ * are defined again, and only the changed instructions and the instructions using a changed label
+ * are resolved again. The errors of the other commands are reported as before.
+ */
+public class ResolvedSource {
+
+    // where a command was resolved
+    private static class Context {
+        final String section;
+        final String block;
+        final int locctr;
+        final int base;         // base register, -1 if none
+
+        Context(String section, String block, int locctr, int base) {
+            this.section = section;
+            this.block = block;
+            this.locctr = locctr;
+            this.base = base;
+        }
+    }
+
+    private final Program program;      // the symbols, updated on every edit
+    private final Map<Command, Context> contexts = new IdentityHashMap<>();
+    private final Map<Command, List<AsmError>> labelErrors = new IdentityHashMap<>();   // from the passes up to ResolveRelative
+    private final Map<Command, List<AsmError>> symbolErrors = new IdentityHashMap<>();  // from ResolveSymbols
+    private final Map<String, List<InstructionF34Base>> users = new HashMap<>();        // instructions by their symbol
+    private final Map<String, Integer> definitions = new HashMap<>();   // definitions by section and name
+    private final Set<String> directiveNames = new HashSet<>();         // names used by directives
+    private boolean externals;
+
+    public ResolvedSource(Program program) {
+        this.program = program;
+    }
+
+    // called by RecordContexts for each command of the program
+    public void record(Command c) {
+        Section section = program.section();
+        contexts.put(c, new Context(section.name, section.block().name, program.locctr(), section.baseRegister()));
+        if (c.hasLabel()) define(section.name, c.label(), 1);
+        if (c instanceof InstructionF3m || c instanceof InstructionF4m) use((InstructionF34Base) c);
+        if (c instanceof DirectiveFe) useAll(((DirectiveFe) c).expr);
+        if (c instanceof StorageRes) useAll(((StorageRes) c).expr);
+        if (c instanceof DirectiveEXTDEF) {
+            directiveNames.addAll(((DirectiveEXTDEF) c).names);
+            externals = true;
+        }
+        if (c instanceof DirectiveEXTREF)
+            for (String name : ((DirectiveEXTREF) c).names) define(section.name, name, 1);
+    }
+
+    private void define(String section, String name, int count) {
+        definitions.merge(section + ':' + name, count, Integer::sum);
+    }
+
+    private int definitions(String section, String name) {
+        return definitions.getOrDefault(section + ':' + name, 0);
+    }
+
+    private void use(InstructionF34Base c) {
+        if (c.symbol() != null) users.computeIfAbsent(c.symbol(), name -> new ArrayList<>()).add(c);
+    }
+
+    private void useAll(Expr expr) {
+        Set<String> names = expr == null ? null : expr.extractSyms();
+        if (names != null) directiveNames.addAll(names);
+    }
+
+    /**
+     * Keep the errors of the check by the commands they belong to.
+     * @return false if an error does not belong to a command of the source, then it cannot be kept.
+     */
+    public boolean keepErrors(ParsedSource source, List<AsmError> labelErrors, List<AsmError> symbolErrors) {
+        if (externals) return false;    // an EXTREF below an error may change it, see Assembler.check
+        return keep(source, labelErrors, this.labelErrors) && keep(source, symbolErrors, this.symbolErrors);
+    }
+
+    private static boolean keep(ParsedSource source, List<AsmError> errs, Map<Command, List<AsmError>> errors) {
+        for (AsmError err : errs) {
+            Command command = source.commandOf(err.loc);
+            if (command == null) return false;
+            errors.computeIfAbsent(command, c -> new ArrayList<>()).add(err);
+        }
+        return true;
+    }
+
+    private static boolean isPlain(Command c) {
+        return c instanceof Comment || c instanceof StorageData
+                || c instanceof Instruction && !(c instanceof InstructionLiteral);
+    }
+
+    /**
+     * Check the source after an edit that kept the addresses of the other commands.
+     * @return false, with nothing changed, if the edit did not keep them or may change other errors.
+     */
+    public boolean recheck(ParsedSource source, ErrorCatcher errorCatcher) {
+        List<Command> removed = source.removed();
+        List<Command> added = source.added();
+        // the changed commands replace each other in one block
+        int size = 0;
+        for (Command c : removed) {
+            if (!isPlain(c) || labelErrors.containsKey(c)) return false;
+            size += c.size();
+        }
+        for (Command c : added) {
+            if (!isPlain(c)) return false;
+            size -= c.size();
+        }
+        if (size != 0) return false;
+        if (removed.isEmpty() && added.isEmpty()) {
+            report(errorCatcher);
+            return true;
+        }
+        Command anchor = removed.isEmpty() ? source.following() : removed.get(0);
+        Context at = anchor == null || !isPlain(anchor) ? null : contexts.get(anchor);
+        if (at == null) return false;
+        // the labels of the changed commands, by their old and new addresses
+        Map<String, Integer> oldLabels = new HashMap<>();
+        for (Command c : removed)
+            if (c.hasLabel()) oldLabels.put(c.label(), contexts.get(c).locctr);
+        Map<String, Integer> newLabels = new HashMap<>();
+        List<Context> newContexts = new ArrayList<>();
+        int locctr = at.locctr;
+        for (Command c : added) {
+            newContexts.add(new Context(at.section, at.block, locctr, at.base));
+            if (c.hasLabel() && newLabels.putIfAbsent(c.label(), locctr) != null) return false;
+            locctr += c.size();
+        }
+        // a label defined twice or used by a directive may change errors elsewhere
+        Set<String> names = new HashSet<>(oldLabels.keySet());
+        names.addAll(newLabels.keySet());
+        for (String name : names) {
+            int count = definitions(at.section, name);
+            if (count > 1 || count - (oldLabels.containsKey(name) ? 1 : 0) + (newLabels.containsKey(name) ? 1 : 0) > 1)
+                return false;
+            if (directiveNames.contains(name)) return false;
+        }
+
+        // define the changed labels again
+        Section section = program.findSection(at.section);
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Integer> e : oldLabels.entrySet()) {
+            section.symbols.remove(e.getKey());
+            define(at.section, e.getKey(), -1);
+            if (!e.getValue().equals(newLabels.get(e.getKey()))) changed.add(e.getKey());
+        }
+        for (Command c : removed) {
+            contexts.remove(c);
+            symbolErrors.remove(c);
+            if (c instanceof InstructionF34Base) {
+                List<InstructionF34Base> list = users.get(((InstructionF34Base) c).symbol());
+                if (list != null) list.removeIf(user -> user == c);
+            }
+        }
+        for (int i = 0; i < added.size(); i++) {
+            Command c = added.get(i);
+            Context context = newContexts.get(i);
+            contexts.put(c, context);
+            if (c instanceof InstructionF3m || c instanceof InstructionF4m) use((InstructionF34Base) c);
+            if (!c.hasLabel()) continue;
+            try {
+                section.symbols.defineLabel(c.label(), c.loc, context.locctr, c);
+            } catch (AsmError e) {
+                throw new IllegalStateException(e);   // a duplicate was ruled out above
+            }
+            define(at.section, c.label(), 1);
+            if (!oldLabels.containsKey(c.label())) changed.add(c.label());
+        }
+
+        // resolve the changed instructions and the instructions using a changed label
+        Set<InstructionF34Base> resolve = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Command c : added)
+            if (c instanceof InstructionF3m || c instanceof InstructionF4m) resolve.add((InstructionF34Base) c);
+        for (String name : changed)
+            resolve.addAll(users.getOrDefault(name, Collections.emptyList()));
+        for (Section s : program.sections) s.relocations.clear();
+        for (InstructionF34Base c : resolve) {
+            Context context = contexts.get(c);
+            program.switchSection(context.section);
+            program.section().switchBlock(context.block);
+            program.setLocctr(context.locctr);
+            program.step(c.size());
+            if (context.base >= 0) program.section().enableBaseAddressing(context.base);
+            else program.section().disableBaseAddressing();
+            c.reset();
+            try {
+                c.resolve(program);
+                symbolErrors.remove(c);
+            } catch (AsmError e) {
+                symbolErrors.put(c, new ArrayList<>(List.of(e)));
+            }
+        }
+
+        report(errorCatcher);
+        return true;
+    }
+
+    // report the errors in the order of the passes
+    private void report(ErrorCatcher errorCatcher) {
+        for (List<AsmError> errs : labelErrors.values())
+            for (AsmError err : errs) errorCatcher.add(err);
+        for (List<AsmError> errs : symbolErrors.values())
+            for (AsmError err : errs) errorCatcher.add(err);
+    }
+
+}
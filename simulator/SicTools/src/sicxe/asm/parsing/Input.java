@@ -3,6 +3,8 @@ package sicxe.asm.parsing;
 import sicxe.asm.AsmError;
 import sicxe.asm.Location;
 
+import java.util.List;
+
 /**
  * Low-level input representation and manipulation.
  *
@@ -15,6 +17,7 @@ public class Input {
     protected int row;       // row
     protected int col;       // column
     protected char prev;     // previous char
+    protected List<Location> locations;    // locations handed out, when kept to move them later
 
     public Input() {
         begin(null);
@@ -27,6 +30,14 @@ public class Input {
         this.col = 1;
     }
 
+    // continue at a position, as if the input before it was read
+    public void seek(int pos, int row, int col) {
+        this.pos = pos;
+        this.row = row;
+        this.col = col;
+        if (pos > 0 && pos <= buf.length()) this.prev = buf.charAt(pos - 1);
+    }
+
     // getters
 
     public int pos() {
@@ -42,7 +53,9 @@ public class Input {
     }
 
     public Location loc() {
-        return new Location(pos, row, col);
+        Location loc = new Location(pos, row, col);
+        if (locations != null) locations.add(loc);
+        return loc;
     }
 
     public String extract(int from, int to) {
@@ -0,0 +1,217 @@
+package sicxe.asm.parsing;
+
+import sicxe.asm.AsmError;
+import sicxe.asm.Location;
+import sicxe.asm.ResolvedSource;
+import sicxe.ast.Command;
+import sicxe.ast.Literals;
+import sicxe.ast.Program;
+import sicxe.ast.instructions.InstructionLiteral;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A source with the commands parsed from it, kept to parse the next version of the source
+ * incrementally: commands above the first changed line and below the last changed line are
+ * appended again instead of being parsed (see {@link Parser#parseProgram(ParsedSource)}).
+ * The commands below are moved by the characters and lines the edit added or removed.
+ * A command may span several lines (a label alone on its line).
+ */
+public class ParsedSource {
+
+    // what one step of the parser read from the source
+    static class Unit {
+        final int start, end;           // position of the unit
+        final int startCol;             // column at start, the unit may start at the end of the line above
+        final int row, col;             // row and column at end
+        final String section;           // section before the unit, with the number of its literals
+        final int literals, flushed;    // and of those flushed: the labels of new literals depend on them
+        final Command command;          // command or comment to append, null if none
+        final List<AsmError> errors;    // parse errors
+        final List<Location> locations; // locations of the command and the errors
+
+        Unit(int start, int startCol, int end, int row, int col, String section, int literals, int flushed,
+             Command command, List<AsmError> errors, List<Location> locations) {
+            this.start = start;
+            this.startCol = startCol;
+            this.end = end;
+            this.row = row;
+            this.col = col;
+            this.section = section;
+            this.literals = literals;
+            this.flushed = flushed;
+            this.command = command;
+            this.errors = errors;
+            this.locations = locations;
+        }
+
+        // the unit after the characters and lines above it changed
+        Unit shift(int chars, int rows) {
+            for (Location loc : locations) loc.shift(chars, rows);
+            return new Unit(start + chars, startCol, end + chars, row + rows, col, section, literals, flushed,
+                    command, errors, locations);
+        }
+
+        boolean hasLiteral() {
+            return command instanceof InstructionLiteral;
+        }
+    }
+
+    private String text = "";
+    final List<Unit> units = new ArrayList<>();
+    private final List<Unit> tail = new ArrayList<>();  // units below the change
+    private int tailFirst;                              // first of them the parser did not go past
+    private int tailLiterals;                           // literal instructions from there on
+    private final List<Command> removed = new ArrayList<>();
+    private final List<Command> added = new ArrayList<>();
+    private Command following;
+    private ResolvedSource resolved;
+
+    /**
+     * Forget the units parsed from the previous text that the new one changed, and set aside
+     * the units below the change to append them again once the parser gets to them.
+     * @return number of units kept above the change.
+     */
+    int keepUnchanged(String newText) {
+        removed.clear();
+        added.clear();
+        tail.clear();
+        tailFirst = 0;
+        tailLiterals = 0;
+        following = null;
+        int same = 0;
+        int max = Math.min(text.length(), newText.length());
+        while (same < max && text.charAt(same) == newText.charAt(same)) same++;
+        boolean identical = same == text.length() && same == newText.length();
+        // the changed line starts after the last newline before the first difference
+        int changedLine = newText.lastIndexOf('\n', same - 1) + 1;
+        int kept = 0;
+        while (kept < units.size()) {
+            Unit unit = units.get(kept);
+            // the unit at the end of the text was parsed knowing nothing follows
+            if (!identical && (unit.end > changedLine || unit.end >= text.length())) break;
+            kept++;
+        }
+        // the same end of both texts, not overlapping the same beginning
+        int sameEnd = 0;
+        while (sameEnd < max - same
+                && text.charAt(text.length() - 1 - sameEnd) == newText.charAt(newText.length() - 1 - sameEnd))
+            sameEnd++;
+        int first = units.size();
+        while (first > kept && units.get(first - 1).start >= text.length() - sameEnd) first--;
+        int chars = newText.length() - text.length();
+        int rows = countLines(newText, same, newText.length() - sameEnd) - countLines(text, same, text.length() - sameEnd);
+        for (Unit unit : units.subList(first, units.size())) {
+            tail.add(unit.shift(chars, rows));
+            if (unit.hasLiteral()) tailLiterals++;
+        }
+        for (Unit unit : units.subList(kept, first))
+            if (unit.command != null) removed.add(unit.command);
+        units.subList(kept, units.size()).clear();
+        text = newText;
+        return kept;
+    }
+
+    private static int countLines(String text, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++)
+            if (text.charAt(i) == '\n') count++;
+        return count;
+    }
+
+    /**
+     * Whether the units below the change can be appended at the position instead of parsing the rest.
+     * Units the parser went past are forgotten.
+     */
+    boolean canAppendTail(int pos, int col, Program program) {
+        while (tailFirst < tail.size() && tail.get(tailFirst).start < pos) forgetTailUnit();
+        if (tailFirst == tail.size()) return false;
+        Unit unit = tail.get(tailFirst);
+        if (unit.start != pos || unit.startCol != col) return false;
+        if (tailLiterals == 0) return true;
+        // the literals below get the same labels only if they are numbered from the same count
+        Literals literals = program.section().literals;
+        return unit.section.equals(program.section().name)
+                && unit.literals == literals.size() && unit.flushed == literals.flushed();
+    }
+
+    private void forgetTailUnit() {
+        Unit unit = tail.get(tailFirst++);
+        if (unit.command != null) removed.add(unit.command);
+        if (unit.hasLiteral()) tailLiterals--;
+    }
+
+    // move the units below the change to the end of the source, return them
+    List<Unit> appendTail() {
+        List<Unit> appended = new ArrayList<>(tail.subList(tailFirst, tail.size()));
+        for (Unit unit : appended)
+            if (following == null && unit.command != null) following = unit.command;
+        units.addAll(appended);
+        tailFirst = tail.size();
+        tailLiterals = 0;
+        return appended;
+    }
+
+    // forget the units below the change the parser did not get to
+    void forgetTail() {
+        while (tailFirst < tail.size()) forgetTailUnit();
+    }
+
+    void add(Unit unit) {
+        units.add(unit);
+        if (unit.command != null) added.add(unit.command);
+    }
+
+    /**
+     * @return the commands the last parse dropped, in source order.
+     */
+    public List<Command> removed() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * @return the commands the last parse parsed, in source order.
+     */
+    public List<Command> added() {
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * @return the first command appended again below the parsed ones, null if none.
+     */
+    public Command following() {
+        return following;
+    }
+
+    /**
+     * @return the command parsed with the location, null if the location is not from the source.
+     */
+    public Command commandOf(Location loc) {
+        if (loc == null) return null;
+        int lo = 0, hi = units.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (units.get(mid).end <= loc.pos) lo = mid + 1;
+            else hi = mid;
+        }
+        if (lo == units.size()) return null;
+        Unit unit = units.get(lo);
+        for (Location l : unit.locations)
+            if (l == loc) return unit.command;
+        return null;
+    }
+
+    /**
+     * @return what the last syntax check resolved, null if nothing.
+     */
+    public ResolvedSource resolved() {
+        return resolved;
+    }
+
+    public void setResolved(ResolvedSource resolved) {
+        this.resolved = resolved;
+    }
+
+}
@@ -7,9 +7,13 @@ import sicxe.asm.Options;
 import sicxe.ast.Command;
 import sicxe.ast.Comment;
 import sicxe.ast.Program;
+import sicxe.ast.Section;
 import sicxe.common.Mnemonic;
 import sicxe.common.Mnemonics;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * Parser
@@ -25,6 +29,7 @@ public class Parser extends Lexer {
 
     // dynamic
     protected Program program;
+    private final List<AsmError> lineErrors = new ArrayList<>();    // errors of the line being parsed
 
     public Parser(Mnemonics mnemonics, ErrorCatcher errorCatcher) {
         this.mnemonics = mnemonics;
@@ -72,6 +77,15 @@ public class Parser extends Lexer {
     }
 
     public Program parseProgram() {
+        return parseProgram(null);
+    }
+
+    /**
+     * Parse the input, reusing the commands of the source parsed before above its first changed line
+     * and below its last changed line. The source is then updated to the input.
+     * @param source previous version of the input or null
+     */
+    public Program parseProgram(ParsedSource source) {
         program = new Program();
         // advance to the beginning of command
         while (ready() && col > 1)
@@ -80,46 +94,40 @@ public class Parser extends Lexer {
             } catch (AsmError e){
                 errorCatcher.add(e);
             }
+        // append the unchanged commands again
+        if (source != null) {
+            int kept = source.keepUnchanged(buf);
+            appendAgain(source.units);
+            if (kept > 0) {
+                ParsedSource.Unit last = source.units.get(kept - 1);
+                seek(last.end, last.row, last.col);
+            }
+        }
         // do the lines
         while (ready()) {
-            assert col() == 1;
-            Location lineLoc = loc();
-            Command command;
-            String comment;
-            try {
-                command = parseIfCommand();
-                skipWhitespace();
-                comment = readIfComment(true, Options.skipEmptyLines);
-                if (command == null && comment == null) advance('\n'); // advance over the empty line
-            } catch (AsmError e) {
-                errorCatcher.add(e);
-                try {
-                    advanceUntil('\n');
-                } catch (AsmError e1) {
-                    errorCatcher.add(e1);
-                }
-                continue;
-            }
-            // check what we got
-            try {
-                if (command != null) {
-                    // command with possible comment
-                    command.setComment(comment);
-                    command.append(program);
-                } else if (comment != null) {
-                    // only comment
-                    command = new Comment(lineLoc, comment);
-                    command.append(program);
-                } else {
-                    if (!Options.skipEmptyLines) {
-                        command = new Comment(lineLoc, "");
-                        command.append(program);
-                    }
-                }
-            } catch (AsmError e) {
-                errorCatcher.add(e);
+            if (source != null && source.canAppendTail(pos, col, program)) {
+                List<ParsedSource.Unit> tail = source.appendTail();
+                appendAgain(tail);
+                ParsedSource.Unit last = tail.get(tail.size() - 1);
+                seek(last.end, last.row, last.col);
+                break;
             }
+            int start = pos;
+            int startCol = col;
+            Section section = program.section();
+            int literals = section.literals.size();
+            int flushed = section.literals.flushed();
+            if (source != null) locations = new ArrayList<>();
+            lineErrors.clear();
+            Command command = parseLine();
+            for (AsmError err : lineErrors) errorCatcher.add(err);
+            if (command != null) append(command);
+            if (source != null)
+                source.add(new ParsedSource.Unit(start, startCol, pos, row, col, section.name, literals, flushed,
+                        command, List.copyOf(lineErrors), locations));
         }
+        locations = null;
+        if (source != null) source.forgetTail();
         try {
             program.flushAllLiterals();
         } catch (AsmError e) {
@@ -128,4 +136,54 @@ public class Parser extends Lexer {
         return program;
     }
 
+    private void appendAgain(List<ParsedSource.Unit> units) {
+        for (ParsedSource.Unit unit : units) {
+            for (AsmError err : unit.errors) errorCatcher.add(err);
+            if (unit.command == null) continue;
+            unit.command.reset();
+            append(unit.command);
+        }
+    }
+
+    // parse a command with its comment, or a comment line
+    private Command parseLine() {
+        Location lineLoc = loc();
+        Command command;
+        String comment;
+        try {
+            command = parseIfCommand();
+            skipWhitespace();
+            comment = readIfComment(true, Options.skipEmptyLines);
+            if (command == null && comment == null) advance('\n'); // advance over the empty line
+        } catch (AsmError e) {
+            lineErrors.add(e);
+            try {
+                advanceUntil('\n');
+            } catch (AsmError e1) {
+                lineErrors.add(e1);
+            }
+            return null;
+        }
+        // check what we got
+        if (command != null) {
+            // command with possible comment
+            command.setComment(comment);
+            return command;
+        } else if (comment != null) {
+            // only comment
+            return new Comment(lineLoc, comment);
+        } else if (!Options.skipEmptyLines) {
+            return new Comment(lineLoc, "");
+        }
+        return null;
+    }
+
+    private void append(Command command) {
+        try {
+            command.append(program);
+        } catch (AsmError e) {
+            errorCatcher.add(e);
+        }
+    }
+
 }
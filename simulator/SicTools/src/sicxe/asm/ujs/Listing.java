@@ -29,6 +29,16 @@ public class Listing extends WriteVisitor {
         this.codeFileName = codeFileName;
     }
 
+    // a copy that can be relocated without changing the original
+    public Listing(Listing listing) {
+        super(listing.program, new ErrorCatcher(), new StringWriter());
+        this.rows.addAll(listing.rows);
+        this.variableWatch = listing.variableWatch;
+        this.startAddress = listing.startAddress;
+        this.programLength = listing.programLength;
+        this.codeFileName = listing.codeFileName;
+    }
+
     // Struct-like holder
     public static final class Row {
         public final String addressHex;    // e.g., locctr in hex
@@ -0,0 +1,33 @@
+package sicxe.asm.visitors;
+
+import sicxe.asm.AsmError;
+import sicxe.asm.ErrorCatcher;
+import sicxe.ast.Node;
+import sicxe.ast.Program;
+
+/**
+ * Several passes in one walk: every node is entered once and then visited by each pass in turn.
+ * Only passes that never need what an earlier pass does to a later node can share a walk.
+ * An error ends the visit of the pass that raised it and goes to the error catcher of that pass.
+ */
+public class FusedVisitor extends Visitor {
+
+    private final Visitor[] passes;
+
+    public FusedVisitor(Program program, ErrorCatcher errorCatcher, Visitor... passes) {
+        super(program, errorCatcher);
+        this.passes = passes;
+    }
+
+    @Override
+    protected void visit(Node node) {
+        for (Visitor pass : passes) {
+            try {
+                pass.visit(node);
+            } catch (AsmError err) {
+                pass.errorCatcher.add(err);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package sicxe.asm.visitors;
+
+import sicxe.asm.ErrorCatcher;
+import sicxe.asm.ResolvedSource;
+import sicxe.ast.Command;
+import sicxe.ast.Program;
+
+/**
+ * Records where each command is resolved, walking with ResolveSymbols (see FusedVisitor).
+ */
+public class RecordContexts extends Visitor {
+
+    private final ResolvedSource resolved;
+
+    public RecordContexts(Program program, ErrorCatcher errorCatcher, ResolvedSource resolved) {
+        super(program, errorCatcher);
+        this.resolved = resolved;
+    }
+
+    public void visit(Command c) {
+        resolved.record(c);
+    }
+
+}
@@ -18,6 +18,8 @@ public class ResolveRelative extends Visitor {
 
     public void visit(DirectiveBASE d) throws AsmError {
         d.resolve(program);
+        // entering BASE enabled the unresolved value, commands later in this walk need the resolved one
+        d.enter(program);
     }
 
     public void visit(DirectiveEXTREF d) throws AsmError {
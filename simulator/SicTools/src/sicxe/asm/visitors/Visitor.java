@@ -4,7 +4,9 @@ import sicxe.asm.AsmError;
 import sicxe.asm.ErrorCatcher;
 import sicxe.ast.*;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.List;
 
@@ -15,6 +17,22 @@ import java.util.List;
  */
 public class Visitor {
 
+    private static final MethodType VISIT_TYPE = MethodType.methodType(void.class, Visitor.class, Node.class);
+    private static final MethodHandle NO_VISIT = MethodHandles.empty(VISIT_TYPE);
+
+    // visit() method of a visitor class for a node class, looked up once per pair
+    private static final ClassValue<ClassValue<MethodHandle>> VISIT_METHODS = new ClassValue<>() {
+        @Override
+        protected ClassValue<MethodHandle> computeValue(Class<?> visitorClass) {
+            return new ClassValue<>() {
+                @Override
+                protected MethodHandle computeValue(Class<?> nodeClass) {
+                    return visitMethod(visitorClass, nodeClass);
+                }
+            };
+        }
+    };
+
     public final Program program;
     public final ErrorCatcher errorCatcher;
 
@@ -33,33 +51,37 @@ public class Visitor {
         }
     }
 
-    protected Method findVisitMethod(Node node) {
+    // visit() declared by the visitor class for the node class or its nearest superclass
+    private static Method findVisitMethod(Class<?> visitorClass, Class<?> nodeClass) {
         Method method = null;
-        Class visitorClass = getClass();
-        Class nodeClass = node.getClass();
         do {
             try {
-                method = visitorClass.getDeclaredMethod("visit", new Class[]{nodeClass});
+                method = visitorClass.getDeclaredMethod("visit", nodeClass);
             } catch (NoSuchMethodException e) {}
             nodeClass = nodeClass.getSuperclass();
         } while (nodeClass != null && method == null);
         return method;
     }
 
-    protected void visit(Node node) throws AsmError {
-        // BFS dispatcher for visit() methods
-        Method method = findVisitMethod(node);
-        if (method == null) return;
+    private static MethodHandle visitMethod(Class<?> visitorClass, Class<?> nodeClass) {
+        Method method = findVisitMethod(visitorClass, nodeClass);
+        if (method == null) return NO_VISIT;
         try {
-            method.invoke(this, node);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).asType(VISIT_TYPE);
         } catch (IllegalAccessException e) {
-            if (e.getCause() instanceof AsmError)
-                throw (AsmError)e.getCause();
-            e.printStackTrace();
-            System.exit(1);
-        } catch (InvocationTargetException e) {
-            if (e.getCause() instanceof AsmError)
-                throw (AsmError)e.getCause();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected void visit(Node node) throws AsmError {
+        // dispatcher for visit() methods, resolved once per visitor and node class
+        MethodHandle method = VISIT_METHODS.get(getClass()).get(node.getClass());
+        try {
+            method.invokeExact(this, node);
+        } catch (AsmError e) {
+            throw e;
+        } catch (Throwable e) {
             e.printStackTrace();
             System.exit(1);
         }
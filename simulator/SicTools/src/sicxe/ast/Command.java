@@ -57,6 +57,13 @@ public abstract class Command extends Node {
         return nameToString() + " " + operandToString();
     }
 
+    /**
+     * Forget what the assembler passes resolved, so the command can be appended to a new program
+     * as if it was just parsed.
+     */
+    public void reset() {
+    }
+
     // visitors
 
     @Override
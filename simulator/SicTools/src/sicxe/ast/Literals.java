@@ -26,6 +26,10 @@ public class Literals {
         return literals.size();
     }
 
+    public int flushed() {
+        return lastFlushed;
+    }
+
     public int maxLabelLength() {
         return maxLabelLength;
     }
@@ -102,6 +102,10 @@ public class Section extends Node {
         baseRegister = valueB;
     }
 
+    public int baseRegister() {
+        return baseRegister;
+    }
+
     public void disableBaseAddressing() {
         baseRegister = -1;
     }
@@ -121,6 +121,11 @@ public class Symbols {
         }
     }
 
+    // for labels of commands replaced by the syntax check
+    public void remove(String name) {
+        syms.remove(name);
+    }
+
     public void exportSymbol(String name, Location loc, Location symbolLoc) throws AsmError {
         Symbol sym = syms.get(name);
         if (sym == null)
@@ -36,6 +36,11 @@ public abstract class DirectiveFe extends Directive {
         return value;
     }
 
+    @Override
+    public void reset() {
+        value = 0;
+    }
+
     public void resolve(Program program) throws AsmError {
         value = expr == null ? -1 : expr.eval(program);
     }
@@ -23,6 +23,7 @@ public abstract class InstructionF34Base extends Instruction {
     protected String symbol;            // symbolic operand
     protected int resolvedValue;        // resolved value after pass
     protected Symbol resolvedSymbol;    // resolved symbol object
+    private Flags parsedFlags;          // flags before the first resolve
 
     public InstructionF34Base(Location loc,
                               String label, Location labelLocation,
@@ -58,6 +59,10 @@ public abstract class InstructionF34Base extends Instruction {
         return flags.operandToString(op);
     }
 
+    public String symbol() {
+        return symbol;
+    }
+
     public void setSymbol(String symbol) {
         // used by literals
         this.symbol = symbol;
@@ -67,7 +72,18 @@ public abstract class InstructionF34Base extends Instruction {
 
     protected abstract boolean resolveAddressing(Program program) throws AsmError;
 
+    @Override
+    public void reset() {
+        if (parsedFlags != null) {
+            flags.set_ni(parsedFlags.get_ni());
+            flags.set_xbpe(parsedFlags.get_xbpe());
+        }
+        resolvedValue = 0;
+        resolvedSymbol = null;
+    }
+
     public void resolve(Program program) throws AsmError {
+        if (parsedFlags == null) parsedFlags = new Flags(flags.get_ni(), flags.get_xbpe());
         // resolve operand: value or symbol
         if (operandIsValue()) {
             resolvedValue = value;
@@ -25,6 +25,11 @@ public class InstructionLiteral extends Instruction {
         return command.toString() + " " + operandToString();
     }
 
+    @Override
+    public void reset() {
+        command.reset();
+    }
+
     public void append(Program program) throws AsmError {
         enter(program);
         StorageData lit = program.section().literals.find(literal);
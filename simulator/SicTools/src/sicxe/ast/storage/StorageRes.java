@@ -45,6 +45,11 @@ public class StorageRes extends Storage {
         return 0;  // error
     }
 
+    @Override
+    public void reset() {
+        count = 0;
+    }
+
     public void resolve(Program program) throws AsmError {
         count = expr.eval(program);
     }
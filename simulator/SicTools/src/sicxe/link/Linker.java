@@ -6,16 +6,20 @@ import sicxe.link.section.ExtDef;
 import sicxe.link.section.Section;
 import sicxe.link.section.Sections;
 import sicxe.link.utils.Parser;
+import sicxe.link.utils.Workers;
 import sicxe.link.visitors.FirstPassVisitor;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * main linker class
  * 'inputs' is a list of paths to .obj files to be linked
+ * 'texts' is a list of their contents, or null to read the files
  * 'options' is a list of linker options
  * link() performs the linking and returns the resulting Section
  */
@@ -23,11 +27,17 @@ public class Linker {
     private static final String PHASE = "linker";
 
     private List<String> inputs;
+    private List<String> texts;
     private Options options;
     public Relocations relocations;
 
     public Linker(List<String> inputs, Options options) {
+        this(inputs, null, options);
+    }
+
+    public Linker(List<String> inputs, List<String> texts, Options options) {
         this.inputs = inputs;
+        this.texts = texts;
         this.options = options;
     }
 
@@ -43,11 +53,38 @@ public class Linker {
 
     public Sections parse() throws LinkerError {
         // parse all the input files, add into a Sections class
+        // the files are parsed in parallel, their sections are added in the order of the inputs
         Sections sections = new Sections();
 
-        for (String input : inputs) {
-            Parser p = new Parser(input, options);
-            sections.addSections(p.parse());
+        // verbose messages are collected per file and printed in the order of the files,
+        // up to the file that failed, as if the files were parsed one after another
+        StringBuilder[] logs = new StringBuilder[inputs.size()];
+        boolean[] parsed = new boolean[inputs.size()];
+        List<Workers.Task<List<Section>>> parsers = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            int index = i;
+            String input = inputs.get(i);
+            String text = texts == null ? null : texts.get(i);
+            if (options.isVerbose()) logs[i] = new StringBuilder();
+            parsers.add(() -> {
+                Parser p = text == null ? new Parser(input, options)
+                        : new Parser(input, new StringReader(text), options);
+                p.setLog(logs[index]);
+                List<Section> result = p.parse();
+                parsed[index] = true;
+                return result;
+            });
+        }
+        try {
+            for (List<Section> result : Workers.runAll(parsers))
+                sections.addSections(result);
+        } finally {
+            if (options.isVerbose()) {
+                for (int i = 0; i < logs.length; i++) {
+                    System.out.print(logs[i]);
+                    if (!parsed[i]) break;
+                }
+            }
         }
 
         if (sections.getSections().size() == 0)
@@ -86,12 +123,12 @@ public class Linker {
             sections.setName(sections.getSections().get(0).getName());
 
 // External Symbol table - used in both visitors
-        Map<String, ExtDef> esTable = new HashMap<>();
+        Map<String, ExtDef> esTable = new ConcurrentHashMap<>();
 
         log("starting first pass");
         FirstPassVisitor firstPass = new FirstPassVisitor(esTable);
         firstPass.visit(sections);
-        log(sections.getSections(), esTable.values());
+        log(sections.getSections(), definitions(sections, esTable));
 
         log("starting second pass");
         // Ensure relocations exists even if verbosity was off earlier
@@ -120,6 +157,17 @@ public class Linker {
     }
 
 
+    // the external symbols in the order of the sections, as the table itself has no order
+    private static List<ExtDef> definitions(Sections sections, Map<String, ExtDef> esTable) {
+        List<ExtDef> definitions = new ArrayList<>(esTable.size());
+        for (Section section : sections.getSections()) {
+            definitions.add(esTable.get(section.getName()));
+            if (section.getExtDefs() != null)
+                definitions.addAll(section.getExtDefs());
+        }
+        return definitions;
+    }
+
     private void log(String str) {
         if (options.isVerbose()) {
             System.out.println();
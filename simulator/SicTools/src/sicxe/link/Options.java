@@ -16,6 +16,7 @@ public class Options {
     private boolean keep = false;     // keep the D records in the file - to allow further linking
     private boolean graphical = false;  // open the ui
     private boolean editing = false;    // allow changing sections & symbols before linking
+    private boolean binary = false;     // write a binary object file instead of text
 
     public Options(){}
 
@@ -109,6 +110,13 @@ public class Options {
                         processedArgs++;
                         break;
 
+                    case "-b":
+                    case "-binary":
+                        // binary output
+                        this.binary = true;
+                        processedArgs++;
+                        break;
+
                     case "-h":
                     case "-help":
                     default:
@@ -130,6 +138,7 @@ public class Options {
                         System.out.println();
                         System.out.println("-f : force linking even if not all references can be resolved");
                         System.out.println("-k : keep D records in the output file");
+                        System.out.println("-b : write a binary object file (.sxo)");
                         System.out.println("-v : display debugging messages during linking");
                         System.out.println("-g : displays a graphical interface");
                         System.out.println();
@@ -210,6 +219,14 @@ public class Options {
         this.editing = editing;
     }
 
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
     public String describeOptions() {
         StringBuilder builder = new StringBuilder();
         if (main != null)
@@ -220,6 +237,8 @@ public class Options {
             builder.append(" -v");
         if (keep)
             builder.append(" -k");
+        if (binary)
+            builder.append(" -b");
 
         return builder.toString();
     }
@@ -233,5 +252,6 @@ public class Options {
         this.keep = o.isKeep();
         this.graphical = o.isGraphical();
         this.editing = o.isEditing();
+        this.binary = o.isBinary();
     }
 }
@@ -0,0 +1,227 @@
+package sicxe.link.utils;
+
+import sicxe.link.LinkerError;
+import sicxe.link.section.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Binary object files, the same sections as .obj text in a form that loads with bulk copies
+ *
+ * all numbers are big-endian, names are a length byte followed by ASCII
+ *   magic "SXOB" (4), version (2), section count (2)
+ *   per section:
+ *     name, start (4), length (4), entry (4, -1 without an E record)
+ *     definitions: count (2), per definition name and address (4)
+ *     references: count (2), per reference name
+ *     text segments: count (4), per segment address (4), length (4) and bytes;
+ *                    adjacent T records are joined into one segment
+ *     relocations: count (4), per relocation address (4), nibbles (1), sign '+' or '-' (1) and symbol
+ *
+ * fromText() reads .obj text (without spaces between fields), including absolute sections;
+ * H, T and E records must have exactly their fields
+ */
+public class BinaryObject {
+    private static final String PHASE = "binary object";
+
+    public static final int MAGIC = 0x53584F42;     // "SXOB"
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".sxo";
+
+    // writing
+
+    public static byte[] write(List<Section> sections) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(sections.size());
+            for (Section section : sections)
+                writeSection(out, section);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);     // not thrown by a byte array
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeSection(DataOutputStream out, Section section) throws IOException {
+        writeName(out, section.getName());
+        out.writeInt((int) section.getStart());
+        out.writeInt((int) section.getLength());
+        out.writeInt(section.getERecord() == null ? -1 : (int) section.getERecord().getStartAddr());
+
+        List<ExtDef> defs = section.getExtDefs() == null ? List.of() : section.getExtDefs();
+        out.writeShort(defs.size());
+        for (ExtDef d : defs) {
+            writeName(out, d.getName());
+            out.writeInt((int) (d.getCsAddress() + d.getAddress()));
+        }
+
+        List<ExtRef> refs = section.getExtRefs() == null ? List.of() : section.getExtRefs();
+        out.writeShort(refs.size());
+        for (ExtRef r : refs)
+            writeName(out, r.getName());
+
+        // join the T records that continue each other
+        List<Integer> addresses = new ArrayList<>();
+        List<ByteArrayOutputStream> segments = new ArrayList<>();
+        ByteArrayOutputStream segment = null;
+        int next = -1;
+        if (section.getTRecords() != null)
+            for (TRecord t : section.getTRecords()) {
+                if (segment == null || t.getStartAddr() != next) {
+                    segment = new ByteArrayOutputStream();
+                    addresses.add((int) t.getStartAddr());
+                    segments.add(segment);
+                }
+                String text = t.getText();
+                for (int i = 0; i < t.getLength(); i++)
+                    segment.write(Integer.parseInt(text.substring(2 * i, 2 * i + 2), 16));
+                next = (int) (t.getStartAddr() + t.getLength());
+            }
+        out.writeInt(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            out.writeInt(addresses.get(i));
+            out.writeInt(segments.get(i).size());
+            segments.get(i).writeTo(out);
+        }
+
+        List<MRecord> mods = section.getMRecords() == null ? List.of() : section.getMRecords();
+        out.writeInt(mods.size());
+        for (MRecord m : mods) {
+            out.writeInt((int) m.getStart());
+            out.writeByte(m.getLength());
+            out.writeByte(m.isPositive() ? '+' : '-');
+            writeName(out, m.getSymbol());
+        }
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        byte[] bytes = (name == null ? "" : name).getBytes(StandardCharsets.US_ASCII);
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    // reading
+
+    public static List<Section> read(ByteBuffer in) throws LinkerError {
+        try {
+            int sectionCount = readHeader(in);
+            List<Section> sections = new ArrayList<>(sectionCount);
+            for (int s = 0; s < sectionCount; s++) {
+                Section section = new Section(readName(in), in.getInt(), in.getInt());
+                int entry = in.getInt();
+                if (entry >= 0) section.setERecord(new ERecord(entry));
+                for (int i = in.getShort() & 0xFFFF; i > 0; i--)
+                    section.addExtDef(new ExtDef(readName(in), in.getInt()));
+                for (int i = in.getShort() & 0xFFFF; i > 0; i--)
+                    section.addExtRef(new ExtRef(readName(in)));
+                for (int i = in.getInt(); i > 0; i--) {
+                    int address = in.getInt();
+                    int length = in.getInt();
+                    StringBuilder text = new StringBuilder(2 * length);
+                    for (int b = 0; b < length; b++)
+                        text.append(String.format("%02X", in.get() & 0xFF));
+                    section.addTRecord(new TRecord(address, length, text.toString()));
+                }
+                for (int i = in.getInt(); i > 0; i--) {
+                    int address = in.getInt();
+                    int nibbles = in.get() & 0xFF;
+                    boolean positive = in.get() != '-';
+                    section.addMRecord(new MRecord(address, nibbles, positive, readName(in)));
+                }
+                sections.add(section);
+            }
+            return sections;
+        } catch (BufferUnderflowException e) {
+            throw new LinkerError(PHASE, "Binary object ends too early");
+        }
+    }
+
+    /*
+     * checks the magic and the version
+     * returns the number of sections
+     */
+    public static int readHeader(ByteBuffer in) throws LinkerError {
+        if (in.remaining() < 8 || in.getInt() != MAGIC)
+            throw new LinkerError(PHASE, "Not a binary object");
+        int version = in.getShort();
+        if (version != VERSION)
+            throw new LinkerError(PHASE, "Unsupported binary object version " + version);
+        return in.getShort() & 0xFFFF;
+    }
+
+    public static String readName(ByteBuffer in) {
+        byte[] bytes = new byte[in.get() & 0xFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    // converting .obj text
+
+    public static List<Section> fromText(String text) throws LinkerError {
+        List<Section> sections = new ArrayList<>();
+        Section section = null;
+        int row = 0;
+        try {
+            for (String line : text.split("\n")) {
+                row++;
+                if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+                if (line.isEmpty()) continue;
+                char record = line.charAt(0);
+                if (record != 'H' && section == null)
+                    throw new LinkerError(PHASE, "Missing H record", new Location("", row));
+                switch (record) {
+                    case 'H':
+                        if (line.length() != 19) throw new NumberFormatException();
+                        section = new Section(line.substring(1, 7).trim(), hex(line, 7, 13), hex(line, 13, 19));
+                        sections.add(section);
+                        break;
+                    case 'D':
+                        for (int i = 1; i + 12 <= line.length(); i += 12) {
+                            section.addExtDef(new ExtDef(line.substring(i, i + 6).trim(), hex(line, i + 6, i + 12)));
+                            if (i + 12 < line.length() && line.charAt(i + 12) == ' ') i++;     // as the linker writes them
+                        }
+                        break;
+                    case 'R':
+                        for (int i = 1; i < line.length(); i += 6)
+                            section.addExtRef(new ExtRef(line.substring(i, Math.min(i + 6, line.length())).trim()));
+                        break;
+                    case 'T':
+                        if (line.length() != 9 + 2 * hex(line, 7, 9)) throw new NumberFormatException();
+                        section.addTRecord(new TRecord(hex(line, 1, 7), hex(line, 7, 9), line.substring(9)));
+                        break;
+                    case 'M':
+                        // without a symbol the section itself is added, as in Parser
+                        boolean positive = line.length() <= 9 || line.charAt(9) != '-';
+                        String symbol = line.length() > 10 ? line.substring(10).trim() : section.getName();
+                        section.addMRecord(new MRecord(hex(line, 1, 7), (int) hex(line, 7, 9), positive, symbol));
+                        break;
+                    case 'E':
+                        if (line.length() != 7) throw new NumberFormatException();
+                        section.setERecord(new ERecord(hex(line, 1, 7)));
+                        section = null;
+                        break;
+                    default:
+                        throw new LinkerError(PHASE, "Unexpected record '" + record + "'", new Location("", row));
+                }
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new LinkerError(PHASE, "Wrong record format", new Location("", row));
+        }
+        return sections;
+    }
+
+    private static long hex(String line, int from, int to) {
+        return Long.parseLong(line.substring(from, to), 16);
+    }
+
+}
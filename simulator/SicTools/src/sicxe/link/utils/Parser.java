@@ -8,26 +8,45 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
 /*
  * Parser for .obj files
  * "input" is the absolute path to the .obj file
+ * "source" is the content of the file if it is already in memory
  * parse() returns a list of Sections in the input file
  */
 public class Parser {
     private static final String PHASE = "parser";
 
     private String input;
+    private Reader source;
     private int row;
     private Options options;
+    // verbose messages go here when set, e.g. to print them in order after parsing in parallel
+    private StringBuilder log;
 
     public Parser(String input, Options options) {
+        this(input, null, options);
+    }
+
+    public Parser(String input, Reader source, Options options) {
         this.input = input;
+        this.source = source;
         this.options = options;
     }
 
+    public void setLog(StringBuilder log) {
+        this.log = log;
+    }
+
+    private void log(String message) {
+        if (log == null) System.out.println(message);
+        else log.append(message).append(System.lineSeparator());
+    }
+
     public List<Section> parse() throws LinkerError {
 
         List<Section> sects = new ArrayList<>();
@@ -35,7 +54,7 @@ public class Parser {
         try {
             Section currSect = null;
 
-            BufferedReader reader = new BufferedReader(new FileReader(input));
+            BufferedReader reader = new BufferedReader(source != null ? source : new FileReader(input));
 
             char c = (char) reader.read();
             row = 0;
@@ -53,7 +72,7 @@ public class Parser {
                         String h = reader.readLine();
                         row++;
                         if (options.isVerbose())
-                            System.out.println("reading H record: " + h);
+                            log("reading H record: " + h);
 
                         if (h.length() == 18) {
                             try {
@@ -83,7 +102,7 @@ public class Parser {
                         String e = reader.readLine();
                         row++;
                         if (options.isVerbose())
-                            System.out.println("reading E record: " + e);
+                            log("reading E record: " + e);
 
                         long startAddr = Long.decode("0x" + e);
 
@@ -106,7 +125,7 @@ public class Parser {
                         String t = reader.readLine();
                         row++;
                         if (options.isVerbose())
-                            System.out.println("reading T record: " + t);
+                            log("reading T record: " + t);
 
 
                         long tStart = Long.decode("0x" + t.substring(0,6));
@@ -126,7 +145,7 @@ public class Parser {
                         String m = reader.readLine();
                         row++;
                         if (options.isVerbose())
-                            System.out.println("reading M record: " + m);
+                            log("reading M record: " + m);
 
                         long mStart = Long.decode("0x" + m.substring(0,6));
                         long mLength = Long.decode("0x" + m.substring(6,8)); // number of hex chars, not bytes
@@ -157,7 +176,7 @@ public class Parser {
                         row++;
 
                         if (options.isVerbose())
-                            System.out.println("reading R record: " + r);
+                            log("reading R record: " + r);
 
                         for (int i=0; i<r.length(); i+=6) {
                             String sym = r.substring(i, i+6).replace(" ", "");
@@ -176,7 +195,7 @@ public class Parser {
                         row++;
 
                         if (options.isVerbose())
-                            System.out.println("reading D record: " + d);
+                            log("reading D record: " + d);
 
                         //TODO: check if there should be spaces between symbols
 
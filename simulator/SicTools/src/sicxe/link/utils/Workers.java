@@ -0,0 +1,84 @@
+package sicxe.link.utils;
+
+import sicxe.link.LinkerError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Runs independent parts of the linking (parsing files, visiting sections) on a shared pool
+ *
+ * results come back in the order of the tasks and the error of the first failing task is thrown,
+ * so the outcome does not depend on which thread finishes first
+ */
+public class Workers {
+
+    public interface Task<T> {
+        T run() throws LinkerError;
+    }
+
+    public static final int THREADS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, task -> {
+        Thread thread = new Thread(task, "linker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // carries a LinkerError (a Throwable) out of a pool thread
+    private static class Failure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final LinkerError error;
+
+        Failure(LinkerError error) {
+            this.error = error;
+        }
+    }
+
+    public static <T> List<T> runAll(List<Task<T>> tasks) throws LinkerError {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() <= 1 || THREADS == 1) {
+            for (Task<T> task : tasks)
+                results.add(task.run());
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Task<T> task : tasks)
+            futures.add(POOL.submit(() -> {
+                try {
+                    return task.run();
+                } catch (LinkerError e) {
+                    throw new Failure(e);
+                }
+            }));
+
+        boolean interrupted = false;
+        try {
+            for (Future<T> future : futures) {
+                while (true) {
+                    try {
+                        results.add(future.get());
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;     // finish the link, the tasks are running anyway
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Failure) throw ((Failure) cause).error;
+                        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                        if (cause instanceof Error) throw (Error) cause;
+                        throw new IllegalStateException(cause);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+}
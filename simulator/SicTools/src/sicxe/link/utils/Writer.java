@@ -6,10 +6,14 @@ import sicxe.link.section.*;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
 
 /*
- * Writes a section to a specified .obj file
+ * Writes a section to a specified .obj file, or a binary object file with the -b option
  *
  * if skipExt is set to true, it will skip any external symbols and M records referencing them
  */
@@ -28,10 +32,14 @@ public class Writer {
         PrintWriter writer;
 
         if (options.getOutputPath() == null) {
-            options.setOutputName(section.getName() + "_ln.obj");
-            options.setOutputPath(section.getName() + "_ln.obj");
+            String extension = options.isBinary() ? BinaryObject.EXTENSION : ".obj";
+            options.setOutputName(section.getName() + "_ln" + extension);
+            options.setOutputPath(section.getName() + "_ln" + extension);
         }
 
+        if (options.isBinary())
+            return writeBinary();
+
         try {
             writer = new PrintWriter(options.getOutputPath());
         } catch (FileNotFoundException e) {
@@ -44,9 +52,51 @@ public class Writer {
         if (section.getName().length() > 6)
             section.setName(section.getName().substring(0,6));
 
+        print(writer);
+
+        writer.flush();
+        writer.close();
+        return new File(options.getOutputPath());
+    }
+
+    private File writeBinary() throws LinkerError {
+        if (options.isVerbose())
+            System.out.println("writing the result to " + options.getOutputPath());
+
+        try (FileOutputStream out = new FileOutputStream(options.getOutputPath())) {
+            out.write(toBinary());
+        } catch (IOException e) {
+            throw new LinkerError(PHASE, "Unable to write to " + options.getOutputPath());
+        }
+        return new File(options.getOutputPath());
+    }
+
+    /*
+     * returns the section as the content of a binary object file (see BinaryObject)
+     */
+    public byte[] toBinary() {
+        return BinaryObject.write(List.of(section));
+    }
+
+    /*
+     * returns the section as the content of an .obj file, without writing it
+     */
+    public String toText() {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        print(writer);
+        writer.flush();
+        return text.toString();
+    }
+
+    private void print(PrintWriter writer) {
+        String name = section.getName();
+        if (name.length() > 6)
+            name = name.substring(0,6);
+
         // header
         writer.print("H");
-        writer.printf("%-6s", section.getName());
+        writer.printf("%-6s", name);
         writer.printf("%06X", section.getStart());
         writer.printf("%06X", section.getLength());
         writer.print('\n');
@@ -110,10 +160,6 @@ public class Writer {
             writer.printf("%06X", section.getERecord().getStartAddr());
             writer.print('\n');
         }
-
-        writer.flush();
-        writer.close();
-        return new File(options.getOutputPath());
     }
 
     public Section getSection() {
@@ -2,9 +2,12 @@ package sicxe.link.visitors;
 
 import sicxe.link.LinkerError;
 import sicxe.link.section.*;
+import sicxe.link.utils.Workers;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /*
@@ -15,6 +18,10 @@ import java.util.Map;
  *  changes text record start addresses
  *
  *  note: in the book, TextRecord changing is done in second pass, in my implementation it was easier here
+ *
+ *  the section addresses and names are set in the order of the sections, after that the sections'
+ *  records are visited in parallel, so the EStable must be a concurrent map; when a name is defined
+ *  twice, the definitions are checked again in order to report the same error as a sequential pass
  */
 public class FirstPassVisitor extends SectionVisitor {
     private static final String PHASE = "first pass";
@@ -23,7 +30,9 @@ public class FirstPassVisitor extends SectionVisitor {
     public Map<String, Section> csTable; // map list of all sections
     public Map<String, ExtDef> esTable;   // map of all external symbols
 
+    private final List<Section> placed = new ArrayList<>();   // in order
     private long csAddr;
+    private volatile boolean redefined;
 
     public FirstPassVisitor(Map<String, ExtDef> esTable) {
         this.esTable = esTable;
@@ -32,8 +41,32 @@ public class FirstPassVisitor extends SectionVisitor {
         csAddr = 0;
     }
 
+    @Override
+    public void visit(Sections sections) throws LinkerError {
+        for (Section section : sections.getSections())
+            place(section);
+
+        List<Workers.Task<Void>> tasks = new ArrayList<>();
+        for (Section section : sections.getSections())
+            tasks.add(() -> {
+                visitRecords(section);
+                return null;
+            });
+        Workers.runAll(tasks);
+
+        if (redefined)
+            checkDefinitions();
+    }
+
     @Override
     public void visit(Section section) throws LinkerError {
+        place(section);
+        visitRecords(section);
+        if (redefined)
+            checkDefinitions();
+    }
+
+    private void place(Section section) throws LinkerError {
         String name = section.getName();
 
         // set the section start address0
@@ -42,6 +75,7 @@ public class FirstPassVisitor extends SectionVisitor {
         // fill the CStable
         if (csTable.get(name) == null) {
             csTable.put(name, section);
+            placed.add(section);
             // add a new extdef with section name -
             // 'section names are automatically considered to be external symbols'
             esTable.put(name, new ExtDef(name, 0, section.getStart()));
@@ -50,9 +84,17 @@ public class FirstPassVisitor extends SectionVisitor {
                     + section.getLocation() + " and " + csTable.get(name).getLocation());
         }
 
+        // increment the section address
+        csAddr += section.getLength();
+    }
+
+    private void visitRecords(Section section) throws LinkerError {
         if (section.getExtDefs() != null) {
-            for (ExtDef extDef : section.getExtDefs())
-                extDef.accept(this);
+            for (ExtDef extDef : section.getExtDefs()) {
+                // set the section address
+                extDef.setCsAddress(section.getStart());
+                define(extDef);
+            }
         }
 
         if (section.getTRecords() != null) {
@@ -68,35 +110,35 @@ public class FirstPassVisitor extends SectionVisitor {
                     return 0;
             });
 
-            // visit all T records
+            // add section address to the startAddr
             for (TRecord tRecord : section.getTRecords())
-                tRecord.accept(this);
+                tRecord.setStartAddr(tRecord.getStartAddr() + section.getStart());
         }
-
-        // increment the section address
-        csAddr += section.getLength();
     }
 
-    @Override
-    public void visit(ExtDef extDef) throws LinkerError {
-        String name = extDef.getName();
-
-        // set the section address
-        extDef.setCsAddress(csAddr);
-
-        // fill the EStable
-        if (esTable.get(name) == null) {
-            esTable.put(name, extDef);
-        } else {
-            throw new LinkerError(PHASE, "Duplicated external symbol definition '" +  name + "'", extDef.getLocation());
-        }
+    // fill the EStable
+    private void define(ExtDef extDef) {
+        if (esTable.putIfAbsent(extDef.getName(), extDef) != null)
+            redefined = true;
     }
 
-    @Override
-    public void visit(TRecord tRecord) {
-        // add section address to the startAddr
-        long start = tRecord.getStartAddr();
-        tRecord.setStartAddr(start + csAddr);
+    // defines the names in the order of a sequential pass: a D record may not reuse a name defined
+    // before it, a section name replaces a D record of an earlier section
+    private void checkDefinitions() throws LinkerError {
+        Map<String, Location> defined = new HashMap<>();   // where each name was first defined
+        for (Section section : placed) {
+            defined.put(section.getName(), section.getLocation());
+            if (section.getExtDefs() == null) continue;
+            for (ExtDef extDef : section.getExtDefs()) {
+                String name = extDef.getName();
+                if (!defined.containsKey(name)) {
+                    defined.put(name, extDef.getLocation());
+                } else {
+                    throw new LinkerError(PHASE, "Duplicated external symbol definition '" + name
+                            + "', first defined at " + defined.get(name), extDef.getLocation());
+                }
+            }
+        }
     }
 
 }
@@ -5,6 +5,7 @@ import sicxe.link.LinkerError;
 import sicxe.link.Options;
 import sicxe.link.section.*;
 
+import java.util.Arrays;
 import java.util.Map;
 
 /*
@@ -23,6 +24,10 @@ public class SecondPassVisitor extends SectionVisitor {
 
     private Section currSection = null;
 
+    // T-records of the current section by address, null when they overlap (then they are scanned)
+    private TRecord[] tRecords;
+    private long[] tRecordStarts;
+
     public SecondPassVisitor(String progname, Map<String, ExtDef> esTable, Options options, Relocations relocations) {
         this.progname = progname;
         this.esTable = esTable;
@@ -33,6 +38,7 @@ public class SecondPassVisitor extends SectionVisitor {
     @Override
     public void visit(Section section) throws LinkerError {
         currSection = section;
+        index(section);
 
         // visit all mRecords
         if (section.getMRecords() != null) {
@@ -42,6 +48,29 @@ public class SecondPassVisitor extends SectionVisitor {
         }
     }
 
+    // the first pass sorts the T-records, so only overlapping ones (e.g. after ORG) are not indexed
+    private void index(Section section) {
+        tRecords = null;
+        tRecordStarts = null;
+        if (section.getTRecords() == null) return;
+        TRecord[] records = section.getTRecords().toArray(new TRecord[0]);
+        long[] starts = new long[records.length];
+        for (int i = 0; i < records.length; i++) {
+            starts[i] = records[i].getStartAddr();
+            if (i > 0 && starts[i] < starts[i - 1] + records[i - 1].getLength()) return;
+        }
+        tRecords = records;
+        tRecordStarts = starts;
+    }
+
+    // the T-record containing the address, or null
+    private TRecord find(long address) {
+        int i = Arrays.binarySearch(tRecordStarts, address);
+        if (i < 0) i = -i - 2;     // the last record starting before the address
+        if (i < 0 || !tRecords[i].contains(address)) return null;
+        return tRecords[i];
+    }
+
     @Override
     public void visit(MRecord mRecord) throws LinkerError {
         if (mRecord.getSymbol() != null && !mRecord.getSymbol().equals(progname)) {
@@ -63,8 +92,12 @@ public class SecondPassVisitor extends SectionVisitor {
             // find the T-record(s) that have to be fixed
             TRecord fixRecord = null;
             TRecord fixRecordEnd = null;
-            int found = 0;
-            if (currSection.getTRecords() != null) {
+            if (tRecordStarts != null) {
+                fixRecord = find(fixAddressStart);
+                if (fixRecord != null && !fixRecord.contains(fixAddressEnd))
+                    fixRecordEnd = find(fixAddressEnd);
+            } else if (currSection.getTRecords() != null) {
+                int found = 0;
                 for (TRecord tRecord : currSection.getTRecords()) {
                     if (tRecord.contains(fixAddressStart)) {
                         found++;
@@ -107,12 +140,14 @@ public class SecondPassVisitor extends SectionVisitor {
             }
 
             // Compute corrected value
-            long corrected = Long.decode("0x" + oldHalfBytes); // half-bytes, not necessarily aligned
+            long corrected = Long.parseLong(oldHalfBytes, 16); // half-bytes, not necessarily aligned
             corrected += symbol.getCsAddress();
             if (mRecord.isPositive()) corrected += symbol.getAddress();
             else corrected -= symbol.getAddress();
 
-            String newHalfBytes = String.format("%0" + len + "X", corrected);
+            String newHalfBytes = corrected >= 0 && len < 16 && corrected < 1L << 4 * len
+                    ? hex(corrected, len)
+                    : String.format("%0" + len + "X", corrected);
 
             // --- Apply the patch back into the (possibly concatenated) string ---
             String newConcat =
@@ -176,4 +211,12 @@ public class SecondPassVisitor extends SectionVisitor {
         }
         // else: normal (non-external) M-record — ignore
     }
+
+    // value as exactly len upper-case hex digits, the value must fit
+    private static String hex(long value, int len) {
+        char[] digits = new char[len];
+        for (int i = len - 1; i >= 0; i--, value >>>= 4)
+            digits[i] = "0123456789ABCDEF".charAt((int) value & 0xF);
+        return new String(digits);
+    }
 }
@@ -5,15 +5,33 @@ import sicxe.asm.ErrorCatcher;
 import sicxe.ast.Program;
 import sicxe.common.Logger;
 import sicxe.common.Utils;
+import sicxe.link.LinkerError;
+import sicxe.link.section.ExtDef;
+import sicxe.link.section.Location;
+import sicxe.link.section.MRecord;
+import sicxe.link.section.Section;
+import sicxe.link.section.TRecord;
+import sicxe.link.utils.BinaryObject;
 import sicxe.sim.vm.Machine;
 import sicxe.sim.vm.Memory;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author: jure
  */
 public class Loader {
+    private static final String RELOCATION = "relocating loader";
 
     public static void skipWhitespace(Reader r) throws IOException {
 //TODO:        while (Character.isWhitespace((char)r.read()));
@@ -37,7 +55,7 @@ public class Loader {
     }
 
     public static void loadRawCode(Machine machine, int address, byte[] code) {
-        System.arraycopy(code, 0, machine.memory.memory, address, code.length);
+        machine.memory.setBytesRaw(address, code);
         machine.registers.setPC(address);
     }
 
@@ -85,6 +103,175 @@ public class Loader {
         return true;
     }
 
+    // load a linked section straight from its records, as loadSection(Reader) loads its text
+    public static boolean loadSection(Machine machine, Section section) {
+        int start = (int) section.getStart();
+        int length = (int) section.getLength();
+        Memory mem = machine.memory;
+        // text records
+        if (section.getTRecords() != null)
+            for (TRecord t : section.getTRecords()) {
+                int loc = (int) t.getStartAddr();
+                int len = (int) t.getLength();
+                String text = t.getText();
+                byte[] code = new byte[len];
+                int inside = 0;
+                while (inside < len && loc + inside >= start && loc + inside < start + length) {
+                    code[inside] = (byte) Integer.parseInt(text.substring(2 * inside, 2 * inside + 2), 16);
+                    inside++;
+                }
+                mem.setBytesRaw(loc, inside < len ? Arrays.copyOf(code, inside) : code);
+                if (inside < len) return false;
+            }
+        // the text has D and R records before the end record, where the loader stops
+        if (section.getExtDefs() != null && !section.getExtDefs().isEmpty()) return false;
+        if (section.getExtRefs() != null && !section.getExtRefs().isEmpty()) return false;
+        // load end record
+        if (section.getERecord() == null) return false;
+        machine.registers.setPC((int) section.getERecord().getStartAddr());
+        return true;
+    }
+
+    // load the first section of a binary object (see BinaryObject), as loadSection(Reader) loads its text
+    public static boolean loadBinary(Machine machine, ByteBuffer in) {
+        try {
+            if (BinaryObject.readHeader(in) == 0) return false;
+            BinaryObject.readName(in);     // name is ignored
+            int start = in.getInt();
+            int length = in.getInt();
+            int entry = in.getInt();
+            for (int i = in.getShort() & 0xFFFF; i > 0; i--) {
+                BinaryObject.readName(in);
+                in.getInt();
+            }
+            for (int i = in.getShort() & 0xFFFF; i > 0; i--)
+                BinaryObject.readName(in);
+            // text segments, copied as a whole
+            Memory mem = machine.memory;
+            for (int i = in.getInt(); i > 0; i--) {
+                int loc = in.getInt();
+                int len = in.getInt();
+                // bytes up to the first one outside the section
+                int inside = loc < start ? 0 : Math.max(0, Math.min(len, start + length - loc));
+                mem.setBytesRaw(loc, in, inside);
+                if (inside < len) return false;
+            }
+            // relocations are not applied
+            if (entry < 0) return false;
+            machine.registers.setPC(entry);
+        } catch (LinkerError | BufferUnderflowException e) {
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean loadBinary(Machine machine, String filename) {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            return loadBinary(machine, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            Logger.fmterr("Error reading file '%s'.", filename);
+            return false;
+        }
+    }
+
+    /*
+     * relocating loader: places the sections one after another from loadAddress and applies
+     * their M records in memory, as a linking loader does
+     * M records of a section's own name add how far the section moved, other symbols are
+     * looked up among the sections' names and D records and then in symbols (e.g. of earlier loads)
+     * the sections may not define a name that is already in symbols
+     * PC is set to the relocated entry of the first section, if it has an E record
+     * returns the addresses of the sections' names and D records, also added to symbols
+     */
+    public static Map<String, Integer> loadRelocated(Machine machine, List<Section> sections, int loadAddress,
+                                                     Map<String, Integer> symbols) throws LinkerError {
+        // first pass: section and definition addresses
+        Map<String, Integer> loaded = new LinkedHashMap<>();
+        int[] delta = new int[sections.size()];
+        int address = loadAddress;
+        for (int i = 0; i < sections.size(); i++) {
+            Section section = sections.get(i);
+            if (address < 0 || address + section.getLength() > Machine.MAX_ADDRESS + 1)
+                throw new LinkerError(RELOCATION, "Section " + section.getName() + " does not fit into memory at " + Integer.toHexString(address));
+            delta[i] = address - (int) section.getStart();
+            define(loaded, symbols, section.getName(), address);
+            if (section.getExtDefs() != null)
+                for (ExtDef d : section.getExtDefs())
+                    define(loaded, symbols, d.getName(), (int) (d.getCsAddress() + d.getAddress()) + delta[i]);
+            address += (int) section.getLength();
+        }
+        Map<String, Integer> known = new HashMap<>(symbols);
+        known.putAll(loaded);
+
+        // second pass: text, then modifications on top of it
+        Memory mem = machine.memory;
+        for (int i = 0; i < sections.size(); i++) {
+            Section section = sections.get(i);
+            if (section.getTRecords() != null)
+                for (TRecord t : section.getTRecords())
+                    mem.setBytesRaw((int) t.getStartAddr() + delta[i], textBytes(t));
+            if (section.getMRecords() != null)
+                for (MRecord m : section.getMRecords()) {
+                    int value;
+                    if (m.getSymbol() == null || m.getSymbol().equals(section.getName()))
+                        value = delta[i];
+                    else if (known.containsKey(m.getSymbol()))
+                        value = known.get(m.getSymbol());
+                    else
+                        throw new LinkerError(RELOCATION, m.getSymbol() + " is not defined in any section", new Location(section.getName()));
+                    modify(mem, (int) m.getStart() + delta[i], m.getLength(), m.isPositive() ? value : -value);
+                }
+        }
+
+        Section first = sections.isEmpty() ? null : sections.get(0);
+        if (first != null && first.getERecord() != null)
+            machine.registers.setPC((int) first.getERecord().getStartAddr() + delta[0]);
+        symbols.putAll(loaded);
+        return loaded;
+    }
+
+    public static Map<String, Integer> loadRelocated(Machine machine, List<Section> sections, int loadAddress) throws LinkerError {
+        return loadRelocated(machine, sections, loadAddress, new HashMap<>());
+    }
+
+    // the sections of .obj text (without spaces between fields)
+    public static Map<String, Integer> loadRelocated(Machine machine, String objText, int loadAddress) throws LinkerError {
+        return loadRelocated(machine, BinaryObject.fromText(objText), loadAddress);
+    }
+
+    // the sections of a binary object
+    public static Map<String, Integer> loadRelocated(Machine machine, ByteBuffer in, int loadAddress) throws LinkerError {
+        return loadRelocated(machine, BinaryObject.read(in), loadAddress);
+    }
+
+    private static byte[] textBytes(TRecord t) {
+        String text = t.getText();
+        byte[] bytes = new byte[(int) t.getLength()];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(text.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+    // a name may be defined once, among the loaded sections and the symbols of earlier loads
+    private static void define(Map<String, Integer> loaded, Map<String, Integer> symbols, String name, int address) throws LinkerError {
+        if (symbols.containsKey(name))
+            throw new LinkerError(RELOCATION, "Duplicated symbol: " + name + ", already loaded at " + Integer.toHexString(symbols.get(name)));
+        if (loaded.put(name, address) != null)
+            throw new LinkerError(RELOCATION, "Duplicated symbol: " + name);
+    }
+
+    // adds value to the field of the given half-bytes ending at the last byte, e.g. 5 for format 4 addresses
+    private static void modify(Memory mem, int address, int halfBytes, int value) {
+        int bytes = (halfBytes + 1) / 2;
+        long word = 0;
+        for (int i = 0; i < bytes; i++)
+            word = word << 8 | mem.getByteRaw(address + i);
+        long mask = (1L << 4 * halfBytes) - 1;
+        word = word & ~mask | (word + value) & mask;
+        for (int i = bytes - 1; i >= 0; i--, word >>= 8)
+            mem.setByteRaw(address + i, (int) word & 0xFF);
+    }
+
     public static boolean loadObj(Machine machine, String filename) {
         try {
             Reader reader = new FileReader(filename);
@@ -17,6 +17,11 @@ import java.util.function.Predicate;
 public class Executor {
     public static final int MaxSpeed = 100000000; // Hz
 
+    /**
+     * Reason why {@link #runBatch(long, long)} returned.
+     */
+    public enum StopReason { LIMIT, TIMEOUT, HALT, BREAKPOINT, DATA_BREAKPOINT }
+
     public final Machine machine;
     private Timer timer;
     private int timerPeriod;        // timer period in miliseconds
@@ -87,6 +92,8 @@ public class Executor {
                 stop();
                 if (printStats) {
                     System.out.printf("Instructions executed: %d\n", machine.getInstructionCount());
+                    System.out.printf("Decode cache hits: %d, misses: %d\n",
+                            machine.getDecodeCache().getHits(), machine.getDecodeCache().getMisses());
                 }
                 break;
             }
@@ -119,6 +126,51 @@ public class Executor {
         }, 0, timerPeriod);
     }
 
+    /**
+     * Run synchronously on the calling thread (no timer) until the instruction limit,
+     * the time budget, a halt or a breakpoint is reached.
+     * @param maxInstructions Maximum number of instructions to execute.
+     * @param timeBudgetNanos Wall-clock budget in nanoseconds, unlimited if not positive.
+     * @return Reason why the run stopped.
+     */
+    public StopReason runBatch(long maxInstructions, long timeBudgetNanos) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        // compiled blocks run many instructions at once, breakpoints are only checked after each block
+        boolean blocks = machine.getEngine() == Machine.Engine.JIT && breakpoints.count() == 0;
+        long nextClockCheck = 0xFFF;
+        for (long i = 0; i < maxInstructions; ) {
+            // reading the clock is not free, so only check it every 4096 instructions
+            if (timeBudgetNanos > 0 && i >= nextClockCheck) {
+                nextClockCheck = i + 0x1000;
+                if (System.nanoTime() - deadline >= 0) return StopReason.TIMEOUT;
+            }
+            int oldPC = machine.registers.getPC();
+            int count = machine.getInstructionCount();
+
+            try {
+                if (blocks) oldPC = machine.executeBlock(maxInstructions - i);
+                else machine.execute();
+
+                if (!dataBreakpoints.isEnabled()) {
+                    // Enable data breakpoints in case they got disabled because they were triggered.
+                    dataBreakpoints.enable();
+                }
+            } catch (DataBreakpointException ex) {
+                machine.registers.setPC(oldPC); // reset PC to old one - instruction didn't execute anyway
+                hasChanged = true;
+                return StopReason.DATA_BREAKPOINT;
+            }
+
+            hasChanged = true;
+            i += machine.getInstructionCount() - count;
+            // check if the same instruction: halt J halt
+            if (oldPC == machine.registers.getPC()) return StopReason.HALT;
+            // check breakpoints
+            if (breakpoints.has(machine.registers.getPC())) return StopReason.BREAKPOINT;
+        }
+        return StopReason.LIMIT;
+    }
+
     public void start() {
         Predicate<Machine> stopPredicate = x -> false; // Never stop - no additional stop condition
         runUntil(stopPredicate);
@@ -1,38 +1,64 @@
 package sicxe.sim.breakpoints;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
+ * Address breakpoints, kept as a bitmap over the whole 20-bit address space
+ * so that checking the PC after every instruction is a single bit test.
  * @author: jure
  */
 public class Breakpoints {
 
-    // list of addresses of breakpoints
-    private List<Integer> addrs;
+    public static final int CAPACITY = 1 << 20;
+
+    // one bit per address: 1 MiB addresses -> 128 KiB bitmap
+    private final long[] bits = new long[CAPACITY >>> 6];
+    private int count;
 
     public boolean has(int addr) {
-        return addrs.contains(addr);
+        int word = addr >>> 6;  // negative addresses end up out of range
+        return word < bits.length && (bits[word] & (1L << addr)) != 0;
     }
 
     public void add(int addr) {
-        if (!has(addr)) addrs.add(addr);
+        if (addr < 0 || addr >= CAPACITY || has(addr)) return;
+        bits[addr >>> 6] |= 1L << addr;
+        count++;
     }
 
     public void remove(int addr) {
-        addrs.remove((Integer)addr);
+        if (!has(addr)) return;
+        bits[addr >>> 6] &= ~(1L << addr);
+        count--;
     }
 
     public void removeAll() {
-        addrs = new ArrayList<Integer>();
+        Arrays.fill(bits, 0L);
+        count = 0;
     }
 
     public void toggleBreakpoint(int addr) {
         if (has(addr)) remove(addr); else add(addr);
     }
 
-    public Breakpoints() {
-        addrs = new ArrayList<Integer>();
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return addresses of all breakpoints in ascending order.
+     */
+    public int[] toArray() {
+        int[] addrs = new int[count];
+        int n = 0;
+        for (int w = 0; w < bits.length && n < count; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                addrs[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return addrs;
     }
 
 }
@@ -14,6 +14,9 @@ public class DataBreakpoint {
 
     private boolean enabled = true;
 
+    // set while registered, notified about changes so its address index stays current
+    private DataBreakpoints owner;
+
     // ----------------------
     // |    Constructor     |
     // ----------------------
@@ -55,14 +58,17 @@ public class DataBreakpoint {
 
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
+        changed();
     }
 
     public void setRead(boolean read) {
         this.read = read;
+        changed();
     }
 
     public void setWrite(boolean write) {
         this.write = write;
+        changed();
     }
 
     public void setRange(int from, int to) {
@@ -72,6 +78,7 @@ public class DataBreakpoint {
 
         this.from = from;
         this.to = to;
+        changed();
     }
 
     public boolean getRead() {
@@ -84,10 +91,20 @@ public class DataBreakpoint {
 
     public void toggleRead() {
         this.read = !this.read;
+        changed();
     }
 
     public void toggleWrite() {
         this.write = !this.write;
+        changed();
+    }
+
+    void setOwner(DataBreakpoints owner) {
+        this.owner = owner;
+    }
+
+    private void changed() {
+        if (owner != null) owner.invalidateIndex();
     }
 
     // ----------------------
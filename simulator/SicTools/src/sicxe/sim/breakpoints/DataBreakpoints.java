@@ -1,11 +1,28 @@
 package sicxe.sim.breakpoints;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 
+/**
+ * Data breakpoints (watchpoints) on memory ranges.
+ * Watched addresses are indexed in per-page bitmaps, one for reads and one for writes,
+ * so checking an access is O(1) regardless of the number and size of the ranges.
+ * Only a hit scans the list to find the breakpoint to report.
+ */
 public class DataBreakpoints {
+    public static final int CAPACITY = 1 << 20;             // 20-bit address space
+    private static final int PAGE_SHIFT = 12;               // 4 KiB pages
+    private static final int PAGE_WORDS = (1 << PAGE_SHIFT) >>> 6;
+
     private ArrayList<DataBreakpoint> breakpoints = new ArrayList<>();
 
+    // bitmaps of watched addresses per page, a null page has no watched address
+    private final long[][] readPages = new long[CAPACITY >>> PAGE_SHIFT][];
+    private final long[][] writePages = new long[CAPACITY >>> PAGE_SHIFT][];
+    // rebuilt lazily after breakpoints are added, removed or changed
+    private boolean indexValid = true;
+
     private boolean enabled = false;
 
     public boolean isEnabled() {
@@ -20,6 +37,18 @@ public class DataBreakpoints {
         this.enabled = false;
     }
 
+    /**
+     * Whether accesses have to be checked at all: memory skips the per-byte checks otherwise.
+     * @return true if enabled and at least one breakpoint is registered
+     */
+    public boolean isActive() {
+        return enabled && !breakpoints.isEmpty();
+    }
+
+    public int count() {
+        return breakpoints.size();
+    }
+
     public Iterator<DataBreakpoint> getBreakpointsIterator() {
         return breakpoints.iterator();
     }
@@ -31,6 +60,8 @@ public class DataBreakpoints {
      */
     public void checkRead(int address) throws ReadDataBreakpointException {
         if (!this.enabled) return;
+        if (!indexValid) rebuildIndex();
+        if (!isMarked(readPages, address)) return;
 
         for (DataBreakpoint breakpoint : breakpoints) {
             if (breakpoint.checkRead(address)) {
@@ -47,6 +78,8 @@ public class DataBreakpoints {
      */
     public void checkWrite(int address) throws WriteDataBreakpointException {
         if (!this.enabled) return;
+        if (!indexValid) rebuildIndex();
+        if (!isMarked(writePages, address)) return;
 
         for (DataBreakpoint breakpoint : breakpoints) {
             if (breakpoint.checkWrite(address)) {
@@ -58,21 +91,58 @@ public class DataBreakpoints {
 
     public void add(DataBreakpoint breakpoint) {
         this.breakpoints.add(breakpoint);
+        breakpoint.setOwner(this);
+        invalidateIndex();
     }
 
     public void remove(DataBreakpoint breakpoint) {
-        this.breakpoints.remove(breakpoint);
+        if (this.breakpoints.remove(breakpoint)) {
+            breakpoint.setOwner(null);
+            invalidateIndex();
+        }
     }
 
     public void remove(int breakpointIndex) {
-        this.breakpoints.remove(breakpointIndex);
+        this.breakpoints.remove(breakpointIndex).setOwner(null);
+        invalidateIndex();
     }
 
     public DataBreakpoint at(int index) {
         return this.breakpoints.get(index);
     }
 
+    // ----------------------
+    // Address index
 
-}
+    void invalidateIndex() {
+        indexValid = false;
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(readPages, null);
+        Arrays.fill(writePages, null);
+        for (DataBreakpoint breakpoint : breakpoints) {
+            if (!breakpoint.isEnabled()) continue;
+            if (breakpoint.getRead()) mark(readPages, breakpoint.getFrom(), breakpoint.getTo());
+            if (breakpoint.getWrite()) mark(writePages, breakpoint.getFrom(), breakpoint.getTo());
+        }
+        indexValid = true;
+    }
 
+    private static void mark(long[][] pages, int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, CAPACITY - 1);
+        for (int address = from; address <= to; address++) {
+            long[] page = pages[address >>> PAGE_SHIFT];
+            if (page == null) page = pages[address >>> PAGE_SHIFT] = new long[PAGE_WORDS];
+            page[(address >>> 6) & (PAGE_WORDS - 1)] |= 1L << address;
+        }
+    }
 
+    private static boolean isMarked(long[][] pages, int address) {
+        if (address < 0 || address >= CAPACITY) return false;
+        long[] page = pages[address >>> PAGE_SHIFT];
+        return page != null && (page[(address >>> 6) & (PAGE_WORDS - 1)] & 1L << address) != 0;
+    }
+
+}
@@ -0,0 +1,96 @@
+package sicxe.sim.vm;
+
+import java.util.Arrays;
+
+/**
+ * Compiled blocks of the {@link Machine.Engine#JIT} engine, direct-mapped by start address,
+ * and counters of interpreted executions that tell when an address is hot enough to compile.
+ *
+ * Memory notifies the cache about every write; blocks covering a written byte are dropped
+ * (a running block notices and stops after the store).
+ */
+final class BlockCache {
+
+    static final int SIZE = 1 << 12;                // number of entries, power of two
+    private static final int MASK = SIZE - 1;
+    static final int HOT = 256;                     // interpreted executions before compiling
+
+    private final CompiledBlock[] blocks = new CompiledBlock[SIZE];
+    // execution counters, a colliding address restarts the count
+    private final int[] counterTags = new int[SIZE];
+    private final int[] counters = new int[SIZE];
+    // bytes covered by some compiled block; writes elsewhere are ignored quickly
+    private final long[] codeBits = new long[(Machine.MAX_ADDRESS + 1) >>> 6];
+
+    private long compiled;
+
+    /**
+     * @return the block starting at the given address or null.
+     */
+    CompiledBlock lookup(int address) {
+        CompiledBlock block = blocks[address & MASK];
+        return block != null && block.start == address ? block : null;
+    }
+
+    /**
+     * Count an interpreted execution of the instruction at the given address.
+     * @return true once the address is hot
+     */
+    boolean countExecution(int address) {
+        int slot = address & MASK;
+        if (counterTags[slot] != address) {
+            counterTags[slot] = address;
+            counters[slot] = 0;
+        }
+        return ++counters[slot] >= HOT;
+    }
+
+    void put(CompiledBlock block) {
+        int slot = block.start & MASK;
+        if (blocks[slot] != null) blocks[slot].valid = false;
+        blocks[slot] = block;
+        counters[slot] = 0;
+        int end = Math.min(block.end, Machine.MAX_ADDRESS + 1);
+        for (int address = block.start; address < end; address++)
+            codeBits[address >>> 6] |= 1L << address;
+        if (block.length > 0) compiled++;
+    }
+
+    /**
+     * Drop every block that covers the given byte.
+     */
+    void invalidate(int address) {
+        if ((codeBits[address >>> 6] & 1L << address) == 0) return;
+        for (int start = address - CompiledBlock.MAX_BYTES + 1; start <= address; start++) {
+            int slot = start & MASK;
+            CompiledBlock block = blocks[slot];
+            if (block != null && block.start == start && block.end > address) {
+                block.valid = false;
+                blocks[slot] = null;
+            }
+        }
+    }
+
+    /**
+     * Drop every block that covers a byte of the given span.
+     */
+    void invalidate(int address, int length) {
+        for (int i = 0; i < length; i++) invalidate(address + i);
+    }
+
+    void clear() {
+        for (CompiledBlock block : blocks)
+            if (block != null) block.valid = false;
+        Arrays.fill(blocks, null);
+        Arrays.fill(counters, 0);
+        Arrays.fill(codeBits, 0);
+    }
+
+    /**
+     * @return number of blocks compiled so far
+     */
+    long getCompiled() {
+        return compiled;
+    }
+
+}
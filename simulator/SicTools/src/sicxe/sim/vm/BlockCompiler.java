@@ -0,0 +1,343 @@
+package sicxe.sim.vm;
+
+import sicxe.common.Flags;
+import sicxe.common.Logger;
+import sicxe.common.Opcode;
+
+import java.lang.invoke.MethodHandles;
+
+import static sicxe.sim.vm.ClassFileWriter.*;
+
+/**
+ * Compiles a basic block starting at a given address into a JVM class (tier 2 of {@link Machine.Engine#JIT}).
+ *
+ * Instructions are decoded once, at compile time: addresses of PC relative and absolute operands become
+ * constants, base relative, indexed and indirect addressing are emitted as reads of B, X and memory.
+ * Every instruction becomes a call into {@link BlockRuntime} or {@link Memory}, which the JVM then inlines,
+ * so the interpreter's fetch, decode and dispatch disappear from hot loops.
+ *
+ * A block ends with a jump (J, JEQ, JGT, JLT, included) or before the first instruction that is left to
+ * the interpreter: JSUB/RSUB (JSUB stack), devices, unimplemented and invalid instructions (which are
+ * reported on every execution), register PC as a format 2 operand and instructions near the end of memory.
+ * After every store the block checks whether it overwrote its own code and stops if it did.
+ */
+final class BlockCompiler {
+
+    private static final String BLOCK = "sicxe/sim/vm/CompiledBlock";
+    private static final String MACHINE = "sicxe/sim/vm/Machine";
+    private static final String REGISTERS = "sicxe/sim/vm/Registers";
+    private static final String MEMORY = "sicxe/sim/vm/Memory";
+    private static final String RUNTIME = "sicxe/sim/vm/BlockRuntime";
+
+    // locals of the generated run(Machine) method
+    private static final int THIS = 0;
+    private static final int MACHINE_ARG = 1;
+    private static final int REGS = 2;
+    private static final int MEM = 3;
+    private static final int MAX_LOCALS = 4;
+    private static final int MAX_STACK = 8;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Memory memory;
+    private final ClassFileWriter cw = new ClassFileWriter(BLOCK + "$Compiled", BLOCK);
+
+    // block being compiled
+    private final int start;
+    private int count;          // instructions emitted so far
+    private boolean ended;      // a jump was emitted
+
+    // addressing of the current SIC/F3/F4 instruction
+    private int ni;
+    private int operand;        // constant part of the operand (PC relative already applied)
+    private boolean baseRelative;
+    private boolean indexed;
+    private int next;           // address of the next instruction
+
+    private BlockCompiler(Memory memory, int start) {
+        this.memory = memory;
+        this.start = start;
+    }
+
+    /**
+     * Compile the block starting at the given address.
+     * @return the compiled block, or an {@link CompiledBlock.Uncompilable} one if the first instruction is not supported
+     */
+    static CompiledBlock compile(Machine machine, int start) {
+        return new BlockCompiler(machine.memory, start).compile();
+    }
+
+    private CompiledBlock compile() {
+        cw.local(ALOAD, MACHINE_ARG);
+        cw.field(GETFIELD, MACHINE, "registers", "L" + REGISTERS + ";");
+        cw.local(ASTORE, REGS);
+        cw.local(ALOAD, MACHINE_ARG);
+        cw.field(GETFIELD, MACHINE, "memory", "L" + MEMORY + ";");
+        cw.local(ASTORE, MEM);
+
+        int address = start;
+        int last = start;
+        // same limit as the interpreters: PC must not wrap around inside an instruction
+        while (!ended && count < CompiledBlock.MAX_INSTRUCTIONS
+                && address + Machine.MAX_INSTRUCTION_SIZE <= Machine.MAX_ADDRESS) {
+            int size = instruction(address);
+            if (size == 0) break;
+            last = address;
+            address += size;
+            count++;
+        }
+        if (count == 0) return new CompiledBlock.Uncompilable(start);
+        if (!ended) exit(address, count);
+
+        CompiledBlock block;
+        try {
+            byte[] bytes = cw.toByteArray("run", "(L" + MACHINE + ";)I", MAX_STACK, MAX_LOCALS);
+            Class<?> type = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            block = (CompiledBlock) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Logger.fmterr("Compiling block at '%06X' failed: %s", start, e);
+            return new CompiledBlock.Uncompilable(start);
+        }
+        block.start = start;
+        block.end = address;
+        block.last = last;
+        block.length = count;
+        return block;
+    }
+
+    /**
+     * Emit the instruction at the given address.
+     * @return size of the instruction or 0 if it is left to the interpreter (nothing is emitted then)
+     */
+    private int instruction(int address) {
+        int opcode = memory.getByteRaw(address);
+        switch (Machine.FORMAT[opcode]) {
+            case 1:  return format1(opcode) ? 1 : 0;
+            case 2:  return format2(opcode, memory.getByteRaw(address + 1)) ? 2 : 0;
+            default: return format3(address, opcode);
+        }
+    }
+
+    private boolean format1(int opcode) {
+        String op;
+        switch (opcode) {
+            case Opcode.FLOAT:  op = "toFloat"; break;
+            case Opcode.FIX:    op = "fix"; break;
+            default:            return false;
+        }
+        cw.local(ALOAD, REGS);
+        cw.invoke(INVOKESTATIC, RUNTIME, op, "(L" + REGISTERS + ";)V");
+        return true;
+    }
+
+    private boolean format2(int opcode, int operand) {
+        int o1 = (operand & 0xF0) >> 4;
+        int o2 = operand & 0x0F;
+        // PC as an operand would see the value the block has not stored yet
+        if (o1 == Registers.rPC || o2 == Registers.rPC) return false;
+        String op;
+        switch (opcode) {
+            case Opcode.ADDR:   op = "addr"; break;
+            case Opcode.SUBR:   op = "subr"; break;
+            case Opcode.MULR:   op = "mulr"; break;
+            case Opcode.DIVR:   op = "divr"; break;
+            case Opcode.COMPR:  op = "compr"; break;
+            case Opcode.SHIFTL: op = "shiftl"; break;
+            case Opcode.SHIFTR: op = "shiftr"; break;
+            case Opcode.RMO:    op = "rmo"; break;
+            case Opcode.CLEAR:  op = "clear"; break;
+            case Opcode.TIXR:   op = "tixr"; break;
+            default:            return false;
+        }
+        cw.local(ALOAD, REGS);
+        cw.iconst(o1);
+        cw.iconst(o2);
+        cw.invoke(INVOKESTATIC, RUNTIME, op, "(L" + REGISTERS + ";II)V");
+        return true;
+    }
+
+    private int format3(int address, int opcode) {
+        int op = memory.getByteRaw(address + 1);
+        ni = opcode & Flags.MASK_NI;
+        indexed = (op & Flags.INDEXED) != 0;
+        baseRelative = false;
+        int size;
+        if (ni == Flags.SIC) {
+            size = 3;
+            operand = Machine.operandSic(op, memory.getByteRaw(address + 2));
+        } else if ((op & Flags.EXTENDED) != 0) {
+            if ((op & Flags.MASK_BP) != 0) return 0;        // invalid addressing
+            size = 4;
+            operand = Machine.operandF4(op, memory.getByteRaw(address + 2), memory.getByteRaw(address + 3));
+        } else {
+            size = 3;
+            operand = Machine.operandF3(op, memory.getByteRaw(address + 2));
+            if ((op & Flags.PCRELATIVE) != 0) operand = Machine.operandPCRelative(operand) + address + 3;
+            else baseRelative = (op & Flags.BASERELATIVE) != 0;
+        }
+        if (indexed && ni == Flags.IMMEDIATE) return 0;     // invalid addressing
+        next = address + size;
+
+        switch (opcode & 0xFC) {
+            // stores
+            case Opcode.STA:    store("getA", "()I", "setWord", "(II)V"); break;
+            case Opcode.STX:    store("getX", "()I", "setWord", "(II)V"); break;
+            case Opcode.STL:    store("getL", "()I", "setWord", "(II)V"); break;
+            case Opcode.STCH:   store("getA", "()I", "setByte", "(II)V"); break;
+            case Opcode.STB:    store("getB", "()I", "setWord", "(II)V"); break;
+            case Opcode.STS:    store("getS", "()I", "setWord", "(II)V"); break;
+            case Opcode.STF:    store("getF", "()D", "setFloat", "(ID)V"); break;
+            case Opcode.STT:    store("getT", "()I", "setWord", "(II)V"); break;
+            case Opcode.STSW:   store("getSW", "()I", "setWord", "(II)V"); break;
+            // jumps
+            case Opcode.JEQ:    jump("isEqual"); break;
+            case Opcode.JGT:    jump("isGreater"); break;
+            case Opcode.JLT:    jump("isLower"); break;
+            case Opcode.J:      jump(null); break;
+            // loads
+            case Opcode.LDA:    load("lda", "getWord"); break;
+            case Opcode.LDX:    load("ldx", "getWord"); break;
+            case Opcode.LDL:    load("ldl", "getWord"); break;
+            case Opcode.LDCH:   load("ldch", "getByte"); break;
+            case Opcode.LDB:    load("ldb", "getWord"); break;
+            case Opcode.LDS:    load("lds", "getWord"); break;
+            case Opcode.LDF:    loadFloat("ldf"); break;
+            case Opcode.LDT:    load("ldt", "getWord"); break;
+            // arithmetic
+            case Opcode.ADD:    load("add", "getWord"); break;
+            case Opcode.SUB:    load("sub", "getWord"); break;
+            case Opcode.MUL:    load("mul", "getWord"); break;
+            case Opcode.DIV:    load("div", "getWord"); break;
+            case Opcode.AND:    load("and", "getWord"); break;
+            case Opcode.OR:     load("or", "getWord"); break;
+            case Opcode.COMP:   load("comp", "getWord"); break;
+            case Opcode.TIX:    tix(); break;
+            // floating point arithmetic
+            case Opcode.ADDF:   loadFloat("addf"); break;
+            case Opcode.SUBF:   loadFloat("subf"); break;
+            case Opcode.MULF:   loadFloat("mulf"); break;
+            case Opcode.DIVF:   loadFloat("divf"); break;
+            case Opcode.COMPF:  loadFloat("compf"); break;
+            // JSUB, RSUB, devices, unimplemented and invalid opcodes
+            default:            return 0;
+        }
+        return size;
+    }
+
+    // ********** Emitters
+
+    // constant operand, plus B when base relative
+    private void emitOperand() {
+        cw.iconst(operand);
+        if (baseRelative) {
+            cw.local(ALOAD, REGS);
+            cw.invoke(INVOKEVIRTUAL, REGISTERS, "getB", "()I");
+            cw.op(IADD);
+        }
+    }
+
+    private void emitAddX() {
+        cw.local(ALOAD, REGS);
+        cw.invoke(INVOKEVIRTUAL, REGISTERS, "getXs", "()I");
+        cw.op(IADD);
+    }
+
+    // target address (or the value for immediate addressing)
+    private void emitTarget() {
+        if (ni == Flags.INDIRECT) {
+            cw.local(ALOAD, MEM);
+            emitOperand();
+            cw.invoke(INVOKEVIRTUAL, MEMORY, "getWordRaw", "(I)I");
+        } else {
+            emitOperand();
+        }
+        if (indexed) emitAddX();
+    }
+
+    // word or byte operand
+    private void emitValue(String read) {
+        if (ni == Flags.IMMEDIATE) {
+            emitTarget();
+            return;
+        }
+        cw.local(ALOAD, MEM);
+        emitTarget();
+        cw.invoke(INVOKEVIRTUAL, MEMORY, read, "(I)I");
+    }
+
+    private void load(String op, String read) {
+        cw.local(ALOAD, REGS);
+        emitValue(read);
+        cw.invoke(INVOKESTATIC, RUNTIME, op, "(L" + REGISTERS + ";I)V");
+    }
+
+    private void loadFloat(String op) {
+        cw.local(ALOAD, REGS);
+        if (ni == Flags.IMMEDIATE) {
+            emitTarget();
+            cw.op(I2D);
+        } else {
+            cw.local(ALOAD, MEM);
+            emitTarget();
+            cw.invoke(INVOKEVIRTUAL, MEMORY, "getFloat", "(I)D");
+        }
+        cw.invoke(INVOKESTATIC, RUNTIME, op, "(L" + REGISTERS + ";D)V");
+    }
+
+    private void tix() {
+        if (ni != Flags.INDIRECT || !indexed) {
+            load("tix", "getWord");
+            return;
+        }
+        // X is incremented before the target address is read
+        cw.local(ALOAD, REGS);
+        cw.invoke(INVOKESTATIC, RUNTIME, "incX", "(L" + REGISTERS + ";)V");
+        cw.local(ALOAD, REGS);
+        emitValue("getWord");
+        cw.invoke(INVOKESTATIC, RUNTIME, "tixCompare", "(L" + REGISTERS + ";I)V");
+    }
+
+    private void store(String getter, String getterDescriptor, String write, String writeDescriptor) {
+        cw.local(ALOAD, MEM);
+        emitTarget();
+        cw.local(ALOAD, REGS);
+        cw.invoke(INVOKEVIRTUAL, REGISTERS, getter, getterDescriptor);
+        cw.invoke(INVOKEVIRTUAL, MEMORY, write, writeDescriptor);
+        // stop if the store overwrote the code of this block
+        cw.local(ALOAD, THIS);
+        cw.field(GETFIELD, BLOCK, "valid", "Z");
+        int valid = cw.jump(IFNE);
+        exit(next, count + 1);
+        cw.target(valid);
+    }
+
+    // the target of an indirect jump is only read when the jump is taken
+    private void jump(String condition) {
+        int notTaken = -1;
+        if (condition != null) {
+            cw.local(ALOAD, REGS);
+            cw.invoke(INVOKEVIRTUAL, REGISTERS, condition, "()Z");
+            notTaken = cw.jump(IFEQ);
+        }
+        cw.local(ALOAD, REGS);
+        emitTarget();
+        cw.invoke(INVOKEVIRTUAL, REGISTERS, "setPC", "(I)V");
+        cw.iconst(count + 1);
+        cw.op(IRETURN);
+        if (condition != null) {
+            cw.target(notTaken);
+            exit(next, count + 1);
+        }
+        ended = true;
+    }
+
+    // set PC and return the number of executed instructions
+    private void exit(int pc, int executed) {
+        cw.local(ALOAD, REGS);
+        cw.iconst(pc);
+        cw.invoke(INVOKEVIRTUAL, REGISTERS, "setPC", "(I)V");
+        cw.iconst(executed);
+        cw.op(IRETURN);
+    }
+
+}
@@ -0,0 +1,170 @@
+package sicxe.sim.vm;
+
+import sicxe.common.SICXE;
+
+/**
+ * Operations called from compiled blocks, with the same semantics as the interpreter.
+ * The JVM inlines them into the generated code.
+ */
+final class BlockRuntime {
+
+    private BlockRuntime() {
+    }
+
+    // ********** Format 1
+
+    static void toFloat(Registers r) {
+        r.setF((double) r.getAs());
+    }
+
+    static void fix(Registers r) {
+        r.setA((int) r.getF());
+    }
+
+    // ********** Format 2
+
+    static void addr(Registers r, int o1, int o2) {
+        r.set(o2, r.get(o2) + r.get(o1));
+    }
+
+    static void subr(Registers r, int o1, int o2) {
+        r.set(o2, r.get(o2) - r.get(o1));
+    }
+
+    static void mulr(Registers r, int o1, int o2) {
+        r.set(o2, r.get(o2) * r.get(o1));
+    }
+
+    static void divr(Registers r, int o1, int o2) {
+        int divisor = r.get(o1);
+        if (divisor == 0) System.out.println("division by zero");
+        else r.set(o2, r.gets(o2) / divisor);
+    }
+
+    static void compr(Registers r, int o1, int o2) {
+        r.setSWAfterCompare(r.gets(o1) - r.gets(o2));
+    }
+
+    static void shiftl(Registers r, int o1, int o2) {
+        r.set(o1, r.get(o1) << (o2 + 1) | r.get(o1) >> (24 - o2 - 1));
+    }
+
+    static void shiftr(Registers r, int o1, int o2) {
+        r.set(o1, r.gets(o1) >> (o2 + 1));
+    }
+
+    static void rmo(Registers r, int o1, int o2) {
+        r.set(o2, r.get(o1));
+    }
+
+    static void clear(Registers r, int o1, int o2) {
+        r.set(o1, 0);
+    }
+
+    static void tixr(Registers r, int o1, int o2) {
+        r.setX(r.getX() + 1);
+        r.setSWAfterCompare(r.getXs() - r.gets(o1));
+    }
+
+    // ********** Loads and arithmetic with a word (or byte) operand
+
+    static void lda(Registers r, int w) {
+        r.setA(w);
+    }
+
+    static void ldx(Registers r, int w) {
+        r.setX(w);
+    }
+
+    static void ldl(Registers r, int w) {
+        r.setL(w);
+    }
+
+    static void ldb(Registers r, int w) {
+        r.setB(w);
+    }
+
+    static void lds(Registers r, int w) {
+        r.setS(w);
+    }
+
+    static void ldt(Registers r, int w) {
+        r.setT(w);
+    }
+
+    static void ldch(Registers r, int b) {
+        r.setALo(b);
+    }
+
+    static void add(Registers r, int w) {
+        r.setA(r.getA() + w);
+    }
+
+    static void sub(Registers r, int w) {
+        r.setA(r.getA() - w);
+    }
+
+    static void mul(Registers r, int w) {
+        r.setA(r.getA() * w);
+    }
+
+    static void div(Registers r, int w) {
+        int divisor = SICXE.swordToInt(w);
+        if (divisor == 0) System.out.println("division by zero");
+        else r.setA(r.getAs() / divisor);
+    }
+
+    static void and(Registers r, int w) {
+        r.setA(r.getA() & w);
+    }
+
+    static void or(Registers r, int w) {
+        r.setA(r.getA() | w);
+    }
+
+    static void comp(Registers r, int w) {
+        r.setSWAfterCompare(r.getAs() - SICXE.swordToInt(w));
+    }
+
+    static void tix(Registers r, int w) {
+        incX(r);
+        tixCompare(r, w);
+    }
+
+    // TIX split in two, for indexed indirect addressing which reads the target after the increment
+    static void incX(Registers r) {
+        r.setX(r.getX() + 1);
+    }
+
+    static void tixCompare(Registers r, int w) {
+        r.setSWAfterCompare(r.getXs() - SICXE.swordToInt(w));
+    }
+
+    // ********** Floating point
+
+    static void ldf(Registers r, double f) {
+        r.setF(f);
+    }
+
+    static void addf(Registers r, double f) {
+        r.setF(r.getF() + f);
+    }
+
+    static void subf(Registers r, double f) {
+        r.setF(r.getF() - f);
+    }
+
+    static void mulf(Registers r, double f) {
+        r.setF(r.getF() * f);
+    }
+
+    static void divf(Registers r, double f) {
+        r.setF(r.getF() / f);
+    }
+
+    static void compf(Registers r, double f) {
+        double sub = r.getF() - f;
+        r.setSWAfterCompare(sub > 0 ? 1 : (sub < 0 ? -1 : 0));
+    }
+
+}
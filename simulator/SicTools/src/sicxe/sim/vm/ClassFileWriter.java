@@ -0,0 +1,261 @@
+package sicxe.sim.vm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal writer of JVM class files, just enough for {@link BlockCompiler}:
+ * a final class with a no-arg constructor and one method whose code is emitted instruction by instruction.
+ * Class file version 49 is written, which is verified without stack map frames.
+ */
+final class ClassFileWriter {
+
+    // opcodes used by the block compiler
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ALOAD = 0x19;
+    static final int ALOAD_0 = 0x2A;
+    static final int ASTORE = 0x3A;
+    static final int IADD = 0x60;
+    static final int I2D = 0x87;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IRETURN = 0xAC;
+    static final int RETURN = 0xB1;
+    static final int GETFIELD = 0xB4;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+
+    private static final int VERSION = 49;
+    private static final int ACC_FINAL_SUPER = 0x0030;
+
+    // constant pool tags
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int CLASS = 7;
+    private static final int FIELDREF = 9;
+    private static final int METHODREF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final String name;
+    private final String superName;
+
+    private final Buffer pool = new Buffer();
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int poolCount = 1;
+
+    private final Buffer code = new Buffer();
+
+    /**
+     * @param name internal name of the class (e.g. sicxe/sim/vm/Block)
+     * @param superName internal name of the super class, which needs an accessible no-arg constructor
+     */
+    ClassFileWriter(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    // ********** Code
+
+    void op(int opcode) {
+        code.u1(opcode);
+    }
+
+    void iconst(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value);
+        } else if (value == (byte) value) {
+            op(BIPUSH);
+            code.u1(value);
+        } else if (value == (short) value) {
+            op(SIPUSH);
+            code.u2(value);
+        } else {
+            op(LDC_W);
+            code.u2(integer(value));
+        }
+    }
+
+    /**
+     * Load or store instruction with a local variable index (ALOAD, ASTORE).
+     */
+    void local(int opcode, int index) {
+        op(opcode);
+        code.u1(index);
+    }
+
+    void field(int opcode, String owner, String name, String descriptor) {
+        op(opcode);
+        code.u2(member(FIELDREF, owner, name, descriptor));
+    }
+
+    void invoke(int opcode, String owner, String name, String descriptor) {
+        op(opcode);
+        code.u2(member(METHODREF, owner, name, descriptor));
+    }
+
+    /**
+     * Emit a branch with the target left open.
+     * @return position of the branch, to be passed to {@link #target(int)}
+     */
+    int jump(int opcode) {
+        int position = code.length;
+        op(opcode);
+        code.u2(0);
+        return position;
+    }
+
+    /**
+     * Point the branch at the given position to the next emitted instruction.
+     */
+    void target(int jump) {
+        int offset = code.length - jump;
+        code.data[jump + 1] = (byte) (offset >> 8);
+        code.data[jump + 2] = (byte) offset;
+    }
+
+    // ********** Class file
+
+    /**
+     * @return class file with the constructor and the emitted code as the given method
+     */
+    byte[] toByteArray(String methodName, String methodDescriptor, int maxStack, int maxLocals) {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int superInit = member(METHODREF, superName, "<init>", "()V");
+        int init = utf8("<init>");
+        int voidDescriptor = utf8("()V");
+        int method = utf8(methodName);
+        int descriptor = utf8(methodDescriptor);
+        int codeAttribute = utf8("Code");
+
+        Buffer out = new Buffer();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(VERSION);
+        out.u2(poolCount);
+        out.bytes(pool.data, pool.length);
+        out.u2(ACC_FINAL_SUPER);
+        out.u2(thisClass);
+        out.u2(superClass);
+        out.u2(0);                  // interfaces
+        out.u2(0);                  // fields
+        out.u2(2);                  // methods
+        // constructor: super()
+        byte[] initCode = { (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (superInit >> 8), (byte) superInit, (byte) RETURN };
+        writeMethod(out, init, voidDescriptor, codeAttribute, 1, 1, initCode, initCode.length);
+        writeMethod(out, method, descriptor, codeAttribute, maxStack, maxLocals, code.data, code.length);
+        out.u2(0);                  // attributes
+        return Arrays.copyOf(out.data, out.length);
+    }
+
+    private static void writeMethod(Buffer out, int name, int descriptor, int codeAttribute,
+                                    int maxStack, int maxLocals, byte[] code, int codeLength) {
+        out.u2(0);                  // package-private
+        out.u2(name);
+        out.u2(descriptor);
+        out.u2(1);                  // attributes: Code
+        out.u2(codeAttribute);
+        out.u4(12 + codeLength);
+        out.u2(maxStack);
+        out.u2(maxLocals);
+        out.u4(codeLength);
+        out.bytes(code, codeLength);
+        out.u2(0);                  // exception table
+        out.u2(0);                  // attributes
+    }
+
+    // ********** Constant pool
+
+    private int utf8(String value) {
+        Integer index = constants.get("U" + value);
+        if (index != null) return index;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        pool.u1(UTF8);
+        pool.u2(bytes.length);
+        pool.bytes(bytes, bytes.length);
+        return add("U" + value);
+    }
+
+    private int integer(int value) {
+        Integer index = constants.get("I" + value);
+        if (index != null) return index;
+        pool.u1(INTEGER);
+        pool.u4(value);
+        return add("I" + value);
+    }
+
+    private int classRef(String className) {
+        Integer index = constants.get("C" + className);
+        if (index != null) return index;
+        int nameIndex = utf8(className);
+        pool.u1(CLASS);
+        pool.u2(nameIndex);
+        return add("C" + className);
+    }
+
+    private int member(int tag, String owner, String memberName, String descriptor) {
+        String key = tag + owner + "." + memberName + descriptor;
+        Integer index = constants.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(memberName);
+        int descriptorIndex = utf8(descriptor);
+        String nameAndTypeKey = "N" + memberName + descriptor;
+        Integer nameAndType = constants.get(nameAndTypeKey);
+        if (nameAndType == null) {
+            pool.u1(NAME_AND_TYPE);
+            pool.u2(nameIndex);
+            pool.u2(descriptorIndex);
+            nameAndType = add(nameAndTypeKey);
+        }
+        pool.u1(tag);
+        pool.u2(ownerIndex);
+        pool.u2(nameAndType);
+        return add(key);
+    }
+
+    private int add(String key) {
+        int index = poolCount++;
+        constants.put(key, index);
+        return index;
+    }
+
+    // growable byte array with big-endian writes
+    private static final class Buffer {
+        byte[] data = new byte[256];
+        int length;
+
+        void u1(int value) {
+            ensure(1);
+            data[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >> 16);
+            u2(value);
+        }
+
+        void bytes(byte[] bytes, int count) {
+            ensure(count);
+            System.arraycopy(bytes, 0, data, length, count);
+            length += count;
+        }
+
+        private void ensure(int count) {
+            if (length + count > data.length)
+                data = Arrays.copyOf(data, Math.max(2 * data.length, length + count));
+        }
+    }
+
+}
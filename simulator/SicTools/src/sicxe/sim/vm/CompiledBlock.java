@@ -0,0 +1,42 @@
+package sicxe.sim.vm;
+
+/**
+ * A basic block compiled to JVM bytecode by {@link BlockCompiler}: a straight run of instructions,
+ * ending with a jump or before the first instruction that is left to the interpreter.
+ */
+abstract class CompiledBlock {
+
+    static final int MAX_INSTRUCTIONS = 64;
+    static final int MAX_BYTES = MAX_INSTRUCTIONS * Machine.MAX_INSTRUCTION_SIZE;
+
+    int start;          // address of the first instruction
+    int end;            // address after the last instruction
+    int last;           // address of the last instruction
+    int length;         // number of instructions, 0 if nothing could be compiled at start
+    // cleared when the code bytes are written, a running block then stops after the store
+    boolean valid = true;
+
+    /**
+     * Execute the block. PC is set to the next instruction (or the jump target) at the end.
+     * @return number of executed instructions, less than length if the block overwrote its own code
+     */
+    abstract int run(Machine machine);
+
+    /**
+     * Marks an address where no block can be compiled, so compiling is not retried on every visit.
+     */
+    static final class Uncompilable extends CompiledBlock {
+
+        Uncompilable(int start) {
+            this.start = start;
+            this.end = start + Machine.MAX_INSTRUCTION_SIZE;
+            this.last = start;
+        }
+
+        @Override
+        int run(Machine machine) {
+            return 0;
+        }
+    }
+
+}
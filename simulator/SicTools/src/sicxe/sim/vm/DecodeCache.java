@@ -0,0 +1,114 @@
+package sicxe.sim.vm;
+
+import java.util.Arrays;
+
+/**
+ * Direct-mapped cache of decoded instructions, keyed by the instruction address.
+ * An entry keeps everything the machine would otherwise re-fetch and re-decode:
+ * opcode, size (which also tells the format), ni/xbpe flags (packed into one int,
+ * masks as in {@link sicxe.common.Flags}) and the raw operand
+ * (before PC/base relative and index adjustments, since those depend on registers).
+ *
+ * Memory notifies the cache about every write, so entries covering a written
+ * byte are dropped and self-modifying programs keep working.
+ */
+public class DecodeCache {
+
+    public static final int SIZE = 1 << 12;         // number of entries, power of two
+    private static final int MASK = SIZE - 1;
+    private static final int PAGE_SHIFT = 8;        // 256-byte pages tracked for invalidation
+    private static final int MAX_SIZE = 4;          // longest instruction (F4)
+
+    // address of the cached instruction, -1 if the slot is empty
+    private final int[] tags = new int[SIZE];
+    private final int[] opcodes = new int[SIZE];
+    private final int[] sizes = new int[SIZE];
+    private final int[] operands = new int[SIZE];
+    private final int[] flags = new int[SIZE];
+    // pages that hold at least one cached instruction; writes elsewhere are ignored quickly
+    private final boolean[] codePages = new boolean[(Machine.MAX_ADDRESS + 1) >>> PAGE_SHIFT];
+
+    private long hits;
+    private long misses;
+
+    public DecodeCache() {
+        Arrays.fill(tags, -1);
+    }
+
+    /**
+     * @return slot of the cached instruction at the given address or -1 on a miss.
+     */
+    public int lookup(int address) {
+        int slot = address & MASK;
+        if (tags[slot] == address) {
+            hits++;
+            return slot;
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Cache a decoded instruction.
+     * @return slot of the new entry.
+     */
+    public int put(int address, int opcode, int size, int operand, int flags) {
+        int slot = address & MASK;
+        tags[slot] = address;
+        opcodes[slot] = opcode;
+        sizes[slot] = size;
+        operands[slot] = operand;
+        this.flags[slot] = flags;
+        codePages[address >>> PAGE_SHIFT] = true;
+        codePages[(address + size - 1) >>> PAGE_SHIFT] = true;
+        return slot;
+    }
+
+    public int opcode(int slot) {
+        return opcodes[slot];
+    }
+
+    public int size(int slot) {
+        return sizes[slot];
+    }
+
+    public int operand(int slot) {
+        return operands[slot];
+    }
+
+    public int flags(int slot) {
+        return flags[slot];
+    }
+
+    /**
+     * Drop every cached instruction that covers the given byte.
+     */
+    public void invalidate(int address) {
+        if (!codePages[address >>> PAGE_SHIFT]) return;
+        for (int start = address - MAX_SIZE + 1; start <= address; start++) {
+            int slot = start & MASK;
+            if (tags[slot] == start && start + sizes[slot] > address) tags[slot] = -1;
+        }
+    }
+
+    /**
+     * Drop every cached instruction that covers a byte of the given span.
+     */
+    public void invalidate(int address, int length) {
+        for (int i = 0; i < length; i++) invalidate(address + i);
+    }
+
+    public void clear() {
+        Arrays.fill(tags, -1);
+        Arrays.fill(codePages, false);
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+}
@@ -6,7 +6,8 @@ import sicxe.sim.breakpoints.DataBreakpointException;
 import sicxe.sim.breakpoints.ReadDataBreakpointException;
 import sicxe.sim.breakpoints.WriteDataBreakpointException;
 
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.EmptyStackException;
 
 /**
  * @author jure
@@ -16,6 +17,14 @@ public class Machine {
     public static final int MAX_ADDRESS = (1 << 20) - 1; // 1048576 - 1
     public static final int MAX_DEVICE = 255;
 
+    /**
+     * Interpreter engines: SWITCH tries format 1, format 2 and SIC/F3/F4 switches in turn
+     * (using the decode cache), TABLE dispatches on the first byte through {@link TableInterpreter}.
+     * JIT interprets like TABLE and in {@link #executeBlock(long)} also compiles hot basic blocks
+     * to JVM bytecode ({@link BlockCompiler}).
+     */
+    public enum Engine { SWITCH, TABLE, JIT }
+
     // ************ Machine parts
 
     public final Registers registers;
@@ -28,11 +37,41 @@ public class Machine {
     private MemorySpan lastExecAddr;
     private MemorySpan lastExecRead;
     private MemorySpan lastExecWrite;
+    // when off, lastExecAddr/Read/Write are not updated (nobody is looking at them, e.g. batch runs)
+    private boolean spanTracking = true;
+
+    // addresses below executed JSUBs, kept as a primitive stack to avoid boxing
+    private int[] addressBelowJSUB = new int[16];
+    private int jsubDepth;
+
+    // the last executed instructions for stepping back, null when off
+    private UndoLog undoLog;
+
+    // binary trace of the executed instructions, null when off
+    private ExecutionTrace trace;
 
+    boolean indirectX = false;
 
-    private Stack<Integer> addressBelowJSUB = new Stack<>();
+    // ************ Decoding
 
-    private boolean indirectX = false;
+    static final int MAX_INSTRUCTION_SIZE = 4;
+
+    // instruction format by first byte: 1, 2 or 3 (SIC, F3 and F4 are told apart by flags)
+    static final byte[] FORMAT = new byte[256];
+    static {
+        Arrays.fill(FORMAT, (byte) 3);
+        for (int op : new int[] { Opcode.FLOAT, Opcode.FIX, Opcode.NORM, Opcode.SIO, Opcode.HIO, Opcode.TIO })
+            FORMAT[op] = 1;
+        for (int op : new int[] { Opcode.ADDR, Opcode.SUBR, Opcode.MULR, Opcode.DIVR, Opcode.COMPR, Opcode.SHIFTL,
+                                  Opcode.SHIFTR, Opcode.RMO, Opcode.CLEAR, Opcode.TIXR, Opcode.SVC })
+            FORMAT[op] = 2;
+    }
+
+    private final DecodeCache decodeCache;
+
+    private Engine engine = Engine.SWITCH;
+    // compiled blocks, only with the JIT engine
+    private BlockCache blockCache;
 
     // ************ Constructor
 
@@ -43,6 +82,8 @@ public class Machine {
         this.lastExecRead = new MemorySpan();
         this.lastExecWrite = new MemorySpan();
         this.lastExecAddr = new MemorySpan();
+        this.decodeCache = new DecodeCache();
+        this.memory.setDecodeCache(decodeCache);
     }
 
     // ************ getters/setters
@@ -51,6 +92,39 @@ public class Machine {
         return instructionCount;
     }
 
+    public DecodeCache getDecodeCache() {
+        return decodeCache;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+        blockCache = engine == Engine.JIT ? new BlockCache() : null;
+        memory.setBlockCache(blockCache);
+    }
+
+    /**
+     * @return number of blocks compiled by the JIT engine
+     */
+    public long getCompiledBlocks() {
+        return blockCache == null ? 0 : blockCache.getCompiled();
+    }
+
+    public boolean isSpanTracking() {
+        return spanTracking;
+    }
+
+    /**
+     * Enable or disable updating of lastExecAddr/Read/Write. Disabled tracking leaves the spans cleared.
+     */
+    public void setSpanTracking(boolean spanTracking) {
+        this.spanTracking = spanTracking;
+        if (!spanTracking) clearLastExecReadWrite();
+    }
+
     public MemorySpan getLastExecAddr() {
         return lastExecAddr;
     }
@@ -59,7 +133,8 @@ public class Machine {
         return lastExecRead;
     }
 
-    private void setLastExecRead(int startAddress, int spanLength) {
+    void setLastExecRead(int startAddress, int spanLength) {
+        if (!spanTracking) return;
         lastExecWrite.clear();
         lastExecRead.set(startAddress, spanLength);
     }
@@ -68,11 +143,16 @@ public class Machine {
         return lastExecWrite;
     }
 
-    private void setLastExecWrite(int startAddress, int spanLength) {
+    void setLastExecWrite(int startAddress, int spanLength) {
+        if (!spanTracking) return;
         lastExecRead.clear();
         lastExecWrite.set(startAddress, spanLength);
     }
 
+    void setLastExecSpan(int spanLength) {
+        if (spanTracking) lastExecAddr.setSpanLength(spanLength);
+    }
+
     public void clearLastExecReadWrite() {
         lastExecWrite.clear();
         lastExecRead.clear();
@@ -81,15 +161,15 @@ public class Machine {
 
     // ********** Execution *********************
 
-    private void notImplemented(String mnemonic) {
+    void notImplemented(String mnemonic) {
         Logger.fmterr("Instruction '%s' not implemented!", mnemonic);
     }
 
-    private void invalidOpcode(int opcode) {
+    void invalidOpcode(int opcode) {
         Logger.fmterr("Invalid opcode '%d'.", opcode);
     }
 
-    private void invalidAddressing() {
+    void invalidAddressing() {
         Logger.err("Invalid addressing.");
     }
 
@@ -140,30 +220,30 @@ public class Machine {
     // load
 
     
-    private int loadWord(Flags flags, int operand) throws ReadDataBreakpointException {
-        if (flags.isImmediate()) return operand;
+    private int loadWord(int flags, int operand) throws ReadDataBreakpointException {
+        if (isImmediate(flags)) return operand;
         int addr = resolveAddr(flags, operand);
         setLastExecRead(addr, 3);
         return memory.getWord(addr);
     }
 
-    private int loadByte(Flags flags, int operand) throws ReadDataBreakpointException {
-        if (flags.isImmediate()) return operand;
+    private int loadByte(int flags, int operand) throws ReadDataBreakpointException {
+        if (isImmediate(flags)) return operand;
         int addr = resolveAddr(flags, operand);
         setLastExecRead(addr, 1);
         return memory.getByte(addr);
     }
 
-    private double loadFloat(Flags flags, int operand) throws ReadDataBreakpointException {
-        if (flags.isImmediate()) return operand;
+    private double loadFloat(int flags, int operand) throws ReadDataBreakpointException {
+        if (isImmediate(flags)) return operand;
         int addr = resolveAddr(flags, operand);
         setLastExecRead(addr, 6);
         return memory.getFloat(addr);
     }
 
     // use of TA for store: addr / addr of addr
-    private int resolveAddr(Flags flags, int addr) {
-        if (flags.isIndirect()) {
+    private int resolveAddr(int flags, int addr) {
+        if (isIndirect(flags)) {
 			addr = memory.getWordRaw(addr);
 			if (indirectX)
 				addr += registers.getXs();
@@ -171,25 +251,25 @@ public class Machine {
 		return addr;
     }
 
-    private void storeWord(Flags flags, int operand, int word) throws WriteDataBreakpointException {
+    private void storeWord(int flags, int operand, int word) throws WriteDataBreakpointException {
         int addr = resolveAddr(flags, operand);
         setLastExecWrite(addr, 3);
         memory.setWord(addr, word);
     }
 
-    private void storeByte(Flags flags, int operand, int _byte) throws WriteDataBreakpointException {
+    private void storeByte(int flags, int operand, int _byte) throws WriteDataBreakpointException {
         int addr = resolveAddr(flags, operand);
         setLastExecWrite(addr, 1);
         memory.setByte(addr, _byte);
     }
 
-    private void storeFloat(Flags flags, int operand, double _float) throws WriteDataBreakpointException {
+    private void storeFloat(int flags, int operand, double _float) throws WriteDataBreakpointException {
         int addr = resolveAddr(flags, operand);
         setLastExecWrite(addr, 6);
         memory.setFloat(addr, _float);
     }
 
-    private boolean execSICF3F4(int opcode, Flags flags, int operand) throws DataBreakpointException {
+    private boolean execSICF3F4(int opcode, int flags, int operand) throws DataBreakpointException {
         // Formats: SIC, F3, F4
         switch (opcode) {
             // ***** immediate addressing not possible *****
@@ -265,80 +345,463 @@ public class Machine {
     }
 
     public void execute() throws DataBreakpointException {
+        if (trace != null) {
+            executeTraced();
+            return;
+        }
+        executeLogged();
+    }
+
+    private void executeLogged() throws DataBreakpointException {
+        if (undoLog == null) {
+            executeInstruction();
+            return;
+        }
+        undoLog.begin(this);
+        try {
+            executeInstruction();
+        } catch (DataBreakpointException | RuntimeException e) {
+            // the instruction did not complete, there is nothing to undo
+            undoLog.discard();
+            throw e;
+        }
+        undoLog.end();
+    }
+
+    // the record needs the spans, so they are tracked for the instruction even when tracking is off
+    private void executeTraced() throws DataBreakpointException {
+        int pc = registers.getPC();
+        int opcode = memory.getByteRaw(pc);
+        int target = targetAddress(pc);
+        boolean tracking = spanTracking;
+        spanTracking = true;
+        try {
+            executeLogged();
+            if (lastExecWrite.getSpanLength() > 0)
+                trace.record(pc, opcode, lastExecAddr.getSpanLength(), target,
+                        ExecutionTrace.WRITE, lastExecWrite.getStartAddress(), lastExecWrite.getSpanLength());
+            else if (lastExecRead.getSpanLength() > 0)
+                trace.record(pc, opcode, lastExecAddr.getSpanLength(), target,
+                        ExecutionTrace.READ, lastExecRead.getStartAddress(), lastExecRead.getSpanLength());
+            else
+                trace.record(pc, opcode, lastExecAddr.getSpanLength(), target, ExecutionTrace.NONE, -1, 0);
+        } finally {
+            spanTracking = tracking;
+            if (!tracking) clearLastExecReadWrite();
+        }
+    }
+
+    private void executeInstruction() throws DataBreakpointException {
         indirectX = false;
         instructionCount++;
-        lastExecRead.clear();
-        lastExecWrite.clear();
-        lastExecAddr.setStartAddress(registers.getPC());
-        lastExecAddr.setSpanLength(0);
+        int pc = registers.getPC();
+        if (spanTracking) {
+            lastExecRead.clear();
+            lastExecWrite.clear();
+            lastExecAddr.set(pc, 0);
+        }
+        if (engine != Engine.SWITCH) {
+            TableInterpreter.execute(this, pc);
+            return;
+        }
+        int slot = decodeCache.lookup(pc);
+        if (slot < 0) slot = decode(pc);
+        if (slot < 0) {
+            fetchAndExecute();
+            return;
+        }
+        int opcode = decodeCache.opcode(slot);
+        int size = decodeCache.size(slot);
+        int operand = decodeCache.operand(slot);
+        registers.setPC(pc + size);
+        if (size == 1) {
+            execF1(opcode);
+            setLastExecSpan(1);
+            return;
+        }
+        if (size == 2) {
+            execF2(opcode, operand);
+            setLastExecSpan(2);
+            return;
+        }
+        int flags = decodeCache.flags(slot);
+        // relative and indexed addressing depend on registers, so they are applied on every execution
+        if (!isSic(flags) && !isExtended(flags)) {
+            if (isPCRelative(flags))
+                operand = operandPCRelative(operand) + registers.getPC();
+            else if (isBaseRelative(flags))
+                operand += registers.getB();
+        }
+        if (isIndexed(flags))
+            if (isSimple(flags)) operand += registers.getXs();
+            else indirectX = true;
+        if (execSICF3F4(opcode & 0xFC, flags, operand)) {
+            setLastExecSpan(size);
+            return;
+        }
+        invalidOpcode(opcode);
+    }
+
+    /**
+     * Execute the compiled block at PC or, if there is none (yet), a single instruction.
+     * Addresses are counted while interpreted and a block is compiled once one gets hot.
+     * Only with the JIT engine and only while span tracking, the undo log and the trace are off and no
+     * data breakpoints are set, since compiled blocks update none of them; otherwise this is {@link #execute()}.
+     * Callers checking breakpoints between instructions must not use it either.
+     * @param maxInstructions blocks with more instructions are not entered
+     * @return address of the last executed instruction, or -1 if a block stopped after overwriting
+     *         its own code (PC then points past that instruction)
+     */
+    public int executeBlock(long maxInstructions) throws DataBreakpointException {
+        int pc = registers.getPC();
+        if (blockCache == null || spanTracking || undoLog != null || trace != null || memory.dataBreakpoints.count() > 0) {
+            execute();
+            return pc;
+        }
+        CompiledBlock block = blockCache.lookup(pc);
+        if (block == null && blockCache.countExecution(pc)) {
+            block = BlockCompiler.compile(this, pc);
+            blockCache.put(block);
+        }
+        if (block == null || block.length == 0 || block.length > maxInstructions) {
+            execute();
+            return pc;
+        }
+        int executed = block.run(this);
+        instructionCount += executed;
+        return executed == block.length ? block.last : -1;
+    }
+
+    /**
+     * Decode the instruction at the given address into the decode cache without executing it.
+     * @return slot in the decode cache or -1 if the instruction can not be cached
+     *         (invalid addressing, which has to be reported on every execution, or too close to the end of memory).
+     */
+    private int decode(int address) {
+        // PC would wrap around after such instructions, leave that to the slow path
+        if (address + MAX_INSTRUCTION_SIZE > MAX_ADDRESS) return -1;
+        int opcode = memory.getByteRaw(address);
+        if (FORMAT[opcode] == 1) return decodeCache.put(address, opcode, 1, 0, Flags.NONE);
+        int op = memory.getByteRaw(address + 1);
+        if (FORMAT[opcode] == 2) return decodeCache.put(address, opcode, 2, op, Flags.NONE);
+        int flags = flagsOf(opcode, op);
+        int size = isExtended(flags) && !isSic(flags) ? 4 : 3;
+        int operand;
+        if (isSic(flags)) {
+            operand = operandSic(op, memory.getByteRaw(address + 2));
+        } else if (isExtended(flags)) {
+            if (isRelative(flags)) return -1;
+            operand = operandF4(op, memory.getByteRaw(address + 2), memory.getByteRaw(address + 3));
+        } else {
+            operand = operandF3(op, memory.getByteRaw(address + 2));
+        }
+        if (isIndexed(flags) && !isSimple(flags) && !isIndirect(flags)) return -1;
+        return decodeCache.put(address, opcode, size, operand, flags);
+    }
+
+    /**
+     * The address a SIC/F3/F4 instruction at the given address operates on or jumps to, computed
+     * from the registers before it executes (so it does not touch the decode cache statistics).
+     * @return -1 for format 1 and 2, immediate operands, invalid addressing and addresses out of memory
+     */
+    private int targetAddress(int address) {
+        if (address + MAX_INSTRUCTION_SIZE > MAX_ADDRESS) return -1;
+        int opcode = memory.getByteRaw(address);
+        if (FORMAT[opcode] != 3) return -1;
+        if ((opcode & 0xFC) == Opcode.RSUB) return registers.getL();
+        int op = memory.getByteRaw(address + 1);
+        int flags = flagsOf(opcode, op);
+        if (isImmediate(flags)) return -1;
+        int target;
+        if (isSic(flags)) {
+            target = operandSic(op, memory.getByteRaw(address + 2));
+        } else if (isExtended(flags)) {
+            if (isRelative(flags)) return -1;
+            target = operandF4(op, memory.getByteRaw(address + 2), memory.getByteRaw(address + 3));
+        } else {
+            target = operandF3(op, memory.getByteRaw(address + 2));
+            if (isPCRelative(flags)) target = operandPCRelative(target) + address + 3;
+            else if (isBaseRelative(flags)) target += registers.getB();
+            else if (!isAbsolute(flags)) return -1;
+        }
+        if (isIndexed(flags) && isSimple(flags)) target += registers.getXs();
+        if (isIndirect(flags)) {
+            if (target < 0 || target + 3 > MAX_ADDRESS + 1) return -1;
+            target = memory.getWordRaw(target);
+            if (isIndexed(flags)) target += registers.getXs();
+        }
+        return target >= 0 && target <= MAX_ADDRESS ? target : -1;
+    }
+
+    /**
+     * Fetch, decode and execute the instruction at PC byte by byte, without the decode cache.
+     */
+    void fetchAndExecute() throws DataBreakpointException {
         // fetch first byte
         int opcode = fetch();
         // try format 1
         if (execF1(opcode)) {
-            lastExecAddr.setSpanLength(1);
+            setLastExecSpan(1);
             return;
         }
         // fetch one more byte
         int op = fetch();
         // try format 2
         if (execF2(opcode, op)) {
-            lastExecAddr.setSpanLength(2);
+            setLastExecSpan(2);
             return;
         }
         // otherwise it is format SIC, F3 or F4
-        Flags flags = new Flags(opcode, op);
+        int flags = flagsOf(opcode, op);
         int instructionSize = 0;
         // operand depends on instruction format
         int operand;
         // check if standard SIC
-        if (flags.isSic()) {
-            operand = flags.operandSic(op, fetch());
+        if (isSic(flags)) {
+            operand = operandSic(op, fetch());
             instructionSize = 3;
             // check if F4 (extended)
-        } else if (flags.isExtended()) {
-            operand = flags.operandF4(op, fetch(), fetch());
-            if (flags.isRelative()) invalidAddressing();
+        } else if (isExtended(flags)) {
+            operand = operandF4(op, fetch(), fetch());
+            if (isRelative(flags)) invalidAddressing();
             instructionSize = 4;
             // otherwise it is F3
         } else {
             instructionSize = 3;
-            operand = flags.operandF3(op, fetch());
-            if (flags.isPCRelative())
-                operand = flags.operandPCRelative(operand) + registers.getPC();
-            else if (flags.isBaseRelative())
+            operand = operandF3(op, fetch());
+            if (isPCRelative(flags))
+                operand = operandPCRelative(operand) + registers.getPC();
+            else if (isBaseRelative(flags))
                 operand += registers.getB();
-            else if (!flags.isAbsolute())
+            else if (!isAbsolute(flags))
                 invalidAddressing();  // both PC and base at the same time
         }
         // SIC, F3, F4 -- all support indexed addressing, but only when simple TA calculation used
-        if (flags.isIndexed())
-            if (flags.isSimple()) operand += registers.getXs();
-            else if(flags.isIndirect()) indirectX = true;
+        if (isIndexed(flags))
+            if (isSimple(flags)) operand += registers.getXs();
+            else if(isIndirect(flags)) indirectX = true;
             else invalidAddressing();
         // try to execute
         if (execSICF3F4(opcode & 0xFC, flags, operand)) {
-            lastExecAddr.setSpanLength(instructionSize);
+            setLastExecSpan(instructionSize);
             return;
         }
         invalidOpcode(opcode);
     }
 
+    // ********** Flags *****************
+    // ni and xbpe flags are kept in one int (ni in the lower two bits, xbpe in the upper nibble
+    // of the low byte, same masks as in Flags), so decoding does not allocate.
+
+    private static int flagsOf(int opcode, int op) {
+        return opcode & Flags.MASK_NI | op & Flags.MASK_XBPE;
+    }
+
+    private static boolean isSic(int flags) {
+        return (flags & Flags.MASK_NI) == Flags.SIC;
+    }
+
+    private static boolean isImmediate(int flags) {
+        return (flags & Flags.MASK_NI) == Flags.IMMEDIATE;
+    }
+
+    private static boolean isIndirect(int flags) {
+        return (flags & Flags.MASK_NI) == Flags.INDIRECT;
+    }
+
+    private static boolean isSimple(int flags) {
+        int ni = flags & Flags.MASK_NI;
+        return ni == Flags.SIMPLE || ni == Flags.SIC;
+    }
+
+    private static boolean isIndexed(int flags) {
+        return (flags & Flags.INDEXED) != 0;
+    }
+
+    private static boolean isBaseRelative(int flags) {
+        return (flags & Flags.BASERELATIVE) != 0;
+    }
+
+    private static boolean isPCRelative(int flags) {
+        return (flags & Flags.PCRELATIVE) != 0;
+    }
+
+    private static boolean isRelative(int flags) {
+        return (flags & Flags.MASK_BP) != 0;
+    }
+
+    private static boolean isAbsolute(int flags) {
+        return (flags & Flags.MASK_BP) == Flags.NONE;
+    }
+
+    private static boolean isExtended(int flags) {
+        return (flags & Flags.EXTENDED) != 0;
+    }
+
+    static int operandSic(int a, int b) {
+        // 15-bit address
+        return (a & 0x7F) << 8 | b & 0xFF;
+    }
+
+    static int operandF3(int a, int b) {
+        // 12-bit address
+        return (a & 0x0F) << 8 | b;
+    }
+
+    static int operandF4(int a, int b, int c) {
+        // 20-bit address
+        return (a & 0x0F) << 16 | b << 8 | c;
+    }
+
+    static int operandPCRelative(int op) {
+        // 12-bit signed integer
+        return op >= 2048 ? op - 4096 : op;
+    }
+
+
+    // ********** Snapshots *****************
+
+    /**
+     * The state of a machine at some point: registers, memory (sharing its pages copy-on-write),
+     * the JSUB stack, the instruction count and the device positions.
+     */
+    public static final class Snapshot {
+        private final Registers registers = new Registers();
+        private final Memory.Image memory;
+        private final int[] addressBelowJSUB;
+        private final int instructionCount;
+        private final long[] devicePositions;
+
+        private Snapshot(Machine machine) {
+            registers.copyFrom(machine.registers);
+            memory = machine.memory.save();
+            addressBelowJSUB = Arrays.copyOf(machine.addressBelowJSUB, machine.jsubDepth);
+            instructionCount = machine.instructionCount;
+            devicePositions = machine.devices.positions();
+        }
+
+        public int getInstructionCount() {
+            return instructionCount;
+        }
+    }
+
+    /**
+     * @return bytes of the memory pages this machine and the snapshots hold (null ones are skipped),
+     *         a page shared between them counted once
+     */
+    public long memoryBytes(Snapshot... snapshots) {
+        Memory.Image[] images = new Memory.Image[snapshots.length];
+        for (int i = 0; i < snapshots.length; i++)
+            images[i] = snapshots[i] == null ? null : snapshots[i].memory;
+        return (long) memory.dataPages(images) * Memory.PAGE_SIZE;
+    }
+
+    /**
+     * @return the current state, O(pages) as the memory is not copied.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Return to a snapshot of this (or another) machine; only the pages written since are touched.
+     */
+    public void restore(Snapshot snapshot) {
+        registers.copyFrom(snapshot.registers);
+        memory.restore(snapshot.memory);
+        if (addressBelowJSUB.length < snapshot.addressBelowJSUB.length)
+            addressBelowJSUB = new int[snapshot.addressBelowJSUB.length];
+        System.arraycopy(snapshot.addressBelowJSUB, 0, addressBelowJSUB, 0, snapshot.addressBelowJSUB.length);
+        jsubDepth = snapshot.addressBelowJSUB.length;
+        instructionCount = snapshot.instructionCount;
+        devices.seek(snapshot.devicePositions);
+        clearLastExecReadWrite();
+        if (undoLog != null) undoLog.clear();
+    }
+
+    // ********** Reverse execution *****************
+
+    /**
+     * Keep an undo log of the last executed instructions for {@link #stepBack()}.
+     * @param instructions how many instructions can be undone, 0 turns the log off
+     */
+    public void setUndoCapacity(int instructions) {
+        undoLog = instructions > 0 ? new UndoLog(instructions) : null;
+        memory.setUndoLog(undoLog);
+    }
+
+    /**
+     * @return the undo log, null when off
+     */
+    public UndoLog getUndoLog() {
+        return undoLog;
+    }
+
+    /**
+     * Undo the last executed instruction: registers, the written memory, the JSUB stack and the
+     * instruction count go back to what they were before it. Devices are not rewound.
+     * @return false if there is nothing (more) to undo
+     */
+    public boolean stepBack() {
+        if (undoLog == null || !undoLog.undo(this)) return false;
+        clearLastExecReadWrite();
+        return true;
+    }
+
+    int jsubDepth() {
+        return jsubDepth;
+    }
+
+    // the entry a JSUB would overwrite next
+    int jsubSlot() {
+        return jsubDepth < addressBelowJSUB.length ? addressBelowJSUB[jsubDepth] : 0;
+    }
+
+    // the stack only grows, so an earlier depth always fits
+    void restoreJsub(int depth, int slot) {
+        jsubDepth = depth;
+        if (depth < addressBelowJSUB.length) addressBelowJSUB[depth] = slot;
+    }
+
+    void setInstructionCount(int instructionCount) {
+        this.instructionCount = instructionCount;
+    }
+
+    // ********** Tracing *****************
+
+    /**
+     * Record every executed instruction to the trace, null turns tracing off. The machine does not
+     * close the trace. While tracing, {@link #executeBlock(long)} runs instruction by instruction.
+     */
+    public void setTrace(ExecutionTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @return the trace, null when off
+     */
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
 
     // ********** Step over functionality *****************
 
     /**
      * Push the address bellow current JSUB to the stack, so we can step out of procedure later.
      */
-    private void pushJSUB() {
-        this.addressBelowJSUB.push(this.registers.getPC());
+    void pushJSUB() {
+        if (jsubDepth == addressBelowJSUB.length)
+            addressBelowJSUB = Arrays.copyOf(addressBelowJSUB, 2 * jsubDepth);
+        addressBelowJSUB[jsubDepth++] = this.registers.getPC();
     }
 
     /**
      * Pop the last address bellow current JSUB from the stack, since we got out of current function.
      * (to be called with RSUB)
      */
-    private void popJSUB() {
-        this.addressBelowJSUB.pop();
+    void popJSUB() {
+        if (jsubDepth == 0) throw new EmptyStackException();
+        jsubDepth--;
     }
 
     /**
@@ -346,8 +809,8 @@ public class Machine {
      * @return null if no item on stack - no JSUB encountered, otherwise last address.
      */
     public Integer getAddressBelowLastJSUB() {
-        if (this.addressBelowJSUB.isEmpty()) return null;
-        else return this.addressBelowJSUB.peek();
+        if (jsubDepth == 0) return null;
+        else return this.addressBelowJSUB[jsubDepth - 1];
     }
 
 }
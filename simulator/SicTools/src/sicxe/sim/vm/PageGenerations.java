@@ -0,0 +1,65 @@
+package sicxe.sim.vm;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write generations of memory pages, so clients can fetch only the memory that changed.
+ * Memory stamps the pages of every write with the current generation; {@link #mark()}
+ * ends the current generation and hands it to the client, which later asks for the pages
+ * stamped after it.
+ *
+ * Generations come from one counter shared by all memories and a new memory stamps all
+ * its pages, so a generation handed out by another (older or newer) memory never hides a change.
+ */
+public class PageGenerations {
+
+    public static final int PAGE_SHIFT = 8;         // 256-byte pages
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private static final AtomicLong NEXT = new AtomicLong(1);
+
+    private final long[] pages;
+    private final long created;
+    // volatile: /memory.bin marks from another thread than the one executing
+    private volatile long current;
+
+    public PageGenerations(int capacity) {
+        pages = new long[(capacity + PAGE_SIZE - 1) >>> PAGE_SHIFT];
+        created = current = NEXT.getAndIncrement();
+        Arrays.fill(pages, current);
+    }
+
+    void written(int address, int length) {
+        int last = (address + length - 1) >>> PAGE_SHIFT;
+        for (int page = address >>> PAGE_SHIFT; page <= last; page++)
+            pages[page] = current;
+    }
+
+    void writtenAll() {
+        Arrays.fill(pages, current);
+    }
+
+    /**
+     * End the current generation; later writes get a newer one.
+     * @return the generation that ended.
+     */
+    public synchronized long mark() {
+        long ended = current;
+        current = NEXT.getAndIncrement();
+        return ended;
+    }
+
+    public int pageCount() {
+        return pages.length;
+    }
+
+    /**
+     * @return true if the page was written after the given generation, or the generation
+     * was not handed out by this memory.
+     */
+    public boolean changedSince(int page, long generation) {
+        return generation < created || generation >= current || pages[page] > generation;
+    }
+
+}
@@ -151,6 +151,15 @@ public class Registers {
         else CC = 0;
     }
 
+    // the condition code as is, getSW() keeps only its sign
+    int getCC() {
+        return CC;
+    }
+
+    void setCC(int value) {
+        CC = value;
+    }
+
     public void setSWAfterCompare(int compare) {
         CC = compare;
     }
@@ -226,6 +235,14 @@ public class Registers {
         CC = 0;
     }
 
+    public void copyFrom(Registers other) {
+        PC = other.PC;
+        A = other.A; X = other.X; L = other.L;
+        S = other.S; T = other.T; B = other.B;
+        F = other.F;
+        CC = other.CC;
+    }
+
     public Registers() {
         reset();
     }
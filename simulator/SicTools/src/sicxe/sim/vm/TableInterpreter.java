@@ -0,0 +1,434 @@
+package sicxe.sim.vm;
+
+import sicxe.common.Flags;
+import sicxe.common.Opcode;
+import sicxe.common.SICXE;
+import sicxe.sim.breakpoints.DataBreakpointException;
+import sicxe.sim.breakpoints.ReadDataBreakpointException;
+
+/**
+ * Table driven interpreter engine ({@link Machine.Engine#TABLE}).
+ *
+ * The first instruction byte indexes a table of 256 handlers. Since the byte holds both the
+ * opcode and the ni flags, each handler is built for one format and one addressing mode
+ * (SIC, simple, immediate or indirect); only the xbpe flags are decoded at run time.
+ * The default engine instead tries format 1, format 2 and SIC/F3/F4 switches in turn.
+ *
+ * Both engines leave the machine in the same state after every instruction
+ * (registers, memory, last read/write spans, JSUB stack and logged errors).
+ * Instructions that would wrap PC around the end of memory are left to the byte by byte path.
+ */
+final class TableInterpreter {
+
+    @FunctionalInterface
+    interface Handler {
+        void execute(Machine m, int pc) throws DataBreakpointException;
+    }
+
+    // decodes the operand of a SIC/F3/F4 instruction at pc and moves PC past the instruction
+    @FunctionalInterface
+    private interface Decoder {
+        int decode(Machine m, int pc);
+    }
+
+    @FunctionalInterface
+    private interface Format1Op {
+        void apply(Machine m);
+    }
+
+    @FunctionalInterface
+    private interface Format2Op {
+        void apply(Registers r, int o1, int o2);
+    }
+
+    @FunctionalInterface
+    private interface IntOp {
+        void apply(Machine m, int value);
+    }
+
+    @FunctionalInterface
+    private interface FloatOp {
+        void apply(Registers r, double value);
+    }
+
+    @FunctionalInterface
+    private interface WordSource {
+        int get(Registers r);
+    }
+
+    @FunctionalInterface
+    private interface FloatSource {
+        double get(Registers r);
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean test(Registers r);
+    }
+
+    private static final Handler[] HANDLERS = new Handler[256];
+    static {
+        for (int b = 0; b < HANDLERS.length; b++)
+            HANDLERS[b] = handler(b);
+    }
+
+    private TableInterpreter() {
+    }
+
+    static void execute(Machine m, int pc) throws DataBreakpointException {
+        if (pc + Machine.MAX_INSTRUCTION_SIZE > Machine.MAX_ADDRESS) {
+            m.fetchAndExecute();
+            return;
+        }
+        HANDLERS[m.memory.getByteRaw(pc)].execute(m, pc);
+    }
+
+    // ********** Table *****************
+
+    private static Handler handler(int b) {
+        switch (b) {
+            // format 1
+            case Opcode.FLOAT:  return format1(m -> m.registers.setF((double) m.registers.getAs()));
+            case Opcode.FIX:    return format1(m -> m.registers.setA((int) m.registers.getF()));
+            case Opcode.NORM:   return format1(m -> m.notImplemented("NORM"));
+            case Opcode.SIO:    return format1(m -> m.notImplemented("SIO"));
+            case Opcode.HIO:    return format1(m -> m.notImplemented("HIO"));
+            case Opcode.TIO:    return format1(m -> m.notImplemented("TIO"));
+            // format 2
+            case Opcode.ADDR:   return format2((r, o1, o2) -> r.set(o2, r.get(o2) + r.get(o1)));
+            case Opcode.SUBR:   return format2((r, o1, o2) -> r.set(o2, r.get(o2) - r.get(o1)));
+            case Opcode.MULR:   return format2((r, o1, o2) -> r.set(o2, r.get(o2) * r.get(o1)));
+            case Opcode.DIVR:   return format2((r, o1, o2) -> {
+                                    int divisor = r.get(o1);
+                                    if (divisor == 0) System.out.println("division by zero");
+                                    else r.set(o2, r.gets(o2) / divisor);
+                                });
+            case Opcode.COMPR:  return format2((r, o1, o2) -> r.setSWAfterCompare(r.gets(o1) - r.gets(o2)));
+            case Opcode.SHIFTL: return format2((r, o1, o2) -> r.set(o1, r.get(o1) << (o2 + 1) | r.get(o1) >> (24 - o2 - 1)));
+            case Opcode.SHIFTR: return format2((r, o1, o2) -> r.set(o1, r.gets(o1) >> (o2 + 1)));
+            case Opcode.RMO:    return format2((r, o1, o2) -> r.set(o2, r.get(o1)));
+            case Opcode.CLEAR:  return format2((r, o1, o2) -> r.set(o1, 0));
+            case Opcode.TIXR:   return format2((r, o1, o2) -> {
+                                    r.setX(r.getX() + 1);
+                                    r.setSWAfterCompare(r.getXs() - r.gets(o1));
+                                });
+            case Opcode.SVC:    return (m, pc) -> {
+                                    m.registers.setPC(pc + 2);
+                                    m.notImplemented("SVC");
+                                    m.setLastExecSpan(2);
+                                };
+        }
+        // SIC, F3, F4: the addressing mode is in the low two bits
+        int ni = b & Flags.MASK_NI;
+        switch (b & 0xFC) {
+            // stores
+            case Opcode.STA:    return storeWord(ni, Registers::getA);
+            case Opcode.STX:    return storeWord(ni, Registers::getX);
+            case Opcode.STL:    return storeWord(ni, Registers::getL);
+            case Opcode.STCH:   return storeByte(ni);
+            case Opcode.STB:    return storeWord(ni, Registers::getB);
+            case Opcode.STS:    return storeWord(ni, Registers::getS);
+            case Opcode.STF:    return storeFloat(ni, Registers::getF);
+            case Opcode.STT:    return storeWord(ni, Registers::getT);
+            case Opcode.STSW:   return storeWord(ni, Registers::getSW);
+            // jumps
+            case Opcode.JEQ:    return jump(ni, Registers::isEqual);
+            case Opcode.JGT:    return jump(ni, Registers::isGreater);
+            case Opcode.JLT:    return jump(ni, Registers::isLower);
+            case Opcode.J:      return jump(ni, r -> true);
+            case Opcode.RSUB:   return rsub(ni);
+            case Opcode.JSUB:   return jsub(ni);
+            // loads
+            case Opcode.LDA:    return loadWord(ni, (m, w) -> m.registers.setA(w));
+            case Opcode.LDX:    return loadWord(ni, (m, w) -> m.registers.setX(w));
+            case Opcode.LDL:    return loadWord(ni, (m, w) -> m.registers.setL(w));
+            case Opcode.LDCH:   return loadByte(ni, (m, v) -> m.registers.setALo(v));
+            case Opcode.LDB:    return loadWord(ni, (m, w) -> m.registers.setB(w));
+            case Opcode.LDS:    return loadWord(ni, (m, w) -> m.registers.setS(w));
+            case Opcode.LDF:    return loadFloat(ni, Registers::setF);
+            case Opcode.LDT:    return loadWord(ni, (m, w) -> m.registers.setT(w));
+            // arithmetic
+            case Opcode.ADD:    return loadWord(ni, (m, w) -> m.registers.setA(m.registers.getA() + w));
+            case Opcode.SUB:    return loadWord(ni, (m, w) -> m.registers.setA(m.registers.getA() - w));
+            case Opcode.MUL:    return loadWord(ni, (m, w) -> m.registers.setA(m.registers.getA() * w));
+            case Opcode.DIV:    return loadWord(ni, (m, w) -> {
+                                    int divisor = SICXE.swordToInt(w);
+                                    if (divisor == 0) System.out.println("division by zero");
+                                    else m.registers.setA(m.registers.getAs() / divisor);
+                                });
+            case Opcode.AND:    return loadWord(ni, (m, w) -> m.registers.setA(m.registers.getA() & w));
+            case Opcode.OR:     return loadWord(ni, (m, w) -> m.registers.setA(m.registers.getA() | w));
+            case Opcode.COMP:   return loadWord(ni, (m, w) -> m.registers.setSWAfterCompare(m.registers.getAs() - SICXE.swordToInt(w)));
+            case Opcode.TIX:    return tix(ni);
+            // input/output
+            case Opcode.RD:     return loadByte(ni, (m, v) -> m.registers.setALo(m.devices.read(v)));
+            case Opcode.WD:     return loadByte(ni, (m, v) -> m.devices.write(v, m.registers.getALo()));
+            case Opcode.TD:     return loadByte(ni, (m, v) -> m.registers.setSWAfterCompare(m.devices.test(v) ? -1 : 0));
+            // floating point arithmetic
+            case Opcode.ADDF:   return loadFloat(ni, (r, f) -> r.setF(r.getF() + f));
+            case Opcode.SUBF:   return loadFloat(ni, (r, f) -> r.setF(r.getF() - f));
+            case Opcode.MULF:   return loadFloat(ni, (r, f) -> r.setF(r.getF() * f));
+            case Opcode.DIVF:   return loadFloat(ni, (r, f) -> r.setF(r.getF() / f));
+            case Opcode.COMPF:  return loadFloat(ni, (r, f) -> {
+                                    double sub = r.getF() - f;
+                                    r.setSWAfterCompare(sub > 0 ? 1 : (sub < 0 ? -1 : 0));
+                                });
+            // others
+            case Opcode.LPS:    return notImplemented(ni, "LPS");
+            case Opcode.STI:    return notImplemented(ni, "STI");
+            case Opcode.SSK:    return notImplemented(ni, "SSK");
+            default:            return invalidOpcode(ni, b);
+        }
+    }
+
+    // ********** Handlers *****************
+
+    private static Handler format1(Format1Op op) {
+        return (m, pc) -> {
+            m.registers.setPC(pc + 1);
+            op.apply(m);
+            m.setLastExecSpan(1);
+        };
+    }
+
+    private static Handler format2(Format2Op op) {
+        return (m, pc) -> {
+            int operand = m.memory.getByteRaw(pc + 1);
+            m.registers.setPC(pc + 2);
+            op.apply(m.registers, (operand & 0xF0) >> 4, operand & 0x0F);
+            m.setLastExecSpan(2);
+        };
+    }
+
+    private static Handler loadWord(int ni, IntOp op) {
+        Decoder decoder = decoder(ni);
+        if (ni == Flags.IMMEDIATE) return (m, pc) -> {
+            int value = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            op.apply(m, value);
+            m.setLastExecSpan(size);
+        };
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            op.apply(m, readWord(m, indirect ? resolve(m, operand) : operand));
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler loadByte(int ni, IntOp op) {
+        Decoder decoder = decoder(ni);
+        if (ni == Flags.IMMEDIATE) return (m, pc) -> {
+            int value = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            op.apply(m, value);
+            m.setLastExecSpan(size);
+        };
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            int addr = indirect ? resolve(m, operand) : operand;
+            m.setLastExecRead(addr, 1);
+            op.apply(m, m.memory.getByte(addr));
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler loadFloat(int ni, FloatOp op) {
+        Decoder decoder = decoder(ni);
+        if (ni == Flags.IMMEDIATE) return (m, pc) -> {
+            int value = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            op.apply(m.registers, value);
+            m.setLastExecSpan(size);
+        };
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            int addr = indirect ? resolve(m, operand) : operand;
+            m.setLastExecRead(addr, 6);
+            op.apply(m.registers, m.memory.getFloat(addr));
+            m.setLastExecSpan(size);
+        };
+    }
+
+    // TIX increments X before the operand is loaded, which indexed indirect addressing sees
+    private static Handler tix(int ni) {
+        Decoder decoder = decoder(ni);
+        boolean immediate = ni == Flags.IMMEDIATE;
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            m.registers.setX(m.registers.getX() + 1);
+            int word = immediate ? operand : readWord(m, indirect ? resolve(m, operand) : operand);
+            m.registers.setSWAfterCompare(m.registers.getXs() - SICXE.swordToInt(word));
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler storeWord(int ni, WordSource source) {
+        Decoder decoder = decoder(ni);
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            int addr = indirect ? resolve(m, operand) : operand;
+            m.setLastExecWrite(addr, 3);
+            m.memory.setWord(addr, source.get(m.registers));
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler storeByte(int ni) {
+        Decoder decoder = decoder(ni);
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            int addr = indirect ? resolve(m, operand) : operand;
+            m.setLastExecWrite(addr, 1);
+            m.memory.setByte(addr, m.registers.getA());
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler storeFloat(int ni, FloatSource source) {
+        Decoder decoder = decoder(ni);
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            int addr = indirect ? resolve(m, operand) : operand;
+            m.setLastExecWrite(addr, 6);
+            m.memory.setFloat(addr, source.get(m.registers));
+            m.setLastExecSpan(size);
+        };
+    }
+
+    // the target of an indirect jump is only read when the jump is taken
+    private static Handler jump(int ni, Condition condition) {
+        Decoder decoder = decoder(ni);
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            if (condition.test(m.registers))
+                m.registers.setPC(indirect ? resolve(m, operand) : operand);
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler jsub(int ni) {
+        Decoder decoder = decoder(ni);
+        boolean indirect = ni == Flags.INDIRECT;
+        return (m, pc) -> {
+            int operand = decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            m.registers.setL(m.registers.getPC());
+            m.pushJSUB();
+            m.registers.setPC(indirect ? resolve(m, operand) : operand);
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler rsub(int ni) {
+        Decoder decoder = decoder(ni);
+        return (m, pc) -> {
+            decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            m.registers.setPC(m.registers.getL());
+            m.popJSUB();
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler notImplemented(int ni, String mnemonic) {
+        Decoder decoder = decoder(ni);
+        return (m, pc) -> {
+            decoder.decode(m, pc);
+            int size = m.registers.getPC() - pc;
+            m.notImplemented(mnemonic);
+            m.setLastExecSpan(size);
+        };
+    }
+
+    private static Handler invalidOpcode(int ni, int opcode) {
+        Decoder decoder = decoder(ni);
+        return (m, pc) -> {
+            decoder.decode(m, pc);
+            m.invalidOpcode(opcode);
+        };
+    }
+
+    // ********** Addressing modes *****************
+
+    private static Decoder decoder(int ni) {
+        switch (ni) {
+            case Flags.SIC:       return TableInterpreter::decodeSic;
+            case Flags.IMMEDIATE: return TableInterpreter::decodeImmediate;
+            case Flags.INDIRECT:  return TableInterpreter::decodeIndirect;
+            default:              return TableInterpreter::decodeSimple;
+        }
+    }
+
+    // SIC: 15-bit target address, optionally indexed
+    private static int decodeSic(Machine m, int pc) {
+        int op = m.memory.getByteRaw(pc + 1);
+        m.registers.setPC(pc + 3);
+        int addr = Machine.operandSic(op, m.memory.getByteRaw(pc + 2));
+        return (op & Flags.INDEXED) != 0 ? addr + m.registers.getXs() : addr;
+    }
+
+    // simple: target address, optionally indexed
+    private static int decodeSimple(Machine m, int pc) {
+        int op = m.memory.getByteRaw(pc + 1);
+        int addr = decodeF3F4(m, pc, op);
+        return (op & Flags.INDEXED) != 0 ? addr + m.registers.getXs() : addr;
+    }
+
+    // immediate: the value itself, indexing is not allowed
+    private static int decodeImmediate(Machine m, int pc) {
+        int op = m.memory.getByteRaw(pc + 1);
+        int value = decodeF3F4(m, pc, op);
+        if ((op & Flags.INDEXED) != 0) m.invalidAddressing();
+        return value;
+    }
+
+    // indirect: address of the target address, X is added after dereferencing (see resolve)
+    private static int decodeIndirect(Machine m, int pc) {
+        int op = m.memory.getByteRaw(pc + 1);
+        int addr = decodeF3F4(m, pc, op);
+        if ((op & Flags.INDEXED) != 0) m.indirectX = true;
+        return addr;
+    }
+
+    // F3 displacement with PC/base relative addressing applied or F4 address
+    private static int decodeF3F4(Machine m, int pc, int op) {
+        if ((op & Flags.EXTENDED) != 0) {
+            m.registers.setPC(pc + 4);
+            int addr = Machine.operandF4(op, m.memory.getByteRaw(pc + 2), m.memory.getByteRaw(pc + 3));
+            if ((op & Flags.MASK_BP) != 0) m.invalidAddressing();
+            return addr;
+        }
+        m.registers.setPC(pc + 3);
+        int disp = Machine.operandF3(op, m.memory.getByteRaw(pc + 2));
+        if ((op & Flags.PCRELATIVE) != 0) return Machine.operandPCRelative(disp) + pc + 3;
+        if ((op & Flags.BASERELATIVE) != 0) return disp + m.registers.getB();
+        return disp;
+    }
+
+    private static int resolve(Machine m, int pointer) {
+        int addr = m.memory.getWordRaw(pointer);
+        return m.indirectX ? addr + m.registers.getXs() : addr;
+    }
+
+    private static int readWord(Machine m, int addr) throws ReadDataBreakpointException {
+        m.setLastExecRead(addr, 3);
+        return m.memory.getWord(addr);
+    }
+
+}
@@ -0,0 +1,89 @@
+package linker;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.link.LinkerError;
+import sicxe.link.section.Section;
+import sicxe.link.utils.BinaryObject;
+import sicxe.loader.Loader;
+import sicxe.sim.vm.Machine;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static support.Fixtures.*;
+
+/**
+ * Checks that binary objects hold the same sections as the .obj text they are made from
+ * and that loading them gives what loading the text gives.
+ */
+public class BinaryObjectTest {
+
+    private static List<File> sources(File directory) {
+        List<File> sources = new ArrayList<>();
+        File[] files = directory.listFiles();
+        Assert.assertNotNull(directory + " not found", files);
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isDirectory()) sources.addAll(sources(f));
+            else if (f.getName().endsWith(".asm")) sources.add(f);
+        }
+        return sources;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception, LinkerError {
+        System.out.println("running testRoundTrip");
+        int checked = 0;
+        for (File source : sources(new File("tests"))) {
+            String obj = assemble(source);
+            if (obj == null) continue;
+            List<Section> sections = BinaryObject.fromText(obj);
+            byte[] binary = BinaryObject.write(sections);
+            List<Section> read = BinaryObject.read(ByteBuffer.wrap(binary));
+            Assert.assertEquals(source + " sections", sections.size(), read.size());
+            // adjacent T records come back joined, so compare what is written again
+            Assert.assertArrayEquals(source.toString(), binary, BinaryObject.write(read));
+            checked++;
+        }
+        Assert.assertTrue("no program assembled", checked > 0);
+    }
+
+    @Test
+    public void testLoad() throws Exception, LinkerError {
+        System.out.println("running testLoad");
+        for (File source : sources(new File("tests"))) {
+            String obj = assemble(source);
+            if (obj == null) continue;
+            Section first = BinaryObject.fromText(obj).get(0);
+            // the text loader stops at D and R records, the binary one does not
+            if (!first.getExtDefs().isEmpty() || !first.getExtRefs().isEmpty()) continue;
+
+            Machine expected = new Machine();
+            boolean expectedLoaded = Loader.loadSection(expected, new StringReader(obj));
+            Machine actual = new Machine();
+            boolean loaded = Loader.loadBinary(actual, ByteBuffer.wrap(BinaryObject.write(List.of(first))));
+            Assert.assertEquals(source + " loaded", expectedLoaded, loaded);
+            assertSameMachine(source.toString(), expected, actual);
+        }
+    }
+
+    @Test
+    public void testNotBinary() {
+        System.out.println("running testNotBinary, expecting a LinkerError");
+        try {
+            BinaryObject.read(ByteBuffer.wrap("HPROG  000000000003".getBytes()));
+            Assert.fail("object text should not read as a binary object");
+        } catch (LinkerError le) {
+            Assert.assertTrue(le.getMessage(), le.getMessage().contains("Not a binary object"));
+        }
+        Assert.assertFalse(Loader.loadBinary(new Machine(), ByteBuffer.wrap(new byte[3])));
+    }
+
+}
@@ -0,0 +1,182 @@
+package linker;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.link.Linker;
+import sicxe.link.LinkerError;
+import sicxe.link.Options;
+import sicxe.link.section.Section;
+import sicxe.link.utils.Writer;
+import sicxe.loader.Loader;
+import sicxe.sim.vm.Machine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static support.Fixtures.*;
+
+/**
+ * Checks that linking object texts from memory and loading the linked section directly
+ * give what linking the files and loading the written output gives.
+ */
+public class InMemoryLinkTest {
+
+    private static Options options(String outputPath, boolean keep) {
+        Options options = new Options();
+        options.setOutputName("out.obj");
+        options.setOutputPath(outputPath);
+        options.setKeep(keep);
+        return options;
+    }
+
+    private static void testDirectory(String directory, String main) throws Exception, LinkerError {
+        List<String> inputs = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (String name : new String[]{main, "fact.obj", "print.obj", "stack.obj", "ending.obj", "func.obj"}) {
+            File f = new File(directory, name);
+            if (!f.exists() || inputs.contains(f.getPath())) continue;
+            inputs.add(f.getPath());
+            texts.add(Files.readString(f.toPath()));
+        }
+        File out = File.createTempFile("linked", ".obj");
+        out.deleteOnExit();
+
+        for (boolean keep : new boolean[]{false, true}) {
+            Options fromFiles = options(out.getPath(), keep);
+            Linker fileLinker = new Linker(inputs, fromFiles);
+            File written = new Writer(fileLinker.link(), fromFiles).write();
+            String writtenText = Files.readString(written.toPath());
+            Machine expected = new Machine();
+            boolean expectedLoaded = Loader.loadSection(expected, new StringReader(writtenText));
+
+            Options inMemory = options(out.getPath(), keep);
+            Linker memoryLinker = new Linker(inputs, texts, inMemory);
+            Section section = memoryLinker.link();
+            Assert.assertEquals(directory + " text", writtenText, new Writer(section, inMemory).toText());
+            Assert.assertEquals(directory + " relocations",
+                    fileLinker.relocations.toString(), memoryLinker.relocations.toString());
+            Machine actual = new Machine();
+            Assert.assertEquals(directory + " loaded", expectedLoaded, Loader.loadSection(actual, section));
+            assertSameMachine(directory + " keep=" + keep, expected, actual);
+        }
+    }
+
+    @Test
+    public void testFactorial() throws Exception, LinkerError {
+        System.out.println("running testFactorial");
+        testDirectory("tests/linker/factorial", "main.obj");
+    }
+
+    @Test
+    public void testMulti() throws Exception, LinkerError {
+        System.out.println("running testMulti");
+        testDirectory("tests/linker/multi", "main.obj");
+    }
+
+    @Test
+    public void testMissingInput() {
+        System.out.println("running testMissingInput, expecting a LinkerError");
+
+        List<String> inputs = List.of("tests/linker/missing.obj");
+        try {
+            new Linker(inputs, List.of("Hbad"), options(null, false)).link();
+            Assert.fail("a broken H record should not link");
+        } catch (LinkerError le) {
+            Assert.assertTrue(le.getMessage(), le.getMessage().contains("tests/linker/missing.obj"));
+        }
+    }
+
+    @Test
+    public void testDuplicateDefinition() {
+        System.out.println("running testDuplicateDefinition, expecting a LinkerError");
+
+        List<String> inputs = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            inputs.add("s" + i + ".obj");
+            // the first and the last section define x
+            String def = i == 0 || i == 7 ? "Dx     000000\n" : "Dy" + i + "    000000\n";
+            texts.add("Hs" + i + "    000000000003\n" + def + "T00000003000000\nE000000\n");
+        }
+        for (int run = 0; run < 5; run++) {
+            try {
+                new Linker(inputs, texts, options(null, false)).link();
+                Assert.fail("x is defined twice");
+            } catch (LinkerError le) {
+                Assert.assertEquals("first pass: Duplicated external symbol definition 'x', first defined at s0.obj, row 2"
+                        + " - s7.obj, row 2", le.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testDefinitionNamedLikeEarlierSection() {
+        System.out.println("running testDefinitionNamedLikeEarlierSection, expecting a LinkerError");
+
+        List<String> inputs = List.of("a.obj", "b.obj");
+        List<String> texts = List.of("Ha     000000000003\nT00000003000000\nE000000\n",
+                "Hb     000000000003\nDa     000001\nT00000003000000\nE000000\n");
+        try {
+            new Linker(inputs, texts, options(null, false)).link();
+            Assert.fail("a is the name of the first section");
+        } catch (LinkerError le) {
+            Assert.assertEquals("first pass: Duplicated external symbol definition 'a', first defined at a.obj, row 1"
+                    + " - b.obj, row 2", le.getMessage());
+        }
+    }
+
+    @Test
+    public void testDefinitionNamedLikeLaterSection() throws LinkerError {
+        System.out.println("running testDefinitionNamedLikeLaterSection");
+
+        // the section name replaces the definition, as it always did
+        List<String> inputs = List.of("a.obj", "b.obj");
+        List<String> texts = List.of("Ha     000000000003\nDb     000001\nT00000003000000\nE000000\n",
+                "Hb     000000000003\nT00000003000000\nE000000\n");
+        Linker linker = new Linker(inputs, texts, options(null, false));
+        linker.link();
+    }
+
+    @Test
+    public void testVerboseMessagesInOrder() throws LinkerError {
+        System.out.println("running testVerboseMessagesInOrder");
+
+        List<String> inputs = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            inputs.add("s" + i + ".obj");
+            texts.add("Hs" + i + "    000000000003\nDd" + i + "    000000\nT00000003000000\nE000000\n");
+        }
+        Options options = options(null, false);
+        options.setVerbose(true);
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        try {
+            new Linker(inputs, texts, options).link();
+        } finally {
+            System.setOut(out);
+        }
+
+        // each file's records are read one after another, in the order of the files
+        List<String> records = new ArrayList<>();
+        for (String line : printed.toString().split("\\R"))
+            if (line.startsWith("reading "))
+                records.add(line.startsWith("reading D") ? "D" + line.substring(17).trim().split(" ")[0] : line.substring(8, 9));
+        Assert.assertEquals(32, records.size());
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals("H", records.get(4 * i));
+            Assert.assertEquals("Dd" + i, records.get(4 * i + 1));
+            Assert.assertEquals("T", records.get(4 * i + 2));
+            Assert.assertEquals("E", records.get(4 * i + 3));
+        }
+    }
+
+}
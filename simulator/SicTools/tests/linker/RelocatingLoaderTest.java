@@ -0,0 +1,131 @@
+package linker;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.link.Linker;
+import sicxe.link.LinkerError;
+import sicxe.link.Options;
+import sicxe.link.section.Section;
+import sicxe.link.utils.BinaryObject;
+import sicxe.loader.Loader;
+import sicxe.sim.Executor;
+import sicxe.sim.vm.Machine;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that the relocating loader places sections as the linker does at address 0
+ * and that relocated programs run the same at any address.
+ */
+public class RelocatingLoaderTest {
+
+    private static final int MAX_STEPS = 100_000;
+
+    private static List<String> inputs(String directory, String... names) {
+        List<String> inputs = new ArrayList<>();
+        for (String name : names) inputs.add(new File(directory, name).getPath());
+        return inputs;
+    }
+
+    private static List<Section> sections(List<String> inputs) throws Exception, LinkerError {
+        List<Section> sections = new ArrayList<>();
+        for (String input : inputs)
+            sections.addAll(BinaryObject.fromText(Files.readString(new File(input).toPath())));
+        return sections;
+    }
+
+    private static void testSameAsLinker(List<String> inputs) throws Exception, LinkerError {
+        File out = File.createTempFile("linked", ".obj");
+        out.deleteOnExit();
+        Options options = new Options();
+        options.setOutputPath(out.getPath());
+        Section linked = new Linker(inputs, options).link();
+        Machine expected = new Machine();
+        Assert.assertTrue(Loader.loadSection(expected, linked));
+
+        Machine actual = new Machine();
+        Loader.loadRelocated(actual, sections(inputs), 0);
+        Assert.assertEquals(inputs + " PC", expected.registers.getPC(), actual.registers.getPC());
+        for (int address = 0; address < linked.getLength(); address++)
+            Assert.assertEquals(inputs + " byte at " + Integer.toHexString(address),
+                    expected.memory.getByteRaw(address), actual.memory.getByteRaw(address));
+    }
+
+    private static void run(Machine machine) {
+        Executor executor = new Executor(machine);
+        Assert.assertEquals(Executor.StopReason.HALT, executor.runBatch(MAX_STEPS, 0));
+    }
+
+    @Test
+    public void testSameAsLinker() throws Exception, LinkerError {
+        System.out.println("running testSameAsLinker");
+        testSameAsLinker(inputs("tests/linker/multi", "main.obj", "func.obj"));
+        testSameAsLinker(inputs("tests/linker/factorial", "main.obj", "fact.obj", "print.obj", "stack.obj", "ending.obj"));
+    }
+
+    @Test
+    public void testRunAnywhere() throws Exception, LinkerError {
+        System.out.println("running testRunAnywhere");
+        List<String> inputs = inputs("tests/linker/multi", "main.obj", "func.obj");
+
+        Machine atZero = new Machine();
+        Map<String, Integer> zero = Loader.loadRelocated(atZero, sections(inputs), 0);
+        run(atZero);
+
+        Machine moved = new Machine();
+        Map<String, Integer> symbols = Loader.loadRelocated(moved, sections(inputs), 0x5003);
+        Assert.assertEquals(0x5003, (int) symbols.get("main"));
+        run(moved);
+
+        // the library and the program loaded separately, far apart
+        Machine separate = new Machine();
+        Map<String, Integer> known = new HashMap<>();
+        Loader.loadRelocated(separate, sections(inputs.subList(1, 2)), 0x80000, known);
+        Loader.loadRelocated(separate, sections(inputs.subList(0, 1)), 0x100, known);
+        Assert.assertEquals(0x100, separate.registers.getPC());
+        run(separate);
+
+        for (String data : new String[]{"data1", "data2", "ref1"}) {
+            int expected = atZero.memory.getWordRaw(zero.get(data));
+            Assert.assertEquals(data, expected, moved.memory.getWordRaw(symbols.get(data)));
+            Assert.assertEquals(data, expected, separate.memory.getWordRaw(known.get(data)));
+        }
+        Assert.assertEquals(atZero.registers.getA(), moved.registers.getA());
+        Assert.assertEquals(atZero.registers.getA(), separate.registers.getA());
+        Assert.assertEquals(atZero.registers.getPC() + 0x5003, moved.registers.getPC());
+    }
+
+    @Test
+    public void testUndefinedSymbol() throws Exception {
+        System.out.println("running testUndefinedSymbol, expecting a LinkerError");
+        try {
+            Loader.loadRelocated(new Machine(), sections(inputs("tests/linker/multi", "main.obj")), 0);
+            Assert.fail("func is not loaded");
+        } catch (LinkerError le) {
+            Assert.assertTrue(le.getMessage(), le.getMessage().contains("func"));
+        }
+    }
+
+    @Test
+    public void testSymbolOfEarlierLoad() throws Exception {
+        System.out.println("running testSymbolOfEarlierLoad, expecting a LinkerError");
+        Machine machine = new Machine();
+        Map<String, Integer> known = new HashMap<>();
+        List<String> inputs = inputs("tests/linker/multi", "func.obj");
+        try {
+            Loader.loadRelocated(machine, sections(inputs), 0x1000, known);
+            Loader.loadRelocated(machine, sections(inputs), 0x2000, known);
+            Assert.fail("func is loaded twice");
+        } catch (LinkerError le) {
+            Assert.assertTrue(le.getMessage(), le.getMessage().contains("func, already loaded at 1000"));
+        }
+    }
+
+}
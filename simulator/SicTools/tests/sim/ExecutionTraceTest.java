@@ -0,0 +1,135 @@
+package sim;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.sim.vm.ExecutionTrace;
+import sicxe.sim.vm.Machine;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static support.Fixtures.*;
+
+/**
+ * Checks that the execution trace records what the machine reports per instruction
+ * (PC, size, last read/write span), keeps the last records of a longer run, and that a
+ * trace file can be read back on its own.
+ */
+public class ExecutionTraceTest {
+
+    private static final int STEPS = 3_000;
+
+    private static String record(int pc, int opcode, int size, int access, int address, int length) {
+        return String.format("PC=%d op=%d size=%d access=%d %d+%d", pc, opcode, size, access, address, length);
+    }
+
+    private static String record(ExecutionTrace trace, long n) {
+        return record(trace.pc(n), trace.opcode(n), trace.size(n), trace.access(n), trace.accessAddress(n), trace.accessLength(n));
+    }
+
+    // runs with span tracking on and describes every instruction as the trace should record it
+    private static List<String> run(Machine machine, int steps) {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < steps; i++) {
+            int pc = machine.registers.getPC();
+            int opcode = machine.memory.getByteRaw(pc);
+            try {
+                machine.execute();
+            } catch (Exception e) {
+                break;
+            }
+            if (machine.getLastExecWrite().getSpanLength() > 0)
+                expected.add(record(pc, opcode, machine.getLastExecAddr().getSpanLength(), ExecutionTrace.WRITE,
+                        machine.getLastExecWrite().getStartAddress(), machine.getLastExecWrite().getSpanLength()));
+            else if (machine.getLastExecRead().getSpanLength() > 0)
+                expected.add(record(pc, opcode, machine.getLastExecAddr().getSpanLength(), ExecutionTrace.READ,
+                        machine.getLastExecRead().getStartAddress(), machine.getLastExecRead().getSpanLength()));
+            else
+                expected.add(record(pc, opcode, machine.getLastExecAddr().getSpanLength(), ExecutionTrace.NONE, -1, 0));
+            if (pc == machine.registers.getPC()) break;
+        }
+        return expected;
+    }
+
+    @Test
+    public void testRecordsMatchSpans() throws Exception {
+        System.out.println("running testRecordsMatchSpans");
+
+        File[] sources = new File("tests").listFiles((dir, name) -> name.endsWith(".asm"));
+        Assert.assertNotNull("tests directory not found", sources);
+        Arrays.sort(sources);
+        int compared = 0;
+        for (File source : sources) {
+            String obj = assemble(source);
+            if (obj == null) continue;
+            for (Machine.Engine engine : new Machine.Engine[]{Machine.Engine.SWITCH, Machine.Engine.TABLE}) {
+                Machine machine = load(obj, engine);
+                ExecutionTrace trace = ExecutionTrace.offHeap(STEPS);
+                machine.setTrace(trace);
+                List<String> expected = run(machine, STEPS);
+
+                String name = source.getName() + " " + engine;
+                Assert.assertEquals(name, expected.size(), trace.recorded());
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertEquals(name + ", record " + i, expected.get(i), record(trace, i));
+                    // loads and stores access their effective address
+                    if (trace.access(i) != ExecutionTrace.NONE)
+                        Assert.assertEquals(name + ", target " + i, trace.accessAddress(i), trace.target(i));
+                }
+            }
+            compared++;
+        }
+        System.out.println("compared " + compared + " programs");
+        Assert.assertTrue("no programs compared", compared > 0);
+    }
+
+    @Test
+    public void testRingKeepsLastRecords() throws Exception {
+        System.out.println("running testRingKeepsLastRecords");
+
+        String obj = assemble(new File("tests/arithmetic.asm"));
+        Machine machine = load(obj, Machine.Engine.SWITCH);
+        ExecutionTrace trace = ExecutionTrace.offHeap(4);
+        machine.setTrace(trace);
+        machine.setSpanTracking(false);
+        List<String> expected = run(load(obj, Machine.Engine.SWITCH), 10);
+        for (int i = 0; i < 10; i++) machine.execute();
+
+        Assert.assertEquals(10, trace.recorded());
+        Assert.assertEquals(6, trace.first());
+        for (int i = 6; i < 10; i++)
+            Assert.assertEquals("record " + i, expected.get(i), record(trace, i));
+        // tracing does not turn span tracking on for the callers
+        Assert.assertEquals(0, machine.getLastExecAddr().getSpanLength());
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        System.out.println("running testMappedFile");
+
+        File file = File.createTempFile("trace", ".bin");
+        file.deleteOnExit();
+        Machine machine = load(assemble(new File("tests/arithmetic.asm")), Machine.Engine.SWITCH);
+        ExecutionTrace trace = ExecutionTrace.mapped(file.toPath(), 100);
+        machine.setTrace(trace);
+        for (int i = 0; i < 5; i++) machine.execute();
+        machine.setTrace(null);
+        int pc = trace.pc(4);
+        trace.close();
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(ExecutionTrace.HEADER_BYTES + 100 * ExecutionTrace.RECORD_BYTES, bytes.capacity());
+        Assert.assertEquals("SICTRACE", new String(bytes.array(), 0, 8, "US-ASCII"));
+        Assert.assertEquals(ExecutionTrace.RECORD_BYTES, bytes.getInt(8));
+        Assert.assertEquals(100, bytes.getLong(16));
+        Assert.assertEquals(5, bytes.getLong(24));
+        Assert.assertEquals(pc, bytes.getInt(ExecutionTrace.HEADER_BYTES + 4 * ExecutionTrace.RECORD_BYTES));
+    }
+}
@@ -0,0 +1,122 @@
+package sim;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that executing instructions does not allocate once span tracking is off,
+ * so long batch runs do not keep the garbage collector busy.
+ */
+public class MachineAllocationTest {
+
+    private static final int WARMUP = 2_000_000;
+    private static final int MEASURED = 1_000_000;
+    // allowance for the measurement itself, far below one byte per instruction
+    private static final long SLACK = 1024;
+
+    // endless loop: word, byte and float loads/stores, indexing, format 1/2 and JSUB/RSUB
+    private static final String SICXE_LOOP = String.join("\n",
+            "alloc   START   0",
+            "first   LDX     #0",
+            "loop    JSUB    work",
+            "        TIX     #100",
+            "        JLT     loop",
+            "        J       first",
+            "work    LDA     sum",
+            "        ADD     #3",
+            "        STA     sum",
+            "        STCH    buf,X",
+            "        LDCH    buf,X",
+            "        LDF     sumf",
+            "        ADDF    one",
+            "        STF     sumf",
+            "        FIX",
+            "        CLEAR   S",
+            "        ADDR    A,S",
+            "        +LDT    @ptr",
+            "        RSUB",
+            "sum     WORD    0",
+            "ptr     WORD    0",
+            "one     FLOT    1.0",
+            "sumf    FLOT    0.0",
+            "buf     RESB    100",
+            "        END     first",
+            "");
+
+    private static final String SIC_LOOP = String.join("\n",
+            "alloc   START   0",
+            "first   LDX     zero",
+            "loop    JSUB    work",
+            "        TIX     hundred",
+            "        JLT     loop",
+            "        J       first",
+            "work    LDA     sum",
+            "        ADD     three",
+            "        STA     sum",
+            "        STCH    buf,X",
+            "        LDCH    buf,X",
+            "        RSUB",
+            "zero    WORD    0",
+            "three   WORD    3",
+            "hundred WORD    100",
+            "sum     WORD    0",
+            "buf     RESB    100",
+            "        END     first",
+            "");
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void testSicxeExecuteDoesNotAllocate() throws Exception {
+        System.out.println("running testSicxeExecuteDoesNotAllocate");
+
+        sicxe.asm.Assembler assembler = new sicxe.asm.Assembler();
+        sicxe.ast.Program program = assembler.assemble(SICXE_LOOP);
+        Assert.assertEquals("assembler errors", 0, assembler.errorCatcher.count());
+        StringWriter obj = new StringWriter();
+        assembler.generateObj(program, obj, false);
+
+        sicxe.sim.vm.Machine machine = new sicxe.sim.vm.Machine();
+        sicxe.loader.Loader.loadSection(machine, new StringReader(obj.toString()));
+        machine.setSpanTracking(false);
+
+        for (int i = 0; i < WARMUP; i++) machine.execute();
+        long before = allocatedBytes();
+        for (int i = 0; i < MEASURED; i++) machine.execute();
+        long allocated = allocatedBytes() - before;
+
+        System.out.println("allocated " + allocated + " bytes in " + MEASURED + " instructions");
+        Assert.assertTrue("execute() allocated " + allocated + " bytes", allocated < SLACK);
+    }
+
+    @Test
+    public void testSicExecuteDoesNotAllocate() throws Exception {
+        System.out.println("running testSicExecuteDoesNotAllocate");
+
+        sic.asm.Assembler assembler = new sic.asm.Assembler();
+        sic.ast.Program program = assembler.assemble(SIC_LOOP);
+        Assert.assertEquals("assembler errors", 0, assembler.errorCatcher.count());
+        StringWriter obj = new StringWriter();
+        assembler.generateObj(program, obj, false);
+
+        sic.sim.vm.Machine machine = new sic.sim.vm.Machine();
+        sic.loader.Loader.loadSection(machine, new StringReader(obj.toString()), null);
+        machine.setSpanTracking(false);
+
+        for (int i = 0; i < WARMUP; i++) machine.execute();
+        long before = allocatedBytes();
+        for (int i = 0; i < MEASURED; i++) machine.execute();
+        long allocated = allocatedBytes() - before;
+
+        System.out.println("allocated " + allocated + " bytes in " + MEASURED + " instructions");
+        Assert.assertTrue("execute() allocated " + allocated + " bytes", allocated < SLACK);
+    }
+}
@@ -0,0 +1,222 @@
+package sim;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.sim.Executor;
+import sicxe.sim.vm.Machine;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Set;
+
+import static support.Fixtures.*;
+
+/**
+ * Runs every program under tests with each engine and checks that the machines
+ * end up in the same state as with the switch engine.
+ */
+public class MachineEngineTest {
+
+    private static final int MAX_STEPS = 200_000;
+    // odd batch size, so batches also end in the middle of compiled blocks
+    private static final int BATCH = 10_007;
+
+    // hot loops, so that the JIT compiles blocks with each kind of instruction and addressing
+    private static final String[][] HOT_LOOPS = {
+        {"self-modifying", String.join("\n",
+            "prog    START   0",
+            "        LDT     #0",
+            "        LDX     #0",
+            ". the store changes the immediate operand of LDS in the same block",
+            "loop    LDA     code",
+            "        ADD     #1",
+            "        STA     code",
+            "code    LDS     #0",
+            "        ADDR    S,T",
+            "        STCH    flag",
+            "        TIX     #1500",
+            "        JLT     loop",
+            "halt    J       halt",
+            "flag    RESB    1")},
+        {"addressing", String.join("\n",
+            "prog    START   0",
+            "        LDX     #0",
+            "        LDT     #0",
+            "        LDB     #data",
+            "        BASE    data",
+            "        LDA     #acc",
+            "        STA     ptr",
+            "loop    LDA     prog,X",
+            "        STA     data,X",
+            "        ADD     @ptr",
+            "        STA     @ptr",
+            "        +ADD    data,X",
+            "        +STA    out",
+            "        LDCH    prog,X",
+            "        STCH    data,X",
+            "        LDS     far",
+            "        ADDR    S,T",
+            "        STT     far",
+            "        TIX     count",
+            "        JLT     loop",
+            "halt    J       halt",
+            "ptr     RESW    1",
+            "acc     WORD    7",
+            "count   WORD    1500",
+            "out     RESW    1",
+            "data    RESB    4000",
+            "far     WORD    3")},
+        {"float", String.join("\n",
+            "prog    START   0",
+            "        LDT     #1500",
+            "        LDX     #0",
+            "        LDS     #1",
+            "loop    LDF     acc",
+            "        ADDF    step",
+            "        MULF    scale",
+            "        DIVF    scale",
+            "        SUBF    tiny",
+            "        STF     acc",
+            "        COMPF   limit",
+            "        JGT     reset",
+            "back    FIX",
+            "        ADDR    A,S",
+            "        RMO     S,A",
+            "        SHIFTL  A,3",
+            "        SHIFTR  A,2",
+            "        MULR    X,A",
+            "        DIVR    T,A",
+            "        SUBR    X,A",
+            "        COMPR   A,S",
+            "        FLOAT",
+            "        STF     last",
+            "        CLEAR   A",
+            "        TIXR    T",
+            "        JLT     loop",
+            "halt    J       halt",
+            "reset   LDF     zero",
+            "        STF     acc",
+            "        J       back",
+            "acc     FLOT    0.5",
+            "step    FLOT    1.25",
+            "scale   FLOT    3.0",
+            "tiny    FLOT    0.001",
+            "limit   FLOT    100.0",
+            "zero    FLOT    0.0",
+            "last    RESF    1")},
+    };
+    // batch sizes that end batches at different places inside the loops' blocks
+    private static final int[] HOT_BATCHES = {13, 37, BATCH};
+    // programs under tests that the assembler rejects (they use syntax it does not support)
+    private static final Set<String> NOT_ASSEMBLING = Set.of("addr-immediate.asm", "addr-indirect.asm",
+            "addr-simple.asm", "base.asm", "comments.asm", "fig2.16.asm", "storage-data.asm");
+
+    private static File[] sources() {
+        File[] sources = new File("tests").listFiles((dir, name) -> name.endsWith(".asm"));
+        Assert.assertNotNull("tests directory not found", sources);
+        Arrays.sort(sources);
+        return sources;
+    }
+
+    /**
+     * @return object code of the source or null for the programs in NOT_ASSEMBLING, which must not assemble
+     */
+    private static String assembleSource(File source) throws Exception {
+        String obj = assemble(source);
+        boolean expected = !NOT_ASSEMBLING.contains(source.getName());
+        Assert.assertEquals(source.getName() + (expected ? " does not assemble" : " assembles now"), expected, obj != null);
+        return obj;
+    }
+
+    private static String step(Machine machine) {
+        try {
+            machine.execute();
+            return state(machine) + " " + spans(machine);
+        } catch (Exception e) {
+            return state(machine) + " " + spans(machine) + " " + e;
+        }
+    }
+
+    @Test
+    public void testTableEngineMatchesSwitchEngine() throws Exception {
+        System.out.println("running testTableEngineMatchesSwitchEngine");
+
+        int compared = 0;
+        for (File source : sources()) {
+            String obj = assembleSource(source);
+            if (obj == null) continue;
+            Machine reference = load(obj, Machine.Engine.SWITCH);
+            Machine table = load(obj, Machine.Engine.TABLE);
+
+            for (int i = 0; i < MAX_STEPS; i++) {
+                int pc = reference.registers.getPC();
+                String expected = step(reference);
+                Assert.assertEquals(source.getName() + ", instruction " + i, expected, step(table));
+                if (pc == reference.registers.getPC()) break;
+            }
+            Assert.assertArrayEquals(source.getName() + ", memory", bytes(reference), bytes(table));
+            compared++;
+        }
+        System.out.println("compared " + compared + " programs");
+        Assert.assertEquals(sources().length - NOT_ASSEMBLING.size(), compared);
+    }
+
+    @Test
+    public void testJitEngineMatchesSwitchEngine() throws Exception {
+        System.out.println("running testJitEngineMatchesSwitchEngine");
+
+        int compared = 0;
+        for (File source : sources()) {
+            String obj = assembleSource(source);
+            if (obj == null) continue;
+            Machine reference = load(obj, Machine.Engine.SWITCH);
+            Machine jit = load(obj, Machine.Engine.JIT);
+            reference.setSpanTracking(false);
+            jit.setSpanTracking(false);
+            Executor referenceExecutor = new Executor(reference);
+            Executor jitExecutor = new Executor(jit);
+
+            for (int i = 0; i * BATCH < MAX_STEPS; i++) {
+                Executor.StopReason expected = referenceExecutor.runBatch(BATCH, 0);
+                Assert.assertEquals(source.getName() + ", batch " + i, expected, jitExecutor.runBatch(BATCH, 0));
+                Assert.assertEquals(source.getName() + ", batch " + i, state(reference), state(jit));
+                if (expected != Executor.StopReason.LIMIT) break;
+            }
+            Assert.assertArrayEquals(source.getName() + ", memory", bytes(reference), bytes(jit));
+            compared++;
+        }
+        System.out.println("compared " + compared + " programs");
+        Assert.assertEquals(sources().length - NOT_ASSEMBLING.size(), compared);
+    }
+
+    @Test
+    public void testJitEngineCompilesHotLoops() throws Exception {
+        System.out.println("running testJitEngineCompilesHotLoops");
+
+        for (String[] loop : HOT_LOOPS) {
+            String obj = assemble(loop[1]);
+            Assert.assertNotNull(loop[0] + " does not assemble", obj);
+            for (int batch : HOT_BATCHES) {
+                String name = loop[0] + ", batches of " + batch;
+                Machine reference = load(obj, Machine.Engine.SWITCH);
+                Machine jit = load(obj, Machine.Engine.JIT);
+                reference.setSpanTracking(false);
+                jit.setSpanTracking(false);
+                Executor referenceExecutor = new Executor(reference);
+                Executor jitExecutor = new Executor(jit);
+
+                Executor.StopReason expected = Executor.StopReason.LIMIT;
+                for (int i = 0; i * batch < MAX_STEPS && expected == Executor.StopReason.LIMIT; i++) {
+                    expected = referenceExecutor.runBatch(batch, 0);
+                    Assert.assertEquals(name + ", batch " + i, expected, jitExecutor.runBatch(batch, 0));
+                    Assert.assertEquals(name + ", batch " + i, state(reference), state(jit));
+                }
+                Assert.assertEquals(name + " does not halt", Executor.StopReason.HALT, expected);
+                Assert.assertArrayEquals(name + ", memory", bytes(reference), bytes(jit));
+                Assert.assertTrue(name + " compiled no blocks", jit.getCompiledBlocks() > 0);
+            }
+        }
+    }
+}
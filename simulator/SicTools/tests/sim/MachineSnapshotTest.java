@@ -0,0 +1,87 @@
+package sim;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import iodevices.FileDevice;
+import sicxe.sim.vm.Machine;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static support.Fixtures.*;
+
+/**
+ * Checks that restoring a snapshot brings a machine back to the same state, so running
+ * again from it gives what the first run gave.
+ */
+public class MachineSnapshotTest {
+
+    private static final int STEPS = 20_000;
+
+    private static void run(Machine machine) {
+        for (int i = 0; i < STEPS; i++) {
+            int pc = machine.registers.getPC();
+            try {
+                machine.execute();
+            } catch (Exception e) {
+                return;
+            }
+            if (pc == machine.registers.getPC()) return;
+        }
+    }
+
+    @Test
+    public void testRestoreReruns() throws Exception {
+        System.out.println("running testRestoreReruns");
+
+        File[] sources = new File("tests").listFiles((dir, name) -> name.endsWith(".asm"));
+        Assert.assertNotNull("tests directory not found", sources);
+        Arrays.sort(sources);
+        int compared = 0;
+        for (File source : sources) {
+            String obj = assemble(source);
+            if (obj == null) continue;
+            Machine machine = new Machine();
+            sicxe.loader.Loader.loadSection(machine, new StringReader(obj));
+            String loadedState = state(machine);
+            byte[] loadedBytes = bytes(machine);
+            Machine.Snapshot loaded = machine.snapshot();
+
+            run(machine);
+            String ranState = state(machine);
+            byte[] ranBytes = bytes(machine);
+
+            machine.restore(loaded);
+            Assert.assertEquals(source.getName() + ", restored", loadedState, state(machine));
+            Assert.assertArrayEquals(source.getName() + ", restored memory", loadedBytes, bytes(machine));
+            run(machine);
+            Assert.assertEquals(source.getName() + ", rerun", ranState, state(machine));
+            Assert.assertArrayEquals(source.getName() + ", rerun memory", ranBytes, bytes(machine));
+            compared++;
+        }
+        System.out.println("compared " + compared + " programs");
+        Assert.assertTrue("no programs compared", compared > 0);
+    }
+
+    @Test
+    public void testRestoreDevicePosition() throws Exception {
+        System.out.println("running testRestoreDevicePosition");
+
+        File input = File.createTempFile("device", ".dat");
+        input.deleteOnExit();
+        Files.write(input.toPath(), new byte[]{10, 20, 30, 40});
+        Machine machine = new Machine();
+        machine.devices.setDevice(5, new FileDevice(input.getPath()));
+
+        Assert.assertEquals(10, machine.devices.read(5));
+        Machine.Snapshot snapshot = machine.snapshot();
+        Assert.assertEquals(20, machine.devices.read(5));
+        Assert.assertEquals(30, machine.devices.read(5));
+        machine.restore(snapshot);
+        Assert.assertEquals(20, machine.devices.read(5));
+    }
+}
@@ -0,0 +1,131 @@
+package sim;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.sim.breakpoints.DataBreakpoint;
+import sicxe.sim.breakpoints.DataBreakpointException;
+import sicxe.sim.vm.Machine;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static support.Fixtures.*;
+
+/**
+ * Checks that stepping back through the undo log passes the states of the forward run
+ * in reverse, down to the loaded program.
+ */
+public class MachineUndoTest {
+
+    private static final int STEPS = 3_000;
+
+    private static Machine load(String obj, Machine.Engine engine, int undo) {
+        Machine machine = new Machine();
+        machine.setEngine(engine);
+        machine.setUndoCapacity(undo);
+        sicxe.loader.Loader.loadSection(machine, new StringReader(obj));
+        return machine;
+    }
+
+    private static boolean step(Machine machine) {
+        int pc = machine.registers.getPC();
+        try {
+            machine.execute();
+        } catch (Exception e) {
+            return false;
+        }
+        return pc != machine.registers.getPC();
+    }
+
+    @Test
+    public void testStepBackRetracesRun() throws Exception {
+        System.out.println("running testStepBackRetracesRun");
+
+        File[] sources = new File("tests").listFiles((dir, name) -> name.endsWith(".asm"));
+        Assert.assertNotNull("tests directory not found", sources);
+        Arrays.sort(sources);
+        int compared = 0;
+        for (File source : sources) {
+            String obj = assemble(source);
+            if (obj == null) continue;
+            for (Machine.Engine engine : new Machine.Engine[]{Machine.Engine.SWITCH, Machine.Engine.TABLE}) {
+                Machine machine = load(obj, engine, STEPS);
+                byte[] loaded = bytes(machine);
+                List<String> states = new ArrayList<>();
+                states.add(state(machine));
+                for (int i = 0; i < STEPS; i++) {
+                    boolean moved = step(machine);
+                    states.add(state(machine));
+                    if (!moved) break;
+                }
+
+                String name = source.getName() + " " + engine;
+                for (int i = states.size() - 2; i >= 0; i--) {
+                    Assert.assertTrue(name + ", step back " + i, machine.stepBack());
+                    Assert.assertEquals(name + ", step back " + i, states.get(i), state(machine));
+                }
+                Assert.assertFalse(name + ", nothing left", machine.stepBack());
+                Assert.assertArrayEquals(name + ", memory", loaded, bytes(machine));
+            }
+            compared++;
+        }
+        System.out.println("compared " + compared + " programs");
+        Assert.assertTrue("no programs compared", compared > 0);
+    }
+
+    @Test
+    public void testLogKeepsLastInstructions() throws Exception {
+        System.out.println("running testLogKeepsLastInstructions");
+
+        Machine machine = load(assemble(new File("tests/arithmetic.asm")), Machine.Engine.SWITCH, 10);
+        List<String> states = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            states.add(state(machine));
+            step(machine);
+        }
+        Assert.assertEquals(10, machine.getUndoLog().size());
+        for (int i = 11; i >= 2; i--) {
+            Assert.assertTrue(machine.stepBack());
+            Assert.assertEquals("step back to " + i, states.get(i), state(machine));
+        }
+        Assert.assertFalse(machine.stepBack());
+    }
+
+    @Test
+    public void testStepBackAfterDataBreakpoint() throws Exception {
+        System.out.println("running testStepBackAfterDataBreakpoint");
+
+        Machine machine = load(assemble("prog START 0\n" +
+                "     LDA #1\n" +
+                "     LDA #2\n" +
+                "     LDA val\n" +
+                "halt J halt\n" +
+                "val  WORD 5\n" +
+                "     END prog\n"), Machine.Engine.SWITCH, 10);
+        machine.memory.dataBreakpoints.add(new DataBreakpoint(12, 12, true, false));
+        machine.memory.dataBreakpoints.enable();
+        machine.execute();
+        machine.execute();
+        try {
+            machine.execute();
+            Assert.fail("expected a data breakpoint");
+        } catch (DataBreakpointException e) {
+            machine.registers.setPC(6);     // as the executor does, the instruction did not execute
+        }
+        Assert.assertEquals(2, machine.getUndoLog().size());
+
+        // the stopped instruction is not in the log, stepping back undoes LDA #2
+        Assert.assertTrue(machine.stepBack());
+        Assert.assertEquals(3, machine.registers.getPC());
+        Assert.assertEquals(1, machine.registers.getA());
+        Assert.assertEquals(1, machine.getInstructionCount());
+        Assert.assertTrue(machine.stepBack());
+        Assert.assertEquals(0, machine.registers.getPC());
+        Assert.assertFalse(machine.stepBack());
+    }
+}
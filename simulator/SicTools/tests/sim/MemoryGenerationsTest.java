@@ -0,0 +1,71 @@
+package sim;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.sim.vm.Machine;
+import sicxe.sim.vm.Memory;
+import sicxe.sim.vm.PageGenerations;
+
+/**
+ * Checks that memory writes stamp their pages, so a client that read memory at some
+ * generation gets exactly the pages written after it.
+ */
+public class MemoryGenerationsTest {
+
+    private static int page(int address) {
+        return address >>> PageGenerations.PAGE_SHIFT;
+    }
+
+    @Test
+    public void testWritesAfterMarkAreChanged() throws Exception {
+        System.out.println("running testWritesAfterMarkAreChanged");
+
+        Memory memory = new Memory(Machine.MAX_ADDRESS + 1);
+        PageGenerations generations = memory.generations;
+        long seen = generations.mark();
+        for (int page = 0; page < generations.pageCount(); page++)
+            Assert.assertFalse("page " + page, generations.changedSince(page, seen));
+
+        memory.setByte(0x1000, 1);
+        memory.setWordRaw(0x20FF, 2);           // spans two pages
+        memory.setFloat(0x3000, 1.5);
+        memory.setBytesRaw(0x4010, new byte[]{1, 2, 3});
+        memory.setBytesRaw(0x5080, new byte[0x300]);    // spans four pages
+        for (int page = 0; page < generations.pageCount(); page++) {
+            boolean written = page == page(0x1000) || page == page(0x20FF) || page == page(0x2100)
+                    || page == page(0x3000) || page == page(0x4010)
+                    || page >= page(0x5080) && page <= page(0x537F);
+            Assert.assertEquals("page " + page, written, generations.changedSince(page, seen));
+        }
+
+        seen = generations.mark();
+        Assert.assertFalse(generations.changedSince(page(0x1000), seen));
+        memory.setByteRaw(0x1000, 3);
+        Assert.assertTrue(generations.changedSince(page(0x1000), seen));
+    }
+
+    @Test
+    public void testForeignGenerationChangesEverything() {
+        System.out.println("running testForeignGenerationChangesEverything");
+
+        Memory older = new Memory(1024);
+        long olderGeneration = older.generations.mark();
+        Memory memory = new Memory(1024);
+        long seen = memory.generations.mark();
+        Memory newer = new Memory(1024);
+        long newerGeneration = newer.generations.mark();
+
+        for (int page = 0; page < memory.generations.pageCount(); page++) {
+            Assert.assertFalse(memory.generations.changedSince(page, seen));
+            Assert.assertTrue(memory.generations.changedSince(page, olderGeneration));
+            Assert.assertTrue(memory.generations.changedSince(page, newerGeneration));
+        }
+
+        seen = memory.generations.mark();
+        memory.reset();
+        Assert.assertTrue(memory.generations.changedSince(0, seen));
+        Assert.assertTrue(memory.generations.changedSince(memory.generations.pageCount() - 1, seen));
+    }
+}
@@ -0,0 +1,100 @@
+package sim;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.sim.vm.Machine;
+import sicxe.sim.vm.Memory;
+
+/**
+ * Checks the paged memory: accesses across page boundaries, pages allocated on the first write,
+ * and copies that share pages until either side writes.
+ */
+public class MemoryPagesTest {
+
+    @Test
+    public void testAccessAcrossPages() throws Exception {
+        System.out.println("running testAccessAcrossPages");
+
+        Memory memory = new Memory(Machine.MAX_ADDRESS + 1);
+        Assert.assertEquals(0, memory.ownedPages());
+        Assert.assertEquals(0, memory.getWord(0x5000));
+
+        memory.setWord(Memory.PAGE_SIZE - 1, 0x123456);
+        Assert.assertEquals(0x123456, memory.getWordRaw(Memory.PAGE_SIZE - 1));
+        Assert.assertEquals(0x12, memory.getByteRaw(Memory.PAGE_SIZE - 1));
+        Assert.assertEquals(0x34, memory.getByteRaw(Memory.PAGE_SIZE));
+        memory.setFloat(2 * Memory.PAGE_SIZE - 4, -3.25);
+        Assert.assertEquals(-3.25, memory.getFloatRaw(2 * Memory.PAGE_SIZE - 4), 0);
+        Assert.assertEquals(3, memory.ownedPages());     // pages 0, 1 and 2
+
+        byte[] bytes = new byte[3 * Memory.PAGE_SIZE];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        memory.setBytesRaw(0x10800, bytes);
+        byte[] read = new byte[bytes.length];
+        memory.getBytesRaw(0x10800, read, 0, read.length);
+        Assert.assertArrayEquals(bytes, read);
+
+        memory.reset();
+        Assert.assertEquals(0, memory.ownedPages());
+        Assert.assertEquals(0, memory.getWordRaw(Memory.PAGE_SIZE - 1));
+        Assert.assertEquals(0, memory.getByteRaw(0x10800));
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        System.out.println("running testCopyOnWrite");
+
+        Memory source = new Memory(Machine.MAX_ADDRESS + 1);
+        source.setWordRaw(0x1000, 0x111111);
+        source.setWordRaw(0x8000, 0x222222);
+        Memory copy = new Memory(Machine.MAX_ADDRESS + 1);
+        copy.copyFrom(source);
+        Assert.assertEquals(0, copy.ownedPages());
+        Assert.assertEquals(0, source.ownedPages());
+        Assert.assertEquals(0x111111, copy.getWordRaw(0x1000));
+
+        copy.setWordRaw(0x1000, 0x333333);
+        source.setWordRaw(0x8000, 0x444444);
+        Assert.assertEquals(0x111111, source.getWordRaw(0x1000));
+        Assert.assertEquals(0x333333, copy.getWordRaw(0x1000));
+        Assert.assertEquals(0x444444, source.getWordRaw(0x8000));
+        Assert.assertEquals(0x222222, copy.getWordRaw(0x8000));
+        Assert.assertEquals(1, copy.ownedPages());
+        Assert.assertEquals(1, source.ownedPages());
+    }
+
+    @Test
+    public void testPartialLastPage() {
+        System.out.println("running testPartialLastPage");
+
+        Memory memory = new Memory(1000);
+        memory.setWordRaw(997, 0xABCDEF);
+        Assert.assertEquals(0xABCDEF, memory.getWordRaw(997));
+        memory.setByteRaw(1000, 1);             // out of range, logged and ignored
+        Assert.assertEquals(0, memory.getByteRaw(1000));
+    }
+
+    @Test
+    public void testDataPagesOfImages() {
+        System.out.println("running testDataPagesOfImages");
+
+        Memory memory = new Memory(Machine.MAX_ADDRESS + 1);
+        memory.setWordRaw(0x1000, 1);
+        memory.setWordRaw(0x8000, 2);
+        Memory.Image image = memory.save();
+        // shared with the image, not owned any more, but still held
+        Assert.assertEquals(0, memory.ownedPages());
+        Assert.assertEquals(2, memory.dataPages(image));
+
+        memory.setWordRaw(0x1000, 3);       // copies the page
+        memory.setWordRaw(0x20000, 4);
+        Assert.assertEquals(4, memory.dataPages(image));
+        Assert.assertEquals(3, memory.dataPages());
+
+        memory.reset();
+        Assert.assertEquals(2, memory.dataPages(image, null));
+        Assert.assertEquals(0, memory.dataPages());
+    }
+}
@@ -0,0 +1,175 @@
+package sim;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import sicxe.asm.Assembler;
+import sicxe.asm.Location;
+import sicxe.asm.ResolvedSource;
+import sicxe.asm.parsing.ParsedSource;
+import sicxe.ast.Program;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that the syntax check reports the same errors as a full assembly.
+ */
+public class SyntaxCheckTest {
+
+    private static String assembleErrors(String source) {
+        Assembler assembler = new Assembler();
+        try {
+            assembler.assemble(source);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+        return assembler.errorCatcher.errs.toString();
+    }
+
+    private static String checkErrors(String source) {
+        return checkErrors(source, null);
+    }
+
+    private static String checkErrors(String source, ParsedSource parsed) {
+        Assembler assembler = new Assembler();
+        try {
+            if (parsed == null) assembler.check(source);
+            else assembler.check(source, parsed);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+        return assembler.errorCatcher.errs.toString();
+    }
+
+    @Test
+    public void testCheckMatchesAssemble() throws Exception {
+        System.out.println("running testCheckMatchesAssemble");
+
+        File[] sources = new File("tests").listFiles((dir, name) -> name.endsWith(".asm"));
+        Assert.assertNotNull("tests directory not found", sources);
+        Arrays.sort(sources);
+        int count = 0;
+        for (File source : sources) {
+            List<String> lines = Arrays.asList(Files.readString(source.toPath()).split("\n", -1));
+            // the source and the source without each of its lines, to get errors and forward references
+            for (int skip = -1; skip < lines.size(); skip++) {
+                List<String> edited = new ArrayList<>(lines);
+                if (skip >= 0) edited.remove(skip);
+                String text = String.join("\n", edited);
+                Assert.assertEquals(source.getName() + " without line " + (skip + 1),
+                        assembleErrors(text), checkErrors(text));
+                count++;
+            }
+        }
+        System.out.println("compared " + count + " sources");
+    }
+
+    @Test
+    public void testIncrementalCheck() throws Exception {
+        System.out.println("running testIncrementalCheck");
+
+        File[] sources = new File("tests").listFiles((dir, name) -> name.endsWith(".asm"));
+        Assert.assertNotNull("tests directory not found", sources);
+        Arrays.sort(sources);
+        for (File source : sources) {
+            List<String> lines = Arrays.asList(Files.readString(source.toPath()).split("\n", -1));
+            ParsedSource parsed = new ParsedSource();
+            // edits one after another, each reusing what the previous check parsed
+            for (int edit = 0; edit < lines.size(); edit++) {
+                List<String> edited = new ArrayList<>(lines);
+                if (edit % 2 == 0) edited.remove(edit);
+                else edited.set(edit, edited.get(edit).substring(0, edited.get(edit).length() / 2));
+                for (String text : new String[]{String.join("\n", edited), String.join("\n", lines)})
+                    Assert.assertEquals(source.getName() + " after edit of line " + (edit + 1),
+                            assembleErrors(text), checkErrors(text, parsed));
+            }
+        }
+    }
+
+    @Test
+    public void testTopEditKeepsTail() {
+        System.out.println("running testTopEditKeepsTail");
+
+        String source = "prog    START   0\n" +
+                "first   LDA     #1\n" +
+                "loop    ADD     =X'000001'\n" +
+                "        COMP    #10\n" +
+                "        JLT     loop\n" +
+                "        STA     result\n" +
+                "result  RESW    1\n" +
+                "        END     first\n";
+        String edited = ". counts to ten\n" + source;
+        ParsedSource parsed = new ParsedSource();
+        Program before = new Assembler().assemble(source, parsed);
+        Program after = new Assembler().assemble(edited, parsed);
+        Program fresh = new Assembler().assemble(edited);
+
+        Assert.assertEquals(fresh.commands.size(), after.commands.size());
+        // a line was added on top, the commands below it are the ones parsed before, moved down a line
+        for (int i = 1; i < after.commands.size(); i++) {
+            Assert.assertSame("command " + i, before.commands.get(i - 1), after.commands.get(i));
+            Location expected = fresh.commands.get(i).loc;
+            Location actual = after.commands.get(i).loc;
+            Assert.assertEquals("command " + i, expected.pos + " " + expected, actual.pos + " " + actual);
+        }
+    }
+
+    @Test
+    public void testLayoutKeepingEdits() throws Exception {
+        System.out.println("running testLayoutKeepingEdits");
+
+        File[] sources = new File("tests").listFiles((dir, name) -> name.endsWith(".asm"));
+        Assert.assertNotNull("tests directory not found", sources);
+        Arrays.sort(sources);
+        int rechecked = 0;
+        for (File source : sources) {
+            List<String> lines = Arrays.asList(Files.readString(source.toPath()).split("\n", -1));
+            String original = String.join("\n", lines);
+            ParsedSource parsed = new ParsedSource();
+            checkErrors(original, parsed);
+            // rename a label, swap two lines: the other commands keep their addresses
+            for (int edit = 0; edit + 1 < lines.size(); edit++) {
+                List<String> renamed = new ArrayList<>(lines);
+                renamed.set(edit, renamed.get(edit).replaceFirst("^[A-Za-z_]\\w*", "renamed"));
+                List<String> swapped = new ArrayList<>(lines);
+                Collections.swap(swapped, edit, edit + 1);
+                for (List<String> edited : List.of(renamed, swapped, lines)) {
+                    String text = String.join("\n", edited);
+                    ResolvedSource resolved = parsed.resolved();
+                    Assert.assertEquals(source.getName() + " after edit of line " + (edit + 1),
+                            assembleErrors(text), checkErrors(text, parsed));
+                    if (resolved != null && resolved == parsed.resolved()) rechecked++;
+                }
+            }
+        }
+        System.out.println("rechecked " + rechecked + " edits");
+        Assert.assertTrue("no edit was checked without resolving all", rechecked > 0);
+    }
+
+    @Test
+    public void testExternalsBelowInstructions() {
+        System.out.println("running testExternalsBelowInstructions");
+
+        String imported = "prog    START   0\n" +
+                "        +LDA    ext\n" +
+                "        EXTREF  ext\n" +
+                "        LDA     undef\n" +
+                "        END     prog\n";
+        Assert.assertEquals(assembleErrors(imported), checkErrors(imported));
+
+        String exported = "prog    START   0\n" +
+                "        EXTREF  x\n" +
+                "        LDA     x\n" +
+                "        EXTDEF  x\n" +
+                "        END     prog\n";
+        Assert.assertEquals("[]", assembleErrors(exported));
+        Assert.assertEquals(assembleErrors(exported), checkErrors(exported));
+    }
+
+}
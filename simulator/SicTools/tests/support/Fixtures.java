@@ -0,0 +1,80 @@
+package support;
+
+
+import org.junit.Assert;
+
+import sicxe.sim.vm.Machine;
+import sicxe.sim.vm.Registers;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+/**
+ * Helpers shared by the tests that assemble programs, run them and compare machines.
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return object code of the source or null when it does not assemble.
+     */
+    public static String assemble(File source) throws Exception {
+        return assemble(Files.readString(source.toPath()));
+    }
+
+    /**
+     * @return object code of the source or null when it does not assemble.
+     */
+    public static String assemble(String source) {
+        sicxe.asm.Assembler assembler = new sicxe.asm.Assembler();
+        sicxe.ast.Program program = assembler.assemble(source);
+        if (assembler.errorCatcher.count() > 0) return null;
+        StringWriter obj = new StringWriter();
+        assembler.generateObj(program, obj, false);
+        return obj.toString();
+    }
+
+    public static Machine load(String obj, Machine.Engine engine) {
+        Machine machine = new Machine();
+        machine.setEngine(engine);
+        sicxe.loader.Loader.loadSection(machine, new StringReader(obj));
+        return machine;
+    }
+
+    /**
+     * @return registers, instruction count and JSUB stack of the machine, to compare with assertEquals
+     */
+    public static String state(Machine machine) {
+        Registers r = machine.registers;
+        return String.format("PC=%d A=%d X=%d L=%d S=%d T=%d B=%d SW=%d F=%s count=%d jsub=%s",
+                r.getPC(), r.getA(), r.getX(), r.getL(), r.getS(), r.getT(), r.getB(), r.getSW(),
+                Double.doubleToRawLongBits(r.getF()), machine.getInstructionCount(), machine.getAddressBelowLastJSUB());
+    }
+
+    /**
+     * @return the last executed instruction and its memory read and write
+     */
+    public static String spans(Machine machine) {
+        return String.format("read=%d/%d write=%d/%d exec=%d/%d",
+                machine.getLastExecRead().getStartAddress(), machine.getLastExecRead().getSpanLength(),
+                machine.getLastExecWrite().getStartAddress(), machine.getLastExecWrite().getSpanLength(),
+                machine.getLastExecAddr().getStartAddress(), machine.getLastExecAddr().getSpanLength());
+    }
+
+    public static byte[] bytes(Machine machine) {
+        byte[] bytes = new byte[machine.memory.capacity()];
+        machine.memory.getBytesRaw(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    public static void assertSameMachine(String message, Machine expected, Machine actual) {
+        Assert.assertEquals(message + " PC", expected.registers.getPC(), actual.registers.getPC());
+        for (int address = 0; address <= Machine.MAX_ADDRESS; address++)
+            if (expected.memory.getByteRaw(address) != actual.memory.getByteRaw(address))
+                Assert.fail(message + " byte at " + Integer.toHexString(address));
+    }
+}
@@ -0,0 +1,85 @@
+package com.sicserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sicxe.asm.Assembler;
+import sicxe.asm.parsing.ParsedSource;
+import sicxe.ast.Program;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembly and syntax-check time of large generated sources.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssemblerBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int lines;
+
+    private String source;
+    private String[] edits;         // the source with one line in the middle edited, and back
+    private ParsedSource parsed;
+    private int edit;
+    private String[] replaces;      // the source with an instruction in the middle replaced by one of the same size, and back
+    private ParsedSource replaced;
+    private int replace;
+
+    @Setup
+    public void setup() {
+        source = Programs.generate(lines);
+        Programs.assemble(source); // fail early if the generator is broken
+        int middle = source.indexOf('\n', source.length() / 2) + 1;
+        edits = new String[]{source.substring(0, middle) + "        LDX    #1\n" + source.substring(middle), source};
+        parsed = new ParsedSource();
+        new Assembler().check(source, parsed);
+        int add = source.indexOf("        ADD", middle);
+        replaces = new String[]{source.substring(0, add) + "        SUB" + source.substring(add + 11), source};
+        replaced = new ParsedSource();
+        new Assembler().check(source, replaced);
+    }
+
+    @Benchmark
+    public Program assemble() {
+        return new Assembler().assemble(source);
+    }
+
+    // POST /syntax-check of a file it has not seen
+    @Benchmark
+    public int check() {
+        Assembler assembler = new Assembler();
+        assembler.check(source);
+        return assembler.errorCatcher.count();
+    }
+
+    // POST /syntax-check after an edit in the middle of the file
+    @Benchmark
+    public int checkAfterEdit() {
+        Assembler assembler = new Assembler();
+        assembler.check(edits[edit ^= 1], parsed);
+        return assembler.errorCatcher.count();
+    }
+
+    // POST /syntax-check after an edit that keeps the addresses, only the changed instruction is resolved
+    @Benchmark
+    public int checkAfterReplace() {
+        Assembler assembler = new Assembler();
+        assembler.check(replaces[replace ^= 1], replaced);
+        return assembler.errorCatcher.count();
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.sicserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sicxe.link.Linker;
+import sicxe.link.LinkerError;
+import sicxe.link.Options;
+import sicxe.link.section.Section;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Linking many sections, one .obj file each. The sections form a ring of external
+ * references, so every section has R, D and M records to resolve.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkerBenchmark {
+
+    @Param({"16", "128", "512"})
+    public int sections;
+
+    private File dir;
+    private final List<String> inputs = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("sic-link-bench").toFile();
+        for (int i = 0; i < sections; i++) {
+            File obj = new File(dir, "s" + i + ".obj");
+            Files.writeString(obj.toPath(), Programs.assemble(Programs.section(i, sections)));
+            inputs.add(obj.getAbsolutePath());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public Section link() throws LinkerError {
+        return new Linker(inputs, new Options()).link();
+    }
+
+    /**
+     * One section with an M record per line, patched into its T records by the second pass.
+     */
+    @State(Scope.Thread)
+    public static class LargeSection {
+
+        @Param({"1000", "20000"})
+        public int references;
+
+        private File dir;
+        private final List<String> inputs = new ArrayList<>();
+
+        @Setup
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("sic-link-bench").toFile();
+            File refs = new File(dir, "refs.obj");
+            File lib = new File(dir, "lib.obj");
+            Files.writeString(refs.toPath(), Programs.assemble(Programs.references(references)));
+            Files.writeString(lib.toPath(), Programs.assemble(Programs.library()));
+            inputs.add(refs.getAbsolutePath());
+            inputs.add(lib.getAbsolutePath());
+        }
+
+        @TearDown
+        public void tearDown() {
+            File[] files = dir.listFiles();
+            if (files != null) for (File f : files) f.delete();
+            dir.delete();
+        }
+    }
+
+    @Benchmark
+    public Section linkLargeSection(LargeSection large) throws LinkerError {
+        return new Linker(large.inputs, new Options()).link();
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.sicserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sicxe.loader.Loader;
+import sicxe.sim.vm.Machine;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the object code of large generated programs into a machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int lines;
+
+    private String obj;
+    private Machine machine;
+
+    @Setup
+    public void setup() {
+        obj = Programs.assemble(Programs.generate(lines));
+        machine = new Machine();
+    }
+
+    @Benchmark
+    public boolean loadSection() {
+        return Loader.loadSection(machine, new StringReader(obj));
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.sicserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sicxe.loader.Loader;
+import sicxe.sim.Executor;
+import sicxe.sim.breakpoints.DataBreakpointException;
+import sicxe.sim.vm.Machine;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instruction throughput of the SIC/XE machine on sample programs from SicTools/tests.
+ * The programs are short, so whenever one halts (jumps to itself) the registers are reset
+ * and it restarts at its entry point; memory is left as is, like rerunning a loaded program.
+ * Programs that simply end (format3, format4) find such a halt placed right after their code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MachineBenchmark {
+
+    private static final int INSTRUCTIONS = 10_000;
+    // J * (simple addressing, PC-relative displacement -3)
+    private static final byte[] HALT = {0x3F, 0x2F, (byte) 0xFD};
+
+    @Param({"arithmetic", "float", "format3", "format4", "literals"})
+    public String program;
+
+    @Param({"SWITCH", "TABLE", "JIT"})
+    public Machine.Engine engine;
+
+    private Machine machine;
+    private Executor executor;
+    private int entry;
+
+    @Setup
+    public void setup() throws Exception {
+        String obj = Programs.assemble(Programs.read(program));
+        machine = new Machine();
+        machine.setEngine(engine);
+        machine.setSpanTracking(false);
+        executor = new Executor(machine);
+        if (!Loader.loadSection(machine, new StringReader(obj)))
+            throw new IllegalStateException("cannot load " + program);
+        entry = machine.registers.getPC();
+        // header record: H, name (6), start (6 hex digits), length (6 hex digits)
+        int end = Integer.parseInt(obj.substring(7, 13), 16) + Integer.parseInt(obj.substring(13, 19), 16);
+        for (int i = 0; i < HALT.length; i++) machine.memory.setByteRaw(end + i, HALT[i]);
+    }
+
+    private void restart() {
+        machine.registers.reset();
+        machine.registers.setPC(entry);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public int execute() throws DataBreakpointException {
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            int pc = machine.registers.getPC();
+            machine.execute();
+            if (machine.registers.getPC() == pc) restart();
+        }
+        return machine.registers.getA();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public int runBatch() {
+        for (int i = 0; i < INSTRUCTIONS; ) {
+            int count = machine.getInstructionCount();
+            Executor.StopReason reason = executor.runBatch(INSTRUCTIONS - i, 0);
+            i += machine.getInstructionCount() - count;
+            if (reason == Executor.StopReason.HALT) restart();
+        }
+        return machine.registers.getA();
+    }
+
+}
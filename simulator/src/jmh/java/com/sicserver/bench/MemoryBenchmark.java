@@ -0,0 +1,69 @@
+package com.sicserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sicxe.sim.breakpoints.DataBreakpointException;
+import sicxe.sim.vm.Machine;
+import sicxe.sim.vm.Memory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single memory accesses, the cost of the page lookup that every instruction pays a few times.
+ * The addresses cover the first 64 KiB (16 pages, all written) in a scattered order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryBenchmark {
+
+    private static final int ACCESSES = 1 << 16;
+
+    private Memory memory;
+
+    @Setup
+    public void setup() {
+        memory = new Machine().memory;
+        for (int address = 0; address < ACCESSES; address++) memory.setByteRaw(address, address * 31);
+    }
+
+    // a permutation of 0 .. ACCESSES - 1, so reads are not one sequential sweep
+    private static int address(int i) {
+        return i ^ (i >> 3 & 0x7F0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int getByteRaw() {
+        int sum = 0;
+        for (int i = 0; i < ACCESSES; i++) sum += memory.getByteRaw(address(i));
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int getWord() throws DataBreakpointException {
+        int sum = 0;
+        for (int i = 0; i < ACCESSES; i++) sum += memory.getWord(address(i) & ~3);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void setWord() throws DataBreakpointException {
+        for (int i = 0; i < ACCESSES; i++) memory.setWord(address(i) & ~3, i);
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.sicserver.bench;
+
+import sicxe.asm.Assembler;
+import sicxe.ast.Program;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+/**
+ * Sources shared by the benchmarks: sample programs from SicTools/tests
+ * (directory given by the sic.tests system property) and generated ones.
+ */
+final class Programs {
+
+    private Programs() {}
+
+    static File testsDir() {
+        return new File(System.getProperty("sic.tests", "SicTools/tests"));
+    }
+
+    static String read(String name) throws IOException {
+        return Files.readString(new File(testsDir(), name + ".asm").toPath());
+    }
+
+    /**
+     * Assemble a source into object code, failing on assembler errors.
+     */
+    static String assemble(String source) {
+        Assembler assembler = new Assembler();
+        Program program = assembler.assemble(source);
+        if (assembler.errorCatcher.count() > 0)
+            throw new IllegalStateException("benchmark source does not assemble: " + assembler.errorCatcher.errs.get(0));
+        StringWriter obj = new StringWriter();
+        assembler.generateObj(program, obj, false);
+        return obj.toString();
+    }
+
+    /**
+     * A long program with a mix of formats, addressing modes, literals and data,
+     * roughly lines statements long.
+     */
+    static String generate(int lines) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("big     START   0\n");
+        sb.append("first   LDX     #0\n");
+        sb.append("        BASE    data\n");
+        for (int i = 0; i < lines / 8; i++) {
+            String label = String.format("L%05d", i);
+            sb.append(label).append("  LDA     =").append(i).append('\n');
+            sb.append("        ADD     #").append(i % 4096).append('\n');
+            sb.append("        STA     data,X\n");
+            sb.append("        +LDT    #").append(i * 17).append('\n');
+            sb.append("        COMPR   A,T\n");
+            sb.append("        LDCH    =C'").append((char) ('A' + i % 26)).append("'\n");
+            sb.append("        TIX     #3\n");
+            sb.append("        JLT     ").append(label).append('\n');
+            if (i % 64 == 63) sb.append("        LTORG\n");
+        }
+        sb.append("halt    J       halt\n");
+        sb.append("data    RESW    64\n");
+        sb.append("        END     first\n");
+        return sb.toString();
+    }
+
+    /**
+     * One control section of a ring: it exports its entry and calls the entry of the next section.
+     */
+    static String section(int index, int count) {
+        String name = String.format("S%05d", index);
+        String entry = String.format("E%05d", index);
+        String next = String.format("E%05d", (index + 1) % count);
+        return name + "  START   0\n" +
+                "        EXTDEF  " + entry + "\n" +
+                "        EXTREF  " + next + "\n" +
+                entry + "  LDA     value\n" +
+                "        +JSUB   " + next + "\n" +
+                "        +STA    " + next + "\n" +
+                "        +LDB    " + next + "\n" +
+                "        RSUB\n" +
+                "value   WORD    " + index + "\n" +
+                "        END     " + entry + "\n";
+    }
+
+    /**
+     * One large control section whose instructions all refer to an external symbol,
+     * so it has an M record per line; the symbol is defined by {@link #library()}.
+     */
+    static String references(int count) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("refs    START   0\n");
+        sb.append("        EXTREF  shared\n");
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) sb.append("        +JSUB   shared\n");
+            else sb.append("        +STA    shared\n");
+        }
+        sb.append("        END     refs\n");
+        return sb.toString();
+    }
+
+    static String library() {
+        return "lib     START   0\n" +
+                "        EXTDEF  shared\n" +
+                "shared  RSUB\n" +
+                "        END     shared\n";
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.sicserver.bench;
+
+import com.sicserver.api.SicxeSimulation;
+import com.sicserver.api.Simulation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Response building of the /memory and /step endpoints (the Simulation call
+ * including its JSON serialization), on a loaded generated program.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerBenchmark {
+
+    @State(Scope.Thread)
+    public static class Range {
+        // number of bytes returned by /memory
+        @Param({"256", "4096", "65536"})
+        public int bytes;
+    }
+
+    private Path dir;
+    private Simulation sim;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("sic-server-bench");
+        File source = dir.resolve("big.asm").toFile();
+        Files.writeString(source.toPath(), Programs.generate(10_000));
+        sim = new SicxeSimulation();
+        sim.load(new String[]{source.getAbsolutePath()}, dir.toString(), null, null,
+                false, false, false, false, false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public String memory(Range range) {
+        return sim.memory(0, range.bytes - 1);
+    }
+
+    @Benchmark
+    public String step() {
+        return sim.step();
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.sicserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sicxe.asm.Assembler;
+import sicxe.asm.ujs.Listing;
+import sicxe.asm.visitors.ResolveRelative;
+import sicxe.asm.visitors.ResolveSymbols;
+import sicxe.ast.Program;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single visitor passes over an already assembled program. The resolve passes declare
+ * visit() for a few node classes only, so their time is mostly dispatch; the write passes
+ * add formatting on top.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VisitorBenchmark {
+
+    @Param({"10000"})
+    public int lines;
+
+    private Assembler assembler;
+    private Program program;
+
+    @Setup
+    public void setup() {
+        assembler = new Assembler();
+        program = assembler.assemble(Programs.generate(lines));
+    }
+
+    @Benchmark
+    public int resolveRelative() {
+        new ResolveRelative(program, assembler.errorCatcher).visitCommands();
+        return assembler.errorCatcher.count();
+    }
+
+    @Benchmark
+    public int resolveSymbols() {
+        new ResolveSymbols(program, assembler.errorCatcher).visitCommands();
+        return assembler.errorCatcher.count();
+    }
+
+    @Benchmark
+    public String generateObj() {
+        StringWriter obj = new StringWriter();
+        assembler.generateObj(program, obj, false);
+        return obj.toString();
+    }
+
+    @Benchmark
+    public String generateListing() {
+        StringWriter listing = new StringWriter();
+        assembler.generateListing(program, listing);
+        return listing.toString();
+    }
+
+    @Benchmark
+    public Listing listing() {
+        return new Listing(program, "big.asm");
+    }
+
+}
@@ -7,6 +7,7 @@ import com.google.gson.GsonBuilder;
 import com.sicserver.api.SicSimulation;
 import com.sicserver.api.SicxeSimulation;
 import com.sicserver.api.Simulation;
+import sicxe.sim.vm.ExecutionTrace;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -20,10 +21,24 @@ import java.util.List;
  *
  * ### Conventions
  * - Request bodies are JSON objects (see each endpoint for schema).
- * - All endpoints return `Content-Type: application/json; charset=UTF-8`.
+ * - All endpoints return `Content-Type: application/json; charset=UTF-8`, except successful
+ *   `/memory.bin` responses (`application/octet-stream`).
  * - Numbers that represent addresses may be decimal or hex strings like `"0x1000"`.
  * - On malformed input, you get `{ ok:false, message:"..." }`.
  *
+ * ### Sessions
+ * - Every request may name its simulation with `"sessionId"` in the body (or an `X-Session-Id` header).
+ * - Without one, requests use the default session, which a plain `/begin` replaces, so a single
+ *   client works as if the server had one simulation.
+ * - `/begin` with `"newSession": true` starts a separate session and returns its `sessionId`;
+ *   clients sharing a server (several windows, a grading harness) should each use their own.
+ * - Sessions unused for 30 minutes are dropped (not the default one); requests for them return
+ *   `{ ok:false }`. `/begin` fails while the simulations would take more than half of the heap,
+ *   estimated at 512 KiB per sicxe and 768 KiB per sic simulation, plus 4 KiB per memory page the
+ *   program wrote or its snapshots keep, plus the undo log and an off-heap trace. The estimate is
+ *   updated after /load, /step, /run, /snapshot, /restore and reverse execution; over the limit,
+ *   idle sessions are dropped.
+ *
  * ### Server startup
  * - By default the server listens on **127.0.0.1:9090**.
  * - You can override the port by passing it as the first argument:
@@ -45,17 +60,34 @@ import java.util.List;
  *     {"index":0, "filename":"/tmp/in.bin"},
  *     {"index":1, "filename":"/tmp/out.bin"}
  * ]}                                       // optional: map file devices before start
+ * { "type": "sicxe", "engine": "table" }   // optional: interpreter engine, "switch" (default), "table" or "jit"
+ * { "type": "sicxe", "undoSteps": 10000 }  // optional: instructions /step-back can undo, 0 turns it off (default 0 with jit)
+ * { "type": "sicxe", "newSession": true }  // optional: start a new session
+ * { "type": "sicxe", "sessionId": "..." }  // optional: begin an existing session again
  * ```
  * When `filedevices` is present, the server uses the overloaded simulation
  * constructors with `int[] indices` and `String[] filenames`. If an invalid
  * mapping is supplied, the constructor may throw `IllegalArgumentException`
  * which is returned as `{ ok:false, message:"..." }`.
  *
- * **Response:** `{ ok:true, message:"Simulation initialized (sic)" }`
+ * `engine` selects the SIC/XE interpreter: `"switch"` decodes through chained switches
+ * (with a decode cache), `"table"` dispatches through a 256-entry handler table indexed
+ * by the first instruction byte, `"jit"` interprets like `"table"` and additionally
+ * compiles hot basic blocks to JVM bytecode, used by `/run` while no breakpoints or
+ * watchpoints are set. All engines produce the same machine state; `"sic"` only
+ * supports `"switch"`.
+ *
+ * `undoSteps` sizes the undo log behind `/step-back` and `/run-back-to` (default 10000,
+ * at most 1000000). Each logged instruction takes 65 bytes and counts against the session
+ * memory. Compiled blocks can not be undone, so with `"jit"` the log is off unless `undoSteps`
+ * is given, and while it is on `"jit"` runs instruction by instruction.
+ *
+ * **Response:** `{ ok:true, message:"Simulation initialized (sic)", sessionId:"default" }`
+ * (`sessionId` is a new random ID with `newSession`)
  *
  * ---
  * ### 2) POST /load
- * **Purpose:** Assemble (and if multi-file, link) one or more `.asm` files; writes `.obj` files.
+ * **Purpose:** Assemble (and if multi-file, link) one or more `.asm` files; writes `.obj` files in the background (assembling, linking and loading work from memory).
  *
  * **Request JSON (extended options):**
  * ```json
@@ -94,6 +126,7 @@ import java.util.List;
  * - Exactly one of `listing`, `compileErrors`, `linkerError` is populated per file.
  * - `registers` is a snapshot of the machine state **after** loading (and linking, when applicable).
  * - Raw `.obj` inputs are **rejected** by the API (see error in response).
+ * - Assembled and linked results are cached by content, so unchanged files are not assembled (or linked) again.
  *
  * ---
  * ### 3) POST /syntax-check
@@ -119,6 +152,9 @@ import java.util.List;
  * }
  * ```
  *
+ * **Notes:**
+ * - The parse of the last checked files is kept by file name; lines above the first edited line are not parsed again.
+ *
  * ---
  * ### 4) POST /memory
  * **Purpose:** Read memory from the simulator.
@@ -138,6 +174,28 @@ import java.util.List;
  * ```
  *
  * ---
+ * ### 4b) POST /memory.bin
+ * **Purpose:** Read memory as raw bytes, optionally only what changed since an earlier read.
+ * A 64 KiB view is 64 KiB here instead of ~250 KB of JSON, and a delta after a step is
+ * usually a page or two.
+ *
+ * **Request JSON:**
+ * ```json
+ * { "start": "0x0000", "end": "0xFFFF" }                 // whole range
+ * { "start": "0x0000", "end": "0xFFFF", "since": 41 }    // only pages written after generation 41
+ * ```
+ *
+ * **Response (`application/octet-stream`, big-endian):**
+ * ```
+ * generation     8 bytes    pass as "since" next time
+ * then ranges:   start 4 bytes, length 4 bytes, length bytes of memory
+ * ```
+ * A whole-range read is a single range. A delta has one range per run of changed 256-byte
+ * pages, clipped to start/end; no ranges means nothing changed. A `since` from another
+ * simulation (e.g. before `/begin`) returns the whole range as changed.
+ * Errors are JSON `{ ok:false, message:"..." }` with status 400.
+ *
+ * ---
  * ### 5) POST /step
  * **Purpose:** Execute exactly one instruction.
  *
@@ -151,33 +209,199 @@ import java.util.List;
  *   "registers": { "A":0, "X":0, "L":0, "S":0, "T":0, "B":0, "SW":0, "PC":4099, "F":"0.0" }
  * }
  * ```
+ *
+ * ---
+ * ### 6) POST /run
+ * **Purpose:** Execute many instructions inside the server in one request. Stops at the
+ * instruction limit, the time budget, a halt (`J` to itself) or a breakpoint, whichever comes first.
+ *
+ * **Request JSON:** (all fields optional)
+ * ```json
+ * { "maxInstructions": 10000000, "timeBudgetMs": 1000 }
+ * ```
+ *
+ * **Response JSON (from Simulation.run):**
+ * ```json
+ * {
+ *   "ok": true,
+ *   "message": "stopped: halt",
+ *   "stopReason": "HALT",            // LIMIT, TIMEOUT, HALT, BREAKPOINT, DATA_BREAKPOINT
+ *   "executed": 123456,
+ *   "instructionCount": 123456,
+ *   "decodeCacheHits": 123400,      // sicxe only
+ *   "decodeCacheMisses": 56,        // sicxe only
+ *   "registers": { "A":0, "X":0, "L":0, "S":0, "T":0, "B":0, "SW":0, "PC":4099, "F":"0.0" }
+ * }
+ * ```
+ *
+ * ---
+ * ### 7) POST /breakpoints/set, /breakpoints/clear, /breakpoints/list
+ * **Purpose:** Manage the breakpoints honored by `/run`. They are kept on the server as a
+ * bitmap over the address space, so checking them costs nothing noticeable per instruction.
+ *
+ * **Request JSON:**
+ * ```json
+ * { "addr": "0x1030" }                  // set / clear one address
+ * { "addrs": [4144, "0x1040"] }         // set / clear several addresses
+ * { "all": true }                       // clear only: remove every breakpoint
+ * {}                                    // list
+ * ```
+ *
+ * **Response JSON:** `{ ok:true, message:"2 breakpoint(s)", addresses:[4144, 4160] }`
+ *
+ * ---
+ * ### 8) POST /snapshot, /restore
+ * **Purpose:** Rerun without building again. `/snapshot` saves the machine state (registers,
+ * memory, JSUB stack, instruction count, device positions); a snapshot is also taken after every
+ * successful `/load`. `/restore` goes back to the last `/snapshot`, or with `loaded` to the state
+ * right after the load. Memory pages are shared copy-on-write, so both take microseconds.
+ *
+ * **Request JSON:** `{}` for /snapshot, `{ "loaded": true }` (optional) for /restore
+ *
+ * **Response JSON:**
+ * ```json
+ * {
+ *   "ok": true,
+ *   "message": "restored the loaded program",
+ *   "instructionCount": 0,
+ *   "registers": { "A":0, "X":0, "L":0, "S":0, "T":0, "B":0, "SW":0, "PC":4096, "F":"0.0" }
+ * }
+ * ```
+ *
+ * ---
+ * ### 9) POST /step-back, /run-back-to
+ * **Purpose:** Reverse execution. `/step-back` undoes the last instruction; `/run-back-to`
+ * undoes instructions until PC is at `addr` or at a breakpoint, the undo log is empty or
+ * `maxInstructions` were undone. Registers, memory, the JSUB stack and the instruction count
+ * go back; device reads and writes are not undone. Loading a program empties the log.
+ *
+ * **Request JSON:** `{}` for /step-back; for /run-back-to (all fields optional)
+ * ```json
+ * { "addr": "0x1030", "maxInstructions": 10000 }
+ * ```
+ *
+ * **Response JSON:**
+ * ```json
+ * {
+ *   "ok": true,
+ *   "message": "stopped: address",
+ *   "stopReason": "ADDRESS",         // run-back-to only: ADDRESS, BREAKPOINT, START, LIMIT
+ *   "undone": 12,
+ *   "undoAvailable": 140,
+ *   "instructionCount": 88,
+ *   "registers": { "A":0, "X":0, "L":0, "S":0, "T":0, "B":0, "SW":0, "PC":4144, "F":"0.0" }
+ * }
+ * ```
+ *
+ * ---
+ * ### 10) POST /trace/start, /trace/stop, /trace
+ * **Purpose:** Binary execution trace for looking into long runs afterwards. While tracing, every
+ * executed instruction (by /step or /run) is appended as a
+ * 16-byte record: PC, opcode, effective address and the memory read or write. The records are
+ * kept in a ring of `capacity` records, off-heap or, with `file`, in a file on the server mapped
+ * into memory (a 32-byte header, then the records; see `ExecutionTrace`). `/trace/stop` stops
+ * recording and writes the file out, the records stay queryable until the next `/trace/start`.
+ * An off-heap trace counts against the session memory as long as it is kept; a start that does
+ * not fit is refused.
+ * Loading a program empties the trace. While tracing, `"jit"` runs instruction by instruction.
+ *
+ * **Request JSON:**
+ * ```json
+ * { "capacity": 1048576, "file": "/tmp/run.trace" }   // /trace/start, both optional
+ * {}                                                  // /trace/stop
+ * { "from": 0, "limit": 1000 }                        // /trace: a page of records from record number `from`
+ * { "last": 50 }                                      // /trace: the last 50 records
+ * { "last": 50, "before": 1200 }                      // /trace: the last 50 records before record number 1200
+ * { "last": 50, "start": "0x1000", "end": "0x10FF" }  // /trace: only instructions at, jumping to or accessing the range
+ * ```
+ * `capacity` defaults to 1048576 records (16 MiB) and is at most 16777216 off-heap and
+ * 1073741824 in a file; `limit` (records per page) defaults to 1000, `limit` and `last` are at most 10000.
+ * A query scans at most 1048576 records, so with a range that matches few of them it may return
+ * fewer records than asked for and a `next` to continue from: the next `from` when paging forward,
+ * the next `before` with `last`.
+ *
+ * **Response JSON:**
+ * ```json
+ * {
+ *   "ok": true,
+ *   "message": "2 record(s)",
+ *   "tracing": true,
+ *   "file": "/tmp/run.trace",       // null off-heap
+ *   "capacity": 1048576,
+ *   "recorded": 123456,             // instructions traced
+ *   "first": 0,                     // oldest record still kept
+ *   "next": 1002,                   // continue from here (from, or before with last), null when all are scanned
+ *   "records": [
+ *     { "n": 1000, "pc": 4099, "opcode": 3, "mnemonic": "LDA", "size": 3, "target": 4200, "access": "read", "address": 4200, "length": 3 },
+ *     { "n": 1001, "pc": 4102, "opcode": 63, "mnemonic": "J", "size": 3, "target": 4099 }
+ *   ]
+ * }
+ * ```
+ *
+ * ---
+ * ### 11) POST /end
+ * **Purpose:** End a session and free its simulation.
+ *
+ * **Request JSON:** `{ "sessionId": "..." }` (the default session when omitted)
+ *
+ * **Response JSON:** `{ ok:true, message:"Session ended" }`
  */
 public class Main {
     private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-    // Single Simulation instance (initialized via /begin)
-    private static volatile Simulation SIM = null;
+    private static final long DEFAULT_RUN_MAX_INSTRUCTIONS = 10_000_000L;
+    private static final long DEFAULT_RUN_BUDGET_MS = 1000L;
+    private static final int DEFAULT_UNDO_STEPS = 10_000;
+    private static final int MAX_UNDO_STEPS = 1_000_000;
+    private static final long DEFAULT_TRACE_RECORDS = 1L << 20;
+    private static final long MAX_TRACE_RECORDS = 1L << 24;          // off-heap, 256 MiB
+    private static final long MAX_TRACE_FILE_RECORDS = 1L << 30;     // 16 GiB
+    private static final int DEFAULT_TRACE_LIMIT = 1000;
+    private static final int MAX_TRACE_LIMIT = 10_000;
+    private static final String BINARY = "application/octet-stream";
+    private static final String SESSION_HEADER = "X-Session-Id";
+    private static final String TOO_MANY_SESSIONS = "Too many simulations on the server. End one with /end or try again later.";
+    private static final long SESSION_IDLE_MS = 30 * 60 * 1000L;
+    // Simulations by session ID (the default session is initialized via /begin)
+    private static final Sessions SESSIONS = new Sessions(Runtime.getRuntime().maxMemory() / 2, SESSION_IDLE_MS);
 
     /* Simple result type for errors/acks */
     static final class Msg {
         boolean ok; String message;
         Msg(boolean ok, String message) { this.ok = ok; this.message = message; }
     }
+    static final class BeginMsg {
+        boolean ok; String message; String sessionId;
+        BeginMsg(String message, String sessionId) { this.ok = true; this.message = message; this.sessionId = sessionId; }
+    }
 
     // ---------- Request DTOs ----------
-    static final class BeginReq {
+    static class SessionReq {
+        String sessionId;          // optional; omitted means the default session
+    }
+    static final class BeginReq extends SessionReq {
+        Boolean newSession;        // optional; true starts a session with a new ID
         String type;
         List<FileDev> filedevices; // optional; list of {index, filename}
+        String engine;             // optional; "switch" (default), "table" or "jit", sicxe only
+        Integer undoSteps;         // optional; size of the undo log, 0 turns step-back off
     }
     static final class FileDev {
         Integer index;
         String filename;
     }
-    static final class LoadReq {
+    static final class LoadReq extends SessionReq {
         String[] filePaths; String outputDir; String outputName; String main;
         Boolean keep; Boolean graphical; Boolean editing; Boolean force; Boolean verbose;
     }
-    static final class SyntaxReq { String[] texts; String[] fileNames; }
-    static final class MemoryReq { Object addr; Object start; Object end; }
+    static final class SyntaxReq extends SessionReq { String[] texts; String[] fileNames; }
+    static final class MemoryReq extends SessionReq { Object addr; Object start; Object end; }
+    static final class MemoryBinReq extends SessionReq { Object start; Object end; Long since; }
+    static final class RunReq extends SessionReq { Object maxInstructions; Object timeBudgetMs; }
+    static final class BreakpointsReq extends SessionReq { Object addr; Object[] addrs; Boolean all; }
+    static final class RestoreReq extends SessionReq { Boolean loaded; }
+    static final class RunBackReq extends SessionReq { Object addr; Object maxInstructions; }
+    static final class TraceStartReq extends SessionReq { Long capacity; String file; }
+    static final class TraceReq extends SessionReq { Long from; Long before; Integer last; Integer limit; Object start; Object end; }
 
     static <T> T logIO(String endpoint, int inBytes, T out) {
         int outBytes = String.valueOf(out).getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
@@ -185,8 +409,14 @@ public class Main {
         return out;
     }
 
+    static byte[] logIO(String endpoint, int inBytes, byte[] out) {
+        System.out.println(endpoint + " incoming = " + inBytes + " bytes, outgoing = " + out.length + " bytes");
+        return out;
+    }
+
     public static void main(String[] args) {
-        SIM = new SicSimulation(); // default engine before first /begin
+        SESSIONS.replace(Sessions.DEFAULT, new SicSimulation()); // default engine before first /begin
+        SESSIONS.startSweeper();
         int portNum = 9090;
         if (args != null && args.length > 0) {
             try {
@@ -201,7 +431,7 @@ public class Main {
 
         // CORS + default handlers (centralized, overwrite headers to avoid duplicates)
         installJsonDefaultsAndHandlers();
-        enableCorsSingleton("*", "POST,OPTIONS", "Content-Type, Authorization, X-Requested-With");
+        enableCorsSingleton("*", "POST,OPTIONS", "Content-Type, Authorization, X-Requested-With, " + SESSION_HEADER);
 
         System.out.println("Server running on http://127.0.0.1:" + portNum);
 
@@ -213,7 +443,7 @@ public class Main {
 
             BeginReq body = safeFromJson(req.body(), BeginReq.class);
             if (body == null || body.type == null) {
-                return logIO("POST /begin", __in, gson.toJson(new Msg(false, "Expected JSON body: { \"type\": \"sic\" | \"sicxe\", \"filedevices\":[{index,filename}]? }")));
+                return logIO("POST /begin", __in, gson.toJson(new Msg(false, "Expected JSON body: { \"type\": \"sic\" | \"sicxe\", \"filedevices\":[{index,filename}]?, \"engine\": \"switch\" | \"table\" | \"jit\"? }")));
             }
             String t = body.type.trim().toLowerCase();
 
@@ -236,15 +466,22 @@ public class Main {
                 filenames = fileTmp.toArray(new String[0]);
             }
 
+            String engine = body.engine == null ? null : body.engine.trim().toLowerCase();
+            // the JIT would run instruction by instruction with the log on, so it only gets one when asked
+            int undoSteps = body.undoSteps != null ? body.undoSteps : "jit".equals(engine) ? 0 : DEFAULT_UNDO_STEPS;
+            if (undoSteps < 0 || undoSteps > MAX_UNDO_STEPS)
+                return logIO("POST /begin", __in, gson.toJson(new Msg(false, "undoSteps must be between 0 and " + MAX_UNDO_STEPS + ".")));
+
             try {
+                Simulation sim;
                 switch (t) {
                     case "sic" -> {
-                        SIM = (indices == null)
+                        sim = (indices == null)
                                 ? new SicSimulation()
                                 : new SicSimulation(indices, filenames);
                     }
                     case "sicxe" -> {
-                        SIM = (indices == null)
+                        sim = (indices == null)
                                 ? new SicxeSimulation()
                                 : new SicxeSimulation(indices, filenames);
                     }
@@ -252,10 +489,23 @@ public class Main {
                         return logIO("POST /begin", __in, gson.toJson(new Msg(false, "Unknown type: \"" + body.type + "\" (use \"sic\" or \"sicxe\")")));
                     }
                 }
+                if (engine != null) sim.setEngine(engine);
+                sim.setUndoSteps(undoSteps);
+
+                String id = sessionId(req, body);
+                if (Boolean.TRUE.equals(body.newSession)) {
+                    id = SESSIONS.begin(sim);
+                    if (id == null) return logIO("POST /begin", __in, gson.toJson(new Msg(false, TOO_MANY_SESSIONS)));
+                } else {
+                    if (id == null) id = Sessions.DEFAULT;
+                    else if (SESSIONS.get(id) == null) return logIO("POST /begin", __in, noSession(id));
+                    if (!SESSIONS.replace(id, sim)) return logIO("POST /begin", __in, gson.toJson(new Msg(false, TOO_MANY_SESSIONS)));
+                }
+                String initialized = engine == null ? t : t + ", " + engine;
+                return logIO("POST /begin", __in, gson.toJson(new BeginMsg("Simulation initialized (" + initialized + ")", id)));
             } catch (IllegalArgumentException iae) {
                 return logIO("POST /begin", __in, gson.toJson(new Msg(false, iae.getMessage())));
             }
-            return logIO("POST /begin", __in, gson.toJson(new Msg(true, "Simulation initialized (" + t + ")")));
         });
 
         // Assemble / Link
@@ -263,12 +513,13 @@ public class Main {
             String __b = req.body();
             int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
 
-            if (SIM == null) return logIO("POST /load", __in, gson.toJson(new Msg(false, "Simulation not started. Call /begin first.")));
             LoadReq body = safeFromJson(req.body(), LoadReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /load", __in, noSession(sessionId(req, body)));
             if (body == null) return logIO("POST /load", __in, gson.toJson(new Msg(false, "Expected JSON body with filePaths (array).")));
             if (body.filePaths == null || body.filePaths.length == 0)
                 return logIO("POST /load", __in, gson.toJson(new Msg(false, "filePaths must be a non-empty array.")));
-            Object r = SIM.load(
+            Object r = sim.load(
                     body.filePaths,
                     body.outputDir,
                     body.outputName,
@@ -279,6 +530,7 @@ public class Main {
                     body.force,
                     body.verbose
             );
+            SESSIONS.update(sessionId(req, body));
             return logIO("POST /load", __in, r);
         });
 
@@ -287,12 +539,13 @@ public class Main {
             String __b = req.body();
             int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
 
-            if (SIM == null) return logIO("POST /syntax-check", __in, gson.toJson(new Msg(false, "Simulation not started. Call /begin first.")));
             SyntaxReq body = safeFromJson(req.body(), SyntaxReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /syntax-check", __in, noSession(sessionId(req, body)));
             if (body == null) return logIO("POST /syntax-check", __in, gson.toJson(new Msg(false, "Expected JSON body with texts and fileNames arrays.")));
             if (body.texts == null || body.fileNames == null || body.texts.length != body.fileNames.length)
                 return logIO("POST /syntax-check", __in, gson.toJson(new Msg(false, "texts and fileNames must be non-null and the same length.")));
-            return logIO("POST /syntax-check", __in, SIM.syntaxCheck(body.texts, body.fileNames));
+            return logIO("POST /syntax-check", __in, sim.syntaxCheck(body.texts, body.fileNames));
         });
 
         // Memory read
@@ -300,8 +553,9 @@ public class Main {
             String __b = req.body();
             int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
 
-            if (SIM == null) return logIO("POST /memory", __in, gson.toJson(new Msg(false, "Simulation not started. Call /begin first.")));
             MemoryReq body = safeFromJson(req.body(), MemoryReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /memory", __in, noSession(sessionId(req, body)));
             if (body == null)
                 return logIO("POST /memory", __in, gson.toJson(new Msg(false, "Expected JSON body with addr OR start+end.")));
 
@@ -310,23 +564,257 @@ public class Main {
             Integer end   = parseIntFlexible(body.end);
 
             if (addr != null && start == null && end == null) {
-                return logIO("POST /memory", __in, SIM.memory(addr));
+                return logIO("POST /memory", __in, sim.memory(addr));
             }
             if (addr == null && start != null && end != null) {
-                return logIO("POST /memory", __in, SIM.memory(start, end));
+                return logIO("POST /memory", __in, sim.memory(start, end));
             }
             return logIO("POST /memory", __in, gson.toJson(new Msg(false,
                     "Provide either {addr} OR {start,end}. Values may be decimal or hex strings like '0x1000'.")));
         });
 
+        // Memory read, raw bytes or changed pages only
+        post("/memory.bin", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            res.status(400); // until the bytes are ready, errors are JSON
+            MemoryBinReq body = safeFromJson(req.body(), MemoryBinReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /memory.bin", __in, noSession(sessionId(req, body)));
+            Integer start = body == null ? null : parseIntFlexible(body.start);
+            Integer end = body == null ? null : parseIntFlexible(body.end);
+            if (start == null || end == null)
+                return logIO("POST /memory.bin", __in, gson.toJson(new Msg(false, "Expected JSON body: { \"start\", \"end\", \"since\"? }")));
+
+            byte[] out = sim.memoryBin(start, end, body.since);
+            res.status(200);
+            res.type(BINARY);
+            return logIO("POST /memory.bin", __in, out);
+        });
+
         // One step
         post("/step", (req, res) -> {
             String __b = req.body();
             int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
 
-            if (SIM == null) return logIO("POST /step", __in, gson.toJson(new Msg(false, "Simulation not started. Call /begin first.")));
-            return logIO("POST /step", __in, SIM.step());
+            String id = sessionId(req, (__b == null || __b.isBlank()) ? null : safeFromJson(__b, SessionReq.class));
+            Simulation sim = SESSIONS.get(id);
+            if (sim == null) return logIO("POST /step", __in, noSession(id));
+            String out = sim.step();
+            SESSIONS.update(id);
+            return logIO("POST /step", __in, out);
+        });
+
+        // Batched run (many instructions per request)
+        post("/run", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            RunReq body = (__b == null || __b.isBlank()) ? new RunReq() : safeFromJson(__b, RunReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /run", __in, noSession(sessionId(req, body)));
+            if (body == null) return logIO("POST /run", __in, gson.toJson(new Msg(false, "Expected JSON body: { \"maxInstructions\"?, \"timeBudgetMs\"? }")));
+
+            Integer max = parseIntFlexible(body.maxInstructions);
+            Integer budget = parseIntFlexible(body.timeBudgetMs);
+            if ((max != null && max <= 0) || (budget != null && budget < 0))
+                return logIO("POST /run", __in, gson.toJson(new Msg(false, "maxInstructions must be positive and timeBudgetMs non-negative.")));
+            String out = sim.run(
+                    max == null ? DEFAULT_RUN_MAX_INSTRUCTIONS : max,
+                    budget == null ? DEFAULT_RUN_BUDGET_MS : budget);
+            SESSIONS.update(sessionId(req, body));
+            return logIO("POST /run", __in, out);
+        });
+
+        // Server-owned breakpoints (consulted by /run)
+        post("/breakpoints/set", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            BreakpointsReq body = safeFromJson(__b, BreakpointsReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /breakpoints/set", __in, noSession(sessionId(req, body)));
+            int[] addrs = body == null ? null : parseAddresses(body);
+            if (addrs == null || addrs.length == 0)
+                return logIO("POST /breakpoints/set", __in, gson.toJson(new Msg(false, "Provide {addr} or {addrs:[...]}. Values may be decimal or hex strings like '0x1000'.")));
+            return logIO("POST /breakpoints/set", __in, sim.breakpointsSet(addrs));
+        });
+
+        post("/breakpoints/clear", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            BreakpointsReq body = safeFromJson(__b, BreakpointsReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /breakpoints/clear", __in, noSession(sessionId(req, body)));
+            if (body != null && Boolean.TRUE.equals(body.all))
+                return logIO("POST /breakpoints/clear", __in, sim.breakpointsClear(null));
+            int[] addrs = body == null ? null : parseAddresses(body);
+            if (addrs == null || addrs.length == 0)
+                return logIO("POST /breakpoints/clear", __in, gson.toJson(new Msg(false, "Provide {addr}, {addrs:[...]} or {all:true}.")));
+            return logIO("POST /breakpoints/clear", __in, sim.breakpointsClear(addrs));
+        });
+
+        post("/breakpoints/list", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            String id = sessionId(req, (__b == null || __b.isBlank()) ? null : safeFromJson(__b, SessionReq.class));
+            Simulation sim = SESSIONS.get(id);
+            if (sim == null) return logIO("POST /breakpoints/list", __in, noSession(id));
+            return logIO("POST /breakpoints/list", __in, sim.breakpointsList());
+        });
+
+        // Save the machine state / go back to it (rerun without building again)
+        post("/snapshot", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            String id = sessionId(req, (__b == null || __b.isBlank()) ? null : safeFromJson(__b, SessionReq.class));
+            Simulation sim = SESSIONS.get(id);
+            if (sim == null) return logIO("POST /snapshot", __in, noSession(id));
+            String out = sim.snapshot();
+            SESSIONS.update(id);
+            return logIO("POST /snapshot", __in, out);
+        });
+
+        post("/restore", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            RestoreReq body = (__b == null || __b.isBlank()) ? new RestoreReq() : safeFromJson(__b, RestoreReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /restore", __in, noSession(sessionId(req, body)));
+            String out = sim.restore(body != null && Boolean.TRUE.equals(body.loaded));
+            SESSIONS.update(sessionId(req, body));
+            return logIO("POST /restore", __in, out);
+        });
+
+        // Reverse execution through the undo log
+        post("/step-back", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            String id = sessionId(req, (__b == null || __b.isBlank()) ? null : safeFromJson(__b, SessionReq.class));
+            Simulation sim = SESSIONS.get(id);
+            if (sim == null) return logIO("POST /step-back", __in, noSession(id));
+            String out = sim.stepBack();
+            SESSIONS.update(id);
+            return logIO("POST /step-back", __in, out);
         });
+
+        post("/run-back-to", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            RunBackReq body = (__b == null || __b.isBlank()) ? new RunBackReq() : safeFromJson(__b, RunBackReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /run-back-to", __in, noSession(sessionId(req, body)));
+            if (body == null) return logIO("POST /run-back-to", __in, gson.toJson(new Msg(false, "Expected JSON body: { \"addr\"?, \"maxInstructions\"? }")));
+
+            Integer addr = parseIntFlexible(body.addr);
+            Integer max = parseIntFlexible(body.maxInstructions);
+            if ((body.addr != null && addr == null) || (max != null && max <= 0))
+                return logIO("POST /run-back-to", __in, gson.toJson(new Msg(false, "addr must be decimal or hex like '0x1000', maxInstructions positive.")));
+            String out = sim.runBackTo(addr, max == null ? MAX_UNDO_STEPS : max);
+            SESSIONS.update(sessionId(req, body));
+            return logIO("POST /run-back-to", __in, out);
+        });
+
+        // Binary execution trace
+        post("/trace/start", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            TraceStartReq body = (__b == null || __b.isBlank()) ? new TraceStartReq() : safeFromJson(__b, TraceStartReq.class);
+            String id = sessionId(req, body);
+            Simulation sim = SESSIONS.get(id);
+            if (sim == null) return logIO("POST /trace/start", __in, noSession(id));
+            if (body == null) return logIO("POST /trace/start", __in, gson.toJson(new Msg(false, "Expected JSON body: { \"capacity\"?, \"file\"? }")));
+
+            String file = body.file == null || body.file.isBlank() ? null : body.file;
+            long max = file == null ? MAX_TRACE_RECORDS : MAX_TRACE_FILE_RECORDS;
+            long capacity = body.capacity == null ? DEFAULT_TRACE_RECORDS : body.capacity;
+            if (capacity <= 0 || capacity > max)
+                return logIO("POST /trace/start", __in, gson.toJson(new Msg(false, "capacity must be between 1 and " + max + ".")));
+            // charged before the buffer is allocated, the trace it replaces is freed
+            long traceBytes = file == null ? capacity * ExecutionTrace.RECORD_BYTES : 0;
+            if (!SESSIONS.reserve(id, Sessions.bytesOf(sim) - sim.traceBytes() + traceBytes))
+                return logIO("POST /trace/start", __in, gson.toJson(new Msg(false, "The trace does not fit in the server memory. Use a smaller capacity or a file, or end other sessions.")));
+            String out = sim.traceStart(file, capacity);
+            SESSIONS.update(id);
+            return logIO("POST /trace/start", __in, out);
+        });
+
+        post("/trace/stop", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            String id = sessionId(req, (__b == null || __b.isBlank()) ? null : safeFromJson(__b, SessionReq.class));
+            Simulation sim = SESSIONS.get(id);
+            if (sim == null) return logIO("POST /trace/stop", __in, noSession(id));
+            String out = sim.traceStop();
+            SESSIONS.update(id);
+            return logIO("POST /trace/stop", __in, out);
+        });
+
+        post("/trace", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            TraceReq body = (__b == null || __b.isBlank()) ? new TraceReq() : safeFromJson(__b, TraceReq.class);
+            Simulation sim = SESSIONS.get(sessionId(req, body));
+            if (sim == null) return logIO("POST /trace", __in, noSession(sessionId(req, body)));
+            if (body == null) return logIO("POST /trace", __in, gson.toJson(new Msg(false, "Expected JSON body: { \"from\"?, \"last\"?, \"limit\"?, \"start\"?, \"end\"? }")));
+
+            Integer start = parseIntFlexible(body.start);
+            Integer end = parseIntFlexible(body.end);
+            if ((body.start != null && start == null) || (body.end != null && end == null))
+                return logIO("POST /trace", __in, gson.toJson(new Msg(false, "start/end must be decimal or hex like '0x1000'.")));
+            int limit = body.limit == null ? DEFAULT_TRACE_LIMIT : body.limit;
+            if (limit <= 0 || limit > MAX_TRACE_LIMIT || (body.last != null && (body.last <= 0 || body.last > MAX_TRACE_LIMIT))
+                    || (body.from != null && body.from < 0) || (body.before != null && body.before < 0))
+                return logIO("POST /trace", __in, gson.toJson(new Msg(false, "limit and last must be between 1 and " + MAX_TRACE_LIMIT + ", from and before non-negative.")));
+            return logIO("POST /trace", __in, sim.trace(body.from, body.before, body.last, limit, start, end));
+        });
+
+        // End a session and free its simulation
+        post("/end", (req, res) -> {
+            String __b = req.body();
+            int __in = __b == null ? 0 : __b.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+
+            String id = sessionId(req, (__b == null || __b.isBlank()) ? null : safeFromJson(__b, SessionReq.class));
+            if (id == null) id = Sessions.DEFAULT;
+            if (!SESSIONS.end(id)) return logIO("POST /end", __in, noSession(id));
+            return logIO("POST /end", __in, gson.toJson(new Msg(true, "Session ended")));
+        });
+    }
+
+    /**
+     * The sessionId of the body, else the X-Session-Id header; null means the default session.
+     */
+    private static String sessionId(spark.Request req, SessionReq body) {
+        if (body != null && body.sessionId != null && !body.sessionId.isBlank()) return body.sessionId.trim();
+        String header = req.headers(SESSION_HEADER);
+        return header == null || header.isBlank() ? null : header.trim();
+    }
+
+    private static String noSession(String id) {
+        if (id == null || Sessions.DEFAULT.equals(id))
+            return gson.toJson(new Msg(false, "Simulation not started. Call /begin first."));
+        return gson.toJson(new Msg(false, "Unknown session \"" + id + "\" (ended, or dropped after being idle). Call /begin with newSession first."));
+    }
+
+    /**
+     * Collects {addr} and/or {addrs:[...]} into one array. Returns null if any value is invalid.
+     */
+    private static int[] parseAddresses(BreakpointsReq body) {
+        List<Integer> out = new ArrayList<>();
+        if (body.addr != null) out.add(parseIntFlexible(body.addr));
+        if (body.addrs != null) for (Object a : body.addrs) out.add(parseIntFlexible(a));
+        if (out.contains(null)) return null;
+        return out.stream().mapToInt(Integer::intValue).toArray();
     }
 
     private static <T> T safeFromJson(String json, Class<T> clazz) {
@@ -384,10 +872,11 @@ public class Main {
 
     /** JSON content-type defaults, unified errors, and sane fallbacks */
     private static void installJsonDefaultsAndHandlers() {
-        // Set JSON content-type on every non-OPTIONS response
+        // Set JSON content-type on every non-OPTIONS response that is not binary
         after((req, res) -> {
             if (!"OPTIONS".equalsIgnoreCase(req.requestMethod())) {
-                res.type("application/json; charset=UTF-8");
+                String type = res.raw().getContentType();
+                if (type == null || !type.startsWith(BINARY)) res.type("application/json; charset=UTF-8");
                 res.raw().setHeader("Cache-Control", "no-store");
             }
         });
@@ -0,0 +1,193 @@
+package com.sicserver;
+
+import com.sicserver.api.SicSimulation;
+import com.sicserver.api.Simulation;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The simulations of the server, one per session ID.
+ * Requests without an ID use the {@link #DEFAULT} session, which a plain /begin replaces,
+ * as the single simulation of the server did before.
+ * Sessions idle for longer than the idle timeout are dropped (except the default one), and
+ * new sessions are refused while the estimated memory of all sessions is at the capacity.
+ * A session is estimated again after requests that change its memory (see {@link #update}).
+ * Dropped simulations stop tracing, which writes out and closes their trace files.
+ */
+final class Sessions {
+
+    static final String DEFAULT = "default";
+
+    // measured heap per new simulation without its memory pages: ~250 KiB for sicxe, ~415 KiB for sic;
+    // the 4 KiB pages the machine and its snapshots hold are counted on top, see bytesOf
+    static final long SICXE_BYTES = 1L << 19;
+    static final long SIC_BYTES = 3L << 18;
+
+    private static final class Session {
+        final Simulation sim;
+        long bytes;             // guarded by Sessions.this
+        volatile long lastUsed;
+
+        Session(Simulation sim, long bytes, long now) {
+            this.sim = sim;
+            this.bytes = bytes;
+            this.lastUsed = now;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long capacity;
+    private final long idleMillis;
+    private long bytes;     // guarded by this
+
+    Sessions(long capacity, long idleMillis) {
+        this.capacity = capacity;
+        this.idleMillis = idleMillis;
+    }
+
+    static long bytesOf(Simulation sim) {
+        return (sim instanceof SicSimulation ? SIC_BYTES : SICXE_BYTES) + sim.memoryBytes()
+                + sim.undoLogBytes() + sim.traceBytes();
+    }
+
+    /**
+     * @param id null for the default session
+     * @return the simulation of the session, or null if there is none (never begun, ended or evicted)
+     */
+    Simulation get(String id) {
+        Session session = sessions.get(id == null ? DEFAULT : id);
+        if (session == null) return null;
+        session.lastUsed = System.currentTimeMillis();
+        return session.sim;
+    }
+
+    /**
+     * Starts a session with a new ID.
+     * @return the ID, or null when the sessions are at the capacity even after dropping idle ones.
+     */
+    String begin(Simulation sim) {
+        String id;
+        do {
+            id = newId();
+        } while (sessions.containsKey(id));
+        return put(id, sim) ? id : null;
+    }
+
+    /**
+     * Replaces the simulation of a session, e.g. the default one or a session that begins again.
+     * @return false when the sessions are at the capacity even after dropping idle ones.
+     */
+    boolean replace(String id, Simulation sim) {
+        return put(id, sim);
+    }
+
+    /**
+     * Charges a session for memory its simulation is about to take, e.g. an off-heap trace,
+     * before it is allocated.
+     * @param bytes the new estimate of the session
+     * @return false when it does not fit even after dropping idle sessions (nothing is charged then)
+     */
+    synchronized boolean reserve(String id, long bytes) {
+        Session session = sessions.get(id == null ? DEFAULT : id);
+        if (session == null) return false;
+        if (this.bytes - session.bytes + bytes > capacity) {
+            evictIdle(System.currentTimeMillis());
+            if (this.bytes - session.bytes + bytes > capacity) return false;
+        }
+        this.bytes += bytes - session.bytes;
+        session.bytes = bytes;
+        return true;
+    }
+
+    /**
+     * Estimates a session again after its simulation took or freed memory, e.g. wrote memory pages
+     * or kept a snapshot; over the capacity, idle sessions are dropped.
+     */
+    synchronized void update(String id) {
+        Session session = sessions.get(id == null ? DEFAULT : id);
+        if (session == null) return;
+        long bytes = bytesOf(session.sim);
+        this.bytes += bytes - session.bytes;
+        session.bytes = bytes;
+        if (this.bytes > capacity) evictIdle(System.currentTimeMillis());
+    }
+
+    synchronized boolean end(String id) {
+        Session old = sessions.remove(id);
+        if (old == null) return false;
+        bytes -= old.bytes;
+        old.sim.traceStop();
+        return true;
+    }
+
+    synchronized int size() {
+        return sessions.size();
+    }
+
+    private synchronized boolean put(String id, Simulation sim) {
+        long now = System.currentTimeMillis();
+        Session old = sessions.get(id);
+        long needed = bytes - (old == null ? 0 : old.bytes) + bytesOf(sim);
+        if (needed > capacity) {
+            evictIdle(now);
+            old = sessions.get(id);
+            needed = bytes - (old == null ? 0 : old.bytes) + bytesOf(sim);
+            // the default session may always be replaced, it is never more than one
+            if (needed > capacity && !DEFAULT.equals(id)) return false;
+        }
+        old = sessions.put(id, new Session(sim, bytesOf(sim), now));
+        if (old != null) {
+            bytes -= old.bytes;
+            old.sim.traceStop();
+        }
+        bytes += bytesOf(sim);
+        return true;
+    }
+
+    /**
+     * Drops the sessions not used for longer than the idle timeout, except the default one.
+     * @return the number of dropped sessions
+     */
+    synchronized int evictIdle(long now) {
+        int evicted = 0;
+        for (Map.Entry<String, Session> e : sessions.entrySet()) {
+            if (DEFAULT.equals(e.getKey()) || now - e.getValue().lastUsed <= idleMillis) continue;
+            if (sessions.remove(e.getKey(), e.getValue())) {
+                bytes -= e.getValue().bytes;
+                e.getValue().sim.traceStop();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Evicts idle sessions once a minute on a daemon thread.
+     */
+    void startSweeper() {
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            int evicted = evictIdle(System.currentTimeMillis());
+            if (evicted > 0) System.out.println("evicted " + evicted + " idle session(s), " + size() + " left");
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    private String newId() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder id = new StringBuilder(32);
+        for (byte b : bytes) id.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return id.toString();
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.sicserver.api;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * What /load built from sources, shared by all simulations of the process, so loading
+ * unchanged files again skips the assembler and the linker.
+ * Keys are content hashes (see {@link #key}), so an edited file simply misses.
+ * The least recently used entries are dropped when the estimated size of all entries
+ * passes the capacity.
+ */
+final class ArtifactCache {
+
+    // assembled programs take about 75 bytes per source character
+    static final int BYTES_PER_CHAR = 80;
+    private static final long CAPACITY = 64L << 20;
+
+    static final ArtifactCache SHARED = new ArtifactCache(CAPACITY);
+
+    private static final class Entry {
+        final Object value;
+        final long size;
+
+        Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private final long capacity;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    ArtifactCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the cached value or null; values must not be changed by the caller.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <V> V get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : (V) entry.value;
+    }
+
+    /**
+     * @param size estimated size of the value in bytes; values larger than the capacity are not kept.
+     */
+    synchronized void put(String key, Object value, long size) {
+        if (size > capacity) return;
+        Entry old = entries.put(key, new Entry(value, size));
+        if (old != null) this.size -= old.size;
+        this.size += size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (this.size > capacity) {
+            this.size -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Key of an artifact built by an engine (e.g. "sicxe-asm") from the given parts,
+     * made of the SHA-256 of the parts.
+     */
+    static String key(String kind, String... parts) {
+        MessageDigest digest = sha256();
+        byte[] length = new byte[4];
+        for (String part : parts) {
+            byte[] bytes = (part == null ? "" : part).getBytes(StandardCharsets.UTF_8);
+            // the length first, so parts cannot run into each other
+            for (int i = 0; i < 4; i++) length[i] = (byte) (bytes.length >>> (24 - 8 * i));
+            digest.update(length);
+            digest.update(bytes);
+        }
+        StringBuilder key = new StringBuilder(kind).append(':');
+        for (byte b : digest.digest()) key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return key.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);    // every JVM has SHA-256
+        }
+    }
+
+}
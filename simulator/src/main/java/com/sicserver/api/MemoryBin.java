@@ -0,0 +1,65 @@
+package com.sicserver.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.IntPredicate;
+
+/**
+ * Encoding of /memory.bin responses, all numbers big-endian:
+ * the generation (8 bytes), then for every range its start (4 bytes), length (4 bytes) and bytes.
+ * A full read is a single range; a delta has one range per run of changed pages.
+ */
+final class MemoryBin {
+
+    private MemoryBin() {}
+
+    // copies bytes out of a simulator memory
+    interface Source {
+        void read(int address, byte[] dst, int offset, int length);
+    }
+
+    /**
+     * @param capacity size of the memory
+     * @param changedPage pages to send, null sends the whole span.
+     */
+    static byte[] encode(Source memory, int capacity, int start, int endInclusive, long generation,
+                         IntPredicate changedPage, int pageShift) {
+        int s = Math.max(0, Math.min(start, endInclusive));
+        int e = Math.min(capacity - 1, Math.max(start, endInclusive));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(changedPage == null ? 16 + Math.max(0, e - s + 1) : 256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(generation);
+            if (s > e) return bytes.toByteArray();
+            if (changedPage == null) {
+                range(out, memory, s, e);
+            } else {
+                int page = s >>> pageShift;
+                int lastPage = e >>> pageShift;
+                while (page <= lastPage) {
+                    if (!changedPage.test(page)) {
+                        page++;
+                        continue;
+                    }
+                    int first = page;
+                    while (page <= lastPage && changedPage.test(page)) page++;
+                    range(out, memory, Math.max(s, first << pageShift), Math.min(e, (page << pageShift) - 1));
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void range(DataOutputStream out, Source memory, int start, int endInclusive) throws IOException {
+        byte[] bytes = new byte[endInclusive - start + 1];
+        memory.read(start, bytes, 0, bytes.length);
+        out.writeInt(start);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -12,6 +12,9 @@ import sic.loader.Loader;
 import sic.sim.Args;
 import sic.sim.Executor;
 import sic.sim.vm.Machine;
+import sic.sim.vm.ExecutionTrace;
+import sic.sim.vm.PageGenerations;
+import sic.sim.vm.UndoLog;
 
 import sic.link.Linker;
 import sic.link.Options;
@@ -21,7 +24,9 @@ import static com.sicserver.data.DTO.*;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Future;
 
 /**
  * SIC implementation that extends the sicxe-based base.
@@ -31,6 +36,12 @@ import java.util.*;
 public class SicSimulation extends SicxeSimulation {
     // Own SIC engine state (separate from base's sicxe state)
     private final Machine machineSic;
+    // machine states for /restore: right after the last successful load and the last /snapshot
+    private Machine.Snapshot loadedSnapshotSic;
+    private Machine.Snapshot savedSnapshotSic;
+    // the last started trace, still readable after /trace/stop
+    private ExecutionTrace traceSic;
+    private String traceFileSic;
     private final Executor executorSic;
     private Program lastProgramSic;
 
@@ -38,6 +49,7 @@ public class SicSimulation extends SicxeSimulation {
         super(); // builds sicxe engine; harmless, we won't use those fields
         Args processedArgs = new Args(new String[0]);
         this.machineSic = new Machine();
+        this.machineSic.setSpanTracking(false); // no endpoint reports the last read/write spans
         this.executorSic = new Executor(machineSic, processedArgs);
     }
 
@@ -76,6 +88,54 @@ public class SicSimulation extends SicxeSimulation {
         }
     }
 
+    // an assembled source: errors, or the program with its object text and listing (see ArtifactCache)
+    private static final class Assembled {
+        final List<AssemblerError> errors;
+        final Program program;
+        final String objText;
+        final Listing listing;
+
+        Assembled(String source, String fileName) throws IOException {
+            Assembler assembler = new Assembler();
+            ErrorCatcher catcher = assembler.errorCatcher;
+            Program program = assembler.assemble(source);
+
+            if (catcher.count() > 0) {
+                this.errors = catcher.errs.stream().map(err -> {
+                    AssemblerError ae = new AssemblerError();
+                    ae.row = err.loc.row;
+                    ae.col = err.loc.col;
+                    ae.length = err.length;
+                    ae.message = err.getMessage();
+                    return ae;
+                }).toList();
+                this.program = null;
+                this.objText = null;
+                this.listing = null;
+                return;
+            }
+
+            this.errors = null;
+            this.program = program;
+            try (Writer w = new StringWriter()) {
+                assembler.generateObj(program, w, false);
+                this.objText = w.toString();
+            }
+            this.listing = new Listing(program, fileName);
+        }
+    }
+
+    // assemble the source, or take what an earlier load assembled from the same file
+    private static Assembled assemble(String source, String fileName) throws IOException {
+        String key = ArtifactCache.key("sic-asm", fileName, source);
+        Assembled assembled = ArtifactCache.SHARED.get(key);
+        if (assembled == null) {
+            assembled = new Assembled(source, fileName);
+            ArtifactCache.SHARED.put(key, assembled, (long) ArtifactCache.BYTES_PER_CHAR * source.length());
+        }
+        return assembled;
+    }
+
     /* --- small helpers specific to SIC types --- */
     private SicListingDTO listingToDTO(Listing listing) {
         SicListingDTO dto = new SicListingDTO();
@@ -132,6 +192,9 @@ public class SicSimulation extends SicxeSimulation {
 
         LoadResult aggregate = new LoadResult();
         aggregate.files = new ArrayList<>();
+        if (machineSic.getUndoLog() != null) machineSic.getUndoLog().clear();
+        if (traceSic != null) traceSic.clear();
+        loadedSnapshotSic = savedSnapshotSic = null;
 
         if (filePaths == null || filePaths.length == 0) {
             aggregate.ok = false;
@@ -167,7 +230,10 @@ public class SicSimulation extends SicxeSimulation {
         // keep the object text for direct loading (no linker)
         final List<String> builtObjTexts = new ArrayList<>();
 
-        for (String path : filePaths) {
+        List<Future<Assembled>> assemblies =
+                assembleAll(filePaths, f -> assemble(Files.readString(f.toPath()), f.getName()));
+        for (int i = 0; i < filePaths.length; i++) {
+            String path = filePaths[i];
             FileLoadResult perFile = new FileLoadResult();
             perFile.fileName = path;
             aggregate.files.add(perFile);
@@ -192,43 +258,26 @@ public class SicSimulation extends SicxeSimulation {
             String ext = Utils.getFileExtension(f.getName());
             try {
                 if ("asm".equalsIgnoreCase(ext)) {
-                    String source = Files.readString(f.toPath());
-                    Assembler assembler = new Assembler();
-                    ErrorCatcher catcher = assembler.errorCatcher;
-                    Program program = assembler.assemble(source);
-
-                    if (catcher.count() > 0) {
-                        perFile.assemblerErrors = catcher.errs.stream().map(err -> {
-                            AssemblerError ae = new AssemblerError();
-                            ae.row = err.loc.row;
-                            ae.col = err.loc.col;
-                            ae.length = err.length;
-                            ae.message = err.getMessage();
-                            return ae;
-                        }).toList();
+                    Assembled assembled = join(assemblies.get(i));
+
+                    if (assembled.errors != null) {
+                        perFile.assemblerErrors = assembled.errors;
                         this.lastProgramSic = null;
                         continue;
                     }
 
                     // write .obj (same as before) and keep in-memory text for loading
-                    String objText;
-                    try (Writer w = new StringWriter()) {
-                        assembler.generateObj(program, w, false);
-                        objText = w.toString();
-                    }
-
                     File objOut = new File(outDir, baseNameNoExt(f) + ".obj");
-                    writeString(objOut, objText);
-                    builtObjTexts.add(objText);
+                    writeInBackground(objOut, assembled.objText);
+                    builtObjTexts.add(assembled.objText);
 
-                    Listing listing = new Listing(program, f.getName());
-                    builtListings.put(perFile.fileName, listing);
-                    perFile.listing = listingToDTO(listing);
+                    builtListings.put(perFile.fileName, assembled.listing);
+                    perFile.listing = listingToDTO(assembled.listing);
 
                     if (!multi) {
                         // Single-file: always set PC from this section
-                        Loader.loadSection(executorSic.machine, new StringReader(objText), null);
-                        this.lastProgramSic = program;
+                        Loader.loadSection(executorSic.machine, new StringReader(assembled.objText), null);
+                        this.lastProgramSic = assembled.program;
                     }
 
                 } else if ("obj".equalsIgnoreCase(ext)) {
@@ -276,6 +325,7 @@ public class SicSimulation extends SicxeSimulation {
         }
         aggregate.ok = okAll;
         if (aggregate.message == null) aggregate.message = okAll ? "OK" : "Completed with errors.";
+        if (okAll) loadedSnapshotSic = machineSic.snapshot();     // /restore reruns from here without loading again
         aggregate.registers = snapshotRegistersSic();
         return gson.toJson(aggregate);
     }
@@ -397,6 +447,14 @@ public class SicSimulation extends SicxeSimulation {
     }
 
 
+    @Override
+    public byte[] memoryBin(int start, int endInclusive, Long since) {
+        PageGenerations generations = machineSic.memory.generations;
+        long generation = generations.mark(); // before copying, so later writes show up in the next delta
+        return MemoryBin.encode(machineSic.memory::getBytesRaw, machineSic.memory.capacity(), start, endInclusive, generation,
+                since == null ? null : page -> generations.changedSince(page, since), PageGenerations.PAGE_SHIFT);
+    }
+
     @Override
     public String step() {
         Map<String, Object> out = new LinkedHashMap<>();
@@ -423,4 +481,234 @@ public class SicSimulation extends SicxeSimulation {
 
         return gson.toJson(out);
     }
+
+    @Override
+    public void setEngine(String engine) {
+        // the SIC machine has a single engine
+        if (!engine.equals("switch"))
+            throw new IllegalArgumentException("Engine \"" + engine + "\" is only available for sicxe (sic uses \"switch\")");
+    }
+
+    @Override
+    public String run(long maxInstructions, long timeBudgetMillis) {
+        RunResult out = new RunResult();
+        int before = machineSic.getInstructionCount();
+        try {
+            Executor.StopReason reason = executorSic.runBatch(maxInstructions, timeBudgetMillis * 1_000_000L);
+            out.ok = true;
+            out.stopReason = reason.name();
+            out.message = "stopped: " + reason.name().toLowerCase();
+        } catch (Exception ex) {
+            out.ok = false;
+            out.message = "run failed: " + ex.getMessage();
+        }
+        out.executed = machineSic.getInstructionCount() - before;
+        out.instructionCount = machineSic.getInstructionCount();
+        out.registers = snapshotRegistersSic();
+        return gson.toJson(out);
+    }
+
+    @Override
+    public void setUndoSteps(int steps) {
+        machineSic.setUndoCapacity(steps);
+    }
+
+    @Override
+    public long undoLogBytes() {
+        UndoLog log = machineSic.getUndoLog();
+        return log == null ? 0 : (long) log.capacity() * UndoLog.BYTES_PER_ENTRY;
+    }
+
+    @Override
+    public String stepBack() {
+        if (machineSic.getUndoLog() == null) return stepBackJsonSic(false, "Step back is off, begin with undoSteps > 0.", null, 0);
+        if (!machineSic.stepBack()) return stepBackJsonSic(false, "Nothing to undo.", null, 0);
+        return stepBackJsonSic(true, "stepped back", null, 1);
+    }
+
+    @Override
+    public String runBackTo(Integer address, long maxInstructions) {
+        if (machineSic.getUndoLog() == null) return stepBackJsonSic(false, "Step back is off, begin with undoSteps > 0.", null, 0);
+        String reason = "LIMIT";
+        long undone = 0;
+        while (undone < maxInstructions) {
+            if (!machineSic.stepBack()) {
+                reason = "START";
+                break;
+            }
+            undone++;
+            int pc = machineSic.registers.getPC();
+            if (address != null && pc == address) {
+                reason = "ADDRESS";
+                break;
+            }
+            if (executorSic.breakpoints.has(pc)) {
+                reason = "BREAKPOINT";
+                break;
+            }
+        }
+        return stepBackJsonSic(true, "stopped: " + reason.toLowerCase(), reason, undone);
+    }
+
+    private String stepBackJsonSic(boolean ok, String message, String stopReason, long undone) {
+        StepBackResult out = new StepBackResult();
+        out.ok = ok;
+        out.message = message;
+        out.stopReason = stopReason;
+        out.undone = undone;
+        out.undoAvailable = machineSic.getUndoLog() == null ? 0 : machineSic.getUndoLog().size();
+        out.instructionCount = machineSic.getInstructionCount();
+        out.registers = snapshotRegistersSic();
+        return gson.toJson(out);
+    }
+
+    @Override
+    public String traceStart(String file, long capacity) {
+        traceStop();
+        try {
+            traceSic = file == null ? ExecutionTrace.offHeap(capacity) : ExecutionTrace.mapped(Path.of(file), capacity);
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            traceSic = null;
+            traceFileSic = null;
+            return traceJsonSic(false, "Could not start the trace: " + e.getMessage(), null, null);
+        }
+        traceFileSic = file;
+        machineSic.setTrace(traceSic);
+        return traceJsonSic(true, "tracing", null, null);
+    }
+
+    @Override
+    public long memoryBytes() {
+        return machineSic.memoryBytes(loadedSnapshotSic, savedSnapshotSic);
+    }
+
+    @Override
+    public long traceBytes() {
+        return traceSic == null || traceFileSic != null ? 0 : traceSic.capacity() * ExecutionTrace.RECORD_BYTES;
+    }
+
+    @Override
+    public String traceStop() {
+        if (machineSic.getTrace() == null) return traceJsonSic(true, "not tracing", null, null);
+        machineSic.setTrace(null);
+        try {
+            traceSic.close();
+        } catch (IOException e) {
+            return traceJsonSic(false, "Could not write the trace file: " + e.getMessage(), null, null);
+        }
+        return traceJsonSic(true, "stopped", null, null);
+    }
+
+    @Override
+    public String trace(Long from, Long before, Integer last, int limit, Integer start, Integer end) {
+        if (traceSic == null) return traceJsonSic(false, "No trace, start one with /trace/start.", null, null);
+        ExecutionTrace t = traceSic;
+        long first = t.first();
+        long recorded = t.recorded();
+        List<TraceRecord> records = new ArrayList<>();
+        Long next = null;
+        // a filter may match few records, the scan stops after TRACE_SCAN and next tells where to go on
+        if (last != null) {
+            // the newest matching records before `before`, oldest first; next continues further back
+            long n = before == null ? recorded : Math.min(before, recorded);
+            long stop = Math.max(first, n - TRACE_SCAN);
+            while (n > stop && records.size() < last) {
+                n--;
+                if (traceMatchesSic(t, n, start, end)) records.add(traceRecordSic(t, n));
+            }
+            Collections.reverse(records);
+            if (n > first) next = n;
+        } else {
+            long n = from == null ? first : Math.max(from, first);
+            long stop = Math.min(recorded, n + TRACE_SCAN);
+            for (; n < stop && records.size() < limit; n++)
+                if (traceMatchesSic(t, n, start, end)) records.add(traceRecordSic(t, n));
+            if (n < recorded) next = n;
+        }
+        return traceJsonSic(true, records.size() + " record(s)", records, next);
+    }
+
+    // the instruction is at the range, refers to it or accesses it
+    private static boolean traceMatchesSic(ExecutionTrace t, long n, Integer start, Integer end) {
+        if (start == null && end == null) return true;
+        int lo = start == null ? 0 : start;
+        int hi = end == null ? Integer.MAX_VALUE : end;
+        int pc = t.pc(n), target = t.target(n), address = t.accessAddress(n);
+        return (pc >= lo && pc <= hi)
+                || (target >= lo && target <= hi)
+                || (address >= 0 && address <= hi && address + t.accessLength(n) > lo);
+    }
+
+    private static TraceRecord traceRecordSic(ExecutionTrace t, long n) {
+        TraceRecord r = new TraceRecord();
+        r.n = n;
+        r.pc = t.pc(n);
+        r.opcode = t.opcode(n);
+        r.mnemonic = sic.common.Opcode.getName(r.opcode & 0xFC);
+        r.size = t.size(n);
+        if (t.target(n) >= 0) r.target = t.target(n);
+        if (t.access(n) != ExecutionTrace.NONE) {
+            r.access = t.access(n) == ExecutionTrace.READ ? "read" : "write";
+            r.address = t.accessAddress(n);
+            r.length = t.accessLength(n);
+        }
+        return r;
+    }
+
+    private String traceJsonSic(boolean ok, String message, List<TraceRecord> records, Long next) {
+        TraceResult out = new TraceResult();
+        out.ok = ok;
+        out.message = message;
+        out.tracing = machineSic.getTrace() != null;
+        if (traceSic != null) {
+            out.file = traceFileSic;
+            out.capacity = traceSic.capacity();
+            out.recorded = traceSic.recorded();
+            out.first = traceSic.first();
+        }
+        out.next = next;
+        out.records = records;
+        return gson.toJson(out);
+    }
+
+    @Override
+    public String snapshot() {
+        savedSnapshotSic = machineSic.snapshot();
+        return snapshotJsonSic(true, "snapshot taken");
+    }
+
+    @Override
+    public String restore(boolean loaded) {
+        Machine.Snapshot snapshot = loaded || savedSnapshotSic == null ? loadedSnapshotSic : savedSnapshotSic;
+        if (snapshot == null) return snapshotJsonSic(false, "Nothing to restore, load a program first.");
+        machineSic.restore(snapshot);
+        return snapshotJsonSic(true, snapshot == loadedSnapshotSic ? "restored the loaded program" : "restored the snapshot");
+    }
+
+    private String snapshotJsonSic(boolean ok, String message) {
+        SnapshotResult out = new SnapshotResult();
+        out.ok = ok;
+        out.message = message;
+        out.instructionCount = machineSic.getInstructionCount();
+        out.registers = snapshotRegistersSic();
+        return gson.toJson(out);
+    }
+
+    @Override
+    public String breakpointsSet(int[] addresses) {
+        for (int a : addresses) executorSic.breakpoints.add(a);
+        return breakpointsJson(executorSic.breakpoints.toArray());
+    }
+
+    @Override
+    public String breakpointsClear(int[] addresses) {
+        if (addresses == null) executorSic.breakpoints.removeAll();
+        else for (int a : addresses) executorSic.breakpoints.remove(a);
+        return breakpointsJson(executorSic.breakpoints.toArray());
+    }
+
+    @Override
+    public String breakpointsList() {
+        return breakpointsJson(executorSic.breakpoints.toArray());
+    }
 }
@@ -7,6 +7,7 @@ import sicxe.asm.ujs.Listing;
 import sicxe.asm.ujs.Relocations;
 import sicxe.asm.Assembler;
 import sicxe.asm.ErrorCatcher;
+import sicxe.asm.parsing.ParsedSource;
 import sicxe.ast.Program;
 import sicxe.ast.StorageSymbol;
 import sicxe.common.Utils;
@@ -15,17 +16,29 @@ import sicxe.loader.Loader;
 import sicxe.sim.Args;
 import sicxe.sim.Executor;
 import sicxe.sim.vm.Machine;
+import sicxe.sim.vm.ExecutionTrace;
+import sicxe.sim.vm.PageGenerations;
+import sicxe.sim.vm.UndoLog;
 
 import sicxe.link.Linker;
 import sicxe.link.Options;
 import sicxe.link.LinkerError;
+import sicxe.link.utils.BinaryObject;
 
 import static com.sicserver.data.DTO.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
 
 /**
  * Base implementation backed by sicxe.* engine.
@@ -38,11 +51,27 @@ public class SicxeSimulation implements Simulation {
     protected final Machine machine;
     protected final Executor executor;
     protected Program lastProgram;
+    // machine states for /restore: right after the last successful load and the last /snapshot
+    private Machine.Snapshot loadedSnapshot;
+    private Machine.Snapshot savedSnapshot;
+    // the last started trace, still readable after /trace/stop
+    private ExecutionTrace trace;
+    private String traceFile;
+
+    // parsed sources of the last checked files, so /syntax-check reparses only what was edited
+    private static final int PARSED_SOURCES = 16;
+    private final Map<String, ParsedSource> parsedSources = new LinkedHashMap<>(PARSED_SOURCES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ParsedSource> eldest) {
+            return size() > PARSED_SOURCES;
+        }
+    };
 
     public SicxeSimulation() {
         this.gson = new GsonBuilder().disableHtmlEscaping().create();
         Args processedArgs = new Args(new String[0]);
         this.machine = new Machine();
+        this.machine.setSpanTracking(false); // no endpoint reports the last read/write spans
         this.executor = new Executor(machine, processedArgs);
     }
 
@@ -102,6 +131,175 @@ public class SicxeSimulation implements Simulation {
         }
     }
 
+    // write the file unless it already holds the content, as when unchanged sources are loaded again
+    protected static void writeStringIfChanged(File f, String content) throws IOException {
+        try {
+            if (f.isFile() && f.length() == content.length() && content.equals(Files.readString(f.toPath()))) return;
+        } catch (IOException e) {
+            // not readable as text, write it
+        }
+        writeString(f, content);
+    }
+
+    // writes the .obj files of loads in the background, one after another
+    private static final ExecutorService OBJ_WRITER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "obj-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Write an .obj file as a side output of a load; the load itself works from memory.
+     * Failures are only logged.
+     */
+    protected static void writeInBackground(File f, Supplier<String> content) {
+        OBJ_WRITER.execute(() -> {
+            try {
+                writeStringIfChanged(f, content.get());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not write " + f + ": " + e.getMessage());
+            }
+        });
+    }
+
+    protected static void writeInBackground(File f, String content) {
+        writeInBackground(f, () -> content);
+    }
+
+    /* ---------- parallel assembly (reused by subclass) ---------- */
+
+    // assembles the files of a /load in parallel, shared by all simulations
+    private static final ExecutorService ASSEMBLERS = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())), task -> {
+                Thread thread = new Thread(task, "assembler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    protected interface Assembly<T> {
+        T assemble(File f) throws Exception;
+    }
+
+    /**
+     * Start assembling every readable .asm file, in parallel when there are several.
+     * @return the assemblies in the order of the paths, null for paths that are not assembled.
+     */
+    protected static <T> List<Future<T>> assembleAll(String[] filePaths, Assembly<T> assembly) {
+        List<FutureTask<T>> tasks = new ArrayList<>(filePaths.length);
+        int count = 0;
+        for (String path : filePaths) {
+            FutureTask<T> task = null;
+            if (path != null && !path.isBlank()) {
+                File f = new File(path);
+                if (f.exists() && f.canRead() && "asm".equalsIgnoreCase(Utils.getFileExtension(f.getName()))) {
+                    task = new FutureTask<>(() -> assembly.assemble(f));
+                    count++;
+                }
+            }
+            tasks.add(task);
+        }
+        for (FutureTask<T> task : tasks) {
+            if (task == null) continue;
+            if (count > 1) ASSEMBLERS.execute(task);
+            else task.run();
+        }
+        return new ArrayList<>(tasks);
+    }
+
+    // wait for an assembly, throwing what it threw
+    protected static <T> T join(Future<T> assembly) throws Exception {
+        if (assembly == null) throw new IOException("File not found or cannot be read");
+        try {
+            return assembly.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    /* ---------- artifacts kept across loads, see ArtifactCache ---------- */
+
+    // an assembled source: errors, or the program with its object text and listing
+    private static final class Assembled {
+        final List<AssemblerError> errors;
+        final Program program;
+        final String objText;
+        final byte[] binary;                // loads as the text does, null if it would not
+        final Listing listing;              // not relocated, copy it to relocate
+
+        Assembled(String source, String fileName) throws IOException {
+            Assembler assembler = new Assembler();
+            ErrorCatcher catcher = assembler.errorCatcher;
+            Program program = assembler.assemble(source);
+
+            if (catcher.count() > 0) {
+                this.errors = catcher.errs.stream().map(err -> {
+                    AssemblerError ae = new AssemblerError();
+                    ae.row = err.loc.row;
+                    ae.col = err.loc.col;
+                    ae.length = err.length;
+                    ae.message = err.getMessage();
+                    return ae;
+                }).toList();
+                this.program = null;
+                this.objText = null;
+                this.binary = null;
+                this.listing = null;
+                return;
+            }
+
+            this.errors = null;
+            this.program = program;
+            try (Writer w = new StringWriter()) {
+                assembler.generateObj(program, w, false);
+                this.objText = w.toString();
+            }
+            this.binary = loadableBinary(objText);
+            this.listing = new Listing(program, fileName);
+        }
+
+        // the first section as a binary object, unless the text loader stops at its D or R records
+        private static byte[] loadableBinary(String objText) {
+            try {
+                List<Section> sections = BinaryObject.fromText(objText);
+                if (sections.isEmpty()) return null;
+                Section first = sections.get(0);
+                if (!first.getExtDefs().isEmpty() || !first.getExtRefs().isEmpty()) return null;
+                return BinaryObject.write(List.of(first));
+            } catch (LinkerError | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    // a linked program: the section and where the linker put the input sections
+    private static final class Linked {
+        final Section section;
+        final Relocations relocations;
+        private String objText;             // formatted for the .obj file when first written
+
+        Linked(Section section, Relocations relocations) {
+            this.section = section;
+            this.relocations = relocations;
+        }
+
+        synchronized String objText(Options options) {
+            if (objText == null) objText = new sicxe.link.utils.Writer(section, options).toText();
+            return objText;
+        }
+    }
+
+    // assemble the source, or take what an earlier load assembled from the same file
+    private static Assembled assemble(String source, String fileName) throws IOException {
+        String key = ArtifactCache.key("sicxe-asm", fileName, source);
+        Assembled assembled = ArtifactCache.SHARED.get(key);
+        if (assembled == null) {
+            assembled = new Assembled(source, fileName);
+            ArtifactCache.SHARED.put(key, assembled, (long) ArtifactCache.BYTES_PER_CHAR * source.length());
+        }
+        return assembled;
+    }
+
     private EngineListingDTO listingToDTO(Listing listing) {
         SicxeListingDTO dto = new SicxeListingDTO();
         dto.codeFileName = listing.codeFileName;
@@ -143,6 +341,9 @@ public class SicxeSimulation implements Simulation {
 
         LoadResult aggregate = new LoadResult();
         aggregate.files = new ArrayList<>();
+        if (machine.getUndoLog() != null) machine.getUndoLog().clear();
+        if (trace != null) trace.clear();
+        loadedSnapshot = savedSnapshot = null;
 
         if (filePaths == null || filePaths.length == 0) {
             aggregate.ok = false;
@@ -176,8 +377,12 @@ public class SicxeSimulation implements Simulation {
 
         boolean multi = filePaths.length > 1;
         List<String> generatedObjPaths = new ArrayList<>();
+        List<String> generatedObjTexts = new ArrayList<>();
 
-        for (String path : filePaths) {
+        List<Future<Assembled>> assemblies =
+                assembleAll(filePaths, f -> assemble(Files.readString(f.toPath()), f.getName()));
+        for (int i = 0; i < filePaths.length; i++) {
+            String path = filePaths[i];
             FileLoadResult perFile = new FileLoadResult();
             perFile.fileName = path;
             aggregate.files.add(perFile);
@@ -202,40 +407,28 @@ public class SicxeSimulation implements Simulation {
             String ext = Utils.getFileExtension(f.getName());
             try {
                 if ("asm".equalsIgnoreCase(ext)) {
-                    String source = Files.readString(f.toPath());
-                    Assembler assembler = new Assembler();
-                    ErrorCatcher catcher = assembler.errorCatcher;
-                    Program program = assembler.assemble(source);
-
-                    if (catcher.count() > 0) {
-                        perFile.assemblerErrors = catcher.errs.stream().map(err -> {
-                            AssemblerError ae = new AssemblerError();
-                            ae.row = err.loc.row;
-                            ae.col = err.loc.col;
-                            ae.length = err.length;
-                            ae.message = err.getMessage();
-                            return ae;
-                        }).toList();
+                    Assembled assembled = join(assemblies.get(i));
+
+                    if (assembled.errors != null) {
+                        perFile.assemblerErrors = assembled.errors;
                         this.lastProgram = null;
                         continue;
                     }
 
-                    String objText;
-                    try (Writer w = new StringWriter()) {
-                        assembler.generateObj(program, w, false);
-                        objText = w.toString();
-                    }
                     File objOut = new File(outDir, baseNameNoExt(f) + ".obj");
-                    writeString(objOut, objText);
+                    writeInBackground(objOut, assembled.objText);
                     generatedObjPaths.add(objOut.getAbsolutePath());
+                    generatedObjTexts.add(assembled.objText);
 
-                    Listing listing = new Listing(program, f.getName());
-                    builtListings.put(perFile.fileName, listing);
-                    perFile.listing = listingToDTO(listing);
+                    builtListings.put(perFile.fileName, assembled.listing);
+                    perFile.listing = listingToDTO(assembled.listing);
 
                     if (!multi) {
-                        Loader.loadSection(executor.machine, new StringReader(objText));
-                        this.lastProgram = program;
+                        if (assembled.binary != null)
+                            Loader.loadBinary(executor.machine, ByteBuffer.wrap(assembled.binary));
+                        else
+                            Loader.loadSection(executor.machine, new StringReader(assembled.objText));
+                        this.lastProgram = assembled.program;
                     }
 
                 } else if ("obj".equalsIgnoreCase(ext)) {
@@ -274,17 +467,36 @@ public class SicxeSimulation implements Simulation {
                 options.setVerbose(verbose == null ? true : verbose);
                 if (mainSymbol != null && !mainSymbol.isBlank()) options.setMain(mainSymbol);
 
-                Linker linker = new Linker(generatedObjPaths, options);
-                Section linkedSection = linker.link();
-                sicxe.link.utils.Writer writer = new sicxe.link.utils.Writer(linkedSection, options);
-                File file = writer.write();
+                // the same objects linked the same way give the same result; the UI may change it
+                String linkKey = null;
+                if (!options.isGraphical() && !options.isEditing()) {
+                    List<String> parts = new ArrayList<>(List.of(resolvedOutputName, String.valueOf(options.getMain()),
+                            String.valueOf(options.isKeep()), String.valueOf(options.isForce())));
+                    parts.addAll(generatedObjPaths);
+                    parts.addAll(generatedObjTexts);
+                    linkKey = ArtifactCache.key("sicxe-link", parts.toArray(new String[0]));
+                }
+                Linked linked = linkKey == null ? null : ArtifactCache.SHARED.get(linkKey);
+                if (linked == null) {
+                    // the linker reads the object texts from memory, not from the files written above
+                    Linker linker = new Linker(generatedObjPaths, generatedObjTexts, options);
+                    linked = new Linked(linker.link(), linker.relocations);
+                    if (linkKey != null) {
+                        long size = 0;
+                        for (String objText : generatedObjTexts) size += objText.length();
+                        ArtifactCache.SHARED.put(linkKey, linked, ArtifactCache.BYTES_PER_CHAR * size);
+                    }
+                }
+                Linked written = linked;
+                writeInBackground(new File(resolvedOutputPath), () -> written.objText(options));
 
-                Relocations relocs = linker.relocations;
+                Relocations relocs = linked.relocations;
                 if (relocs != null) {
                     for (FileLoadResult fr : aggregate.files) {
                         if (fr.listing != null) {
-                            Listing listingObj = builtListings.get(fr.fileName);
-                            if (listingObj != null) {
+                            Listing built = builtListings.get(fr.fileName);
+                            if (built != null) {
+                                Listing listingObj = new Listing(built);    // the built one may be cached
                                 listingObj.relocate(relocs);
                                 fr.listing = listingToDTO(listingObj);
                             }
@@ -292,8 +504,7 @@ public class SicxeSimulation implements Simulation {
                     }
                 }
 
-                String linkedObjText = Files.readString(file.toPath());
-                Loader.loadSection(executor.machine, new StringReader(linkedObjText));
+                Loader.loadSection(executor.machine, linked.section);
 
             } catch (LinkerError le) {
                 for (FileLoadResult fr : aggregate.files) {
@@ -309,20 +520,6 @@ public class SicxeSimulation implements Simulation {
                 aggregate.message = "Linking failed : " + le.getMessage();
                 aggregate.registers = snapshotRegisters();
                 return gson.toJson(aggregate);
-            } catch (IOException ioe) {
-                for (FileLoadResult fr : aggregate.files) {
-                    if (fr.assemblerErrors == null || fr.assemblerErrors.isEmpty()) {
-                        fr.listing = null;
-                        LinkerErrorDto leDto = new LinkerErrorDto();
-                        leDto.phase = "iodevices";
-                        leDto.msg = ioe.getMessage();
-                        fr.linkerError = leDto;
-                    }
-                }
-                aggregate.ok = false;
-                aggregate.message = "I/O error during linking: " + ioe.getMessage();
-                aggregate.registers = snapshotRegisters();
-                return gson.toJson(aggregate);
             }
         }
 
@@ -335,10 +532,23 @@ public class SicxeSimulation implements Simulation {
         }
         aggregate.ok = okAll;
         if (aggregate.message == null) aggregate.message = okAll ? "OK" : "Completed with errors.";
+        if (okAll) loadedSnapshot = machine.snapshot();     // /restore reruns from here without loading again
         aggregate.registers = snapshotRegisters();
         return gson.toJson(aggregate);
     }
 
+    private ParsedSource parsedSource(String fileName) {
+        synchronized (parsedSources) {
+            return parsedSources.computeIfAbsent(fileName, name -> new ParsedSource());
+        }
+    }
+
+    private void forgetParsedSource(String fileName) {
+        synchronized (parsedSources) {
+            parsedSources.remove(fileName);
+        }
+    }
+
     @Override
     public String syntaxCheck(String[] texts, String[] fileNames) {
         SyntaxCheckResult out = new SyntaxCheckResult();
@@ -358,10 +568,13 @@ public class SicxeSimulation implements Simulation {
             SyntaxCheckFileResult per = new SyntaxCheckFileResult();
             per.fileName = name;
 
+            ParsedSource parsed = parsedSource(name);
             try {
                 Assembler assembler = new Assembler();
                 ErrorCatcher catcher = assembler.errorCatcher;
-                assembler.assemble(src);
+                synchronized (parsed) {
+                    assembler.check(src, parsed);
+                }
 
                 if (catcher.count() > 0) {
                     per.ok = false;
@@ -384,6 +597,7 @@ public class SicxeSimulation implements Simulation {
                     per.assemblerErrors = null;
                 }
             } catch (Exception e) {
+                forgetParsedSource(name);
                 per.ok = false;
                 per.assemblerErrors = new ArrayList<>();
                 AssemblerError ce = new AssemblerError();
@@ -433,6 +647,14 @@ public class SicxeSimulation implements Simulation {
         }
     }
 
+    @Override
+    public byte[] memoryBin(int start, int endInclusive, Long since) {
+        PageGenerations generations = machine.memory.generations;
+        long generation = generations.mark(); // before copying, so later writes show up in the next delta
+        return MemoryBin.encode(machine.memory::getBytesRaw, machine.memory.capacity(), start, endInclusive, generation,
+                since == null ? null : page -> generations.changedSince(page, since), PageGenerations.PAGE_SHIFT);
+    }
+
     @Override
     public String step() {
         Map<String, Object> out = new LinkedHashMap<>();
@@ -460,6 +682,249 @@ public class SicxeSimulation implements Simulation {
         return gson.toJson(out);
     }
 
+    @Override
+    public void setEngine(String engine) {
+        switch (engine) {
+            case "switch" -> machine.setEngine(Machine.Engine.SWITCH);
+            case "table" -> machine.setEngine(Machine.Engine.TABLE);
+            case "jit" -> machine.setEngine(Machine.Engine.JIT);
+            default -> throw new IllegalArgumentException("Unknown engine: \"" + engine + "\" (use \"switch\", \"table\" or \"jit\")");
+        }
+    }
+
+    @Override
+    public String run(long maxInstructions, long timeBudgetMillis) {
+        RunResult out = new RunResult();
+        int before = machine.getInstructionCount();
+        try {
+            Executor.StopReason reason = executor.runBatch(maxInstructions, timeBudgetMillis * 1_000_000L);
+            out.ok = true;
+            out.stopReason = reason.name();
+            out.message = "stopped: " + reason.name().toLowerCase();
+        } catch (Exception ex) {
+            out.ok = false;
+            out.message = "run failed: " + ex.getMessage();
+        }
+        out.executed = machine.getInstructionCount() - before;
+        out.instructionCount = machine.getInstructionCount();
+        out.decodeCacheHits = machine.getDecodeCache().getHits();
+        out.decodeCacheMisses = machine.getDecodeCache().getMisses();
+        out.registers = snapshotRegisters();
+        return gson.toJson(out);
+    }
+
+    @Override
+    public void setUndoSteps(int steps) {
+        machine.setUndoCapacity(steps);
+    }
+
+    @Override
+    public long undoLogBytes() {
+        UndoLog log = machine.getUndoLog();
+        return log == null ? 0 : (long) log.capacity() * UndoLog.BYTES_PER_ENTRY;
+    }
+
+    @Override
+    public String stepBack() {
+        if (machine.getUndoLog() == null) return stepBackJson(false, "Step back is off, begin with undoSteps > 0.", null, 0);
+        if (!machine.stepBack()) return stepBackJson(false, "Nothing to undo.", null, 0);
+        return stepBackJson(true, "stepped back", null, 1);
+    }
+
+    @Override
+    public String runBackTo(Integer address, long maxInstructions) {
+        if (machine.getUndoLog() == null) return stepBackJson(false, "Step back is off, begin with undoSteps > 0.", null, 0);
+        String reason = "LIMIT";
+        long undone = 0;
+        while (undone < maxInstructions) {
+            if (!machine.stepBack()) {
+                reason = "START";
+                break;
+            }
+            undone++;
+            int pc = machine.registers.getPC();
+            if (address != null && pc == address) {
+                reason = "ADDRESS";
+                break;
+            }
+            if (executor.breakpoints.has(pc)) {
+                reason = "BREAKPOINT";
+                break;
+            }
+        }
+        return stepBackJson(true, "stopped: " + reason.toLowerCase(), reason, undone);
+    }
+
+    private String stepBackJson(boolean ok, String message, String stopReason, long undone) {
+        StepBackResult out = new StepBackResult();
+        out.ok = ok;
+        out.message = message;
+        out.stopReason = stopReason;
+        out.undone = undone;
+        out.undoAvailable = machine.getUndoLog() == null ? 0 : machine.getUndoLog().size();
+        out.instructionCount = machine.getInstructionCount();
+        out.registers = snapshotRegisters();
+        return gson.toJson(out);
+    }
+
+    @Override
+    public String traceStart(String file, long capacity) {
+        traceStop();
+        try {
+            trace = file == null ? ExecutionTrace.offHeap(capacity) : ExecutionTrace.mapped(Path.of(file), capacity);
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            trace = null;
+            traceFile = null;
+            return traceJson(false, "Could not start the trace: " + e.getMessage(), null, null);
+        }
+        traceFile = file;
+        machine.setTrace(trace);
+        return traceJson(true, "tracing", null, null);
+    }
+
+    @Override
+    public long memoryBytes() {
+        return machine.memoryBytes(loadedSnapshot, savedSnapshot);
+    }
+
+    @Override
+    public long traceBytes() {
+        return trace == null || traceFile != null ? 0 : trace.capacity() * ExecutionTrace.RECORD_BYTES;
+    }
+
+    @Override
+    public String traceStop() {
+        if (machine.getTrace() == null) return traceJson(true, "not tracing", null, null);
+        machine.setTrace(null);
+        try {
+            trace.close();
+        } catch (IOException e) {
+            return traceJson(false, "Could not write the trace file: " + e.getMessage(), null, null);
+        }
+        return traceJson(true, "stopped", null, null);
+    }
+
+    @Override
+    public String trace(Long from, Long before, Integer last, int limit, Integer start, Integer end) {
+        if (trace == null) return traceJson(false, "No trace, start one with /trace/start.", null, null);
+        ExecutionTrace t = trace;
+        long first = t.first();
+        long recorded = t.recorded();
+        List<TraceRecord> records = new ArrayList<>();
+        Long next = null;
+        // a filter may match few records, the scan stops after TRACE_SCAN and next tells where to go on
+        if (last != null) {
+            // the newest matching records before `before`, oldest first; next continues further back
+            long n = before == null ? recorded : Math.min(before, recorded);
+            long stop = Math.max(first, n - TRACE_SCAN);
+            while (n > stop && records.size() < last) {
+                n--;
+                if (traceMatches(t, n, start, end)) records.add(traceRecord(t, n));
+            }
+            Collections.reverse(records);
+            if (n > first) next = n;
+        } else {
+            long n = from == null ? first : Math.max(from, first);
+            long stop = Math.min(recorded, n + TRACE_SCAN);
+            for (; n < stop && records.size() < limit; n++)
+                if (traceMatches(t, n, start, end)) records.add(traceRecord(t, n));
+            if (n < recorded) next = n;
+        }
+        return traceJson(true, records.size() + " record(s)", records, next);
+    }
+
+    // the instruction is at the range, refers to it or accesses it
+    private static boolean traceMatches(ExecutionTrace t, long n, Integer start, Integer end) {
+        if (start == null && end == null) return true;
+        int lo = start == null ? 0 : start;
+        int hi = end == null ? Integer.MAX_VALUE : end;
+        int pc = t.pc(n), target = t.target(n), address = t.accessAddress(n);
+        return (pc >= lo && pc <= hi)
+                || (target >= lo && target <= hi)
+                || (address >= 0 && address <= hi && address + t.accessLength(n) > lo);
+    }
+
+    private static TraceRecord traceRecord(ExecutionTrace t, long n) {
+        TraceRecord r = new TraceRecord();
+        r.n = n;
+        r.pc = t.pc(n);
+        r.opcode = t.opcode(n);
+        r.mnemonic = sicxe.common.Opcode.getName(r.opcode & 0xFC);
+        r.size = t.size(n);
+        if (t.target(n) >= 0) r.target = t.target(n);
+        if (t.access(n) != ExecutionTrace.NONE) {
+            r.access = t.access(n) == ExecutionTrace.READ ? "read" : "write";
+            r.address = t.accessAddress(n);
+            r.length = t.accessLength(n);
+        }
+        return r;
+    }
+
+    private String traceJson(boolean ok, String message, List<TraceRecord> records, Long next) {
+        TraceResult out = new TraceResult();
+        out.ok = ok;
+        out.message = message;
+        out.tracing = machine.getTrace() != null;
+        if (trace != null) {
+            out.file = traceFile;
+            out.capacity = trace.capacity();
+            out.recorded = trace.recorded();
+            out.first = trace.first();
+        }
+        out.next = next;
+        out.records = records;
+        return gson.toJson(out);
+    }
+
+    @Override
+    public String snapshot() {
+        savedSnapshot = machine.snapshot();
+        return snapshotJson(true, "snapshot taken");
+    }
+
+    @Override
+    public String restore(boolean loaded) {
+        Machine.Snapshot snapshot = loaded || savedSnapshot == null ? loadedSnapshot : savedSnapshot;
+        if (snapshot == null) return snapshotJson(false, "Nothing to restore, load a program first.");
+        machine.restore(snapshot);
+        return snapshotJson(true, snapshot == loadedSnapshot ? "restored the loaded program" : "restored the snapshot");
+    }
+
+    private String snapshotJson(boolean ok, String message) {
+        SnapshotResult out = new SnapshotResult();
+        out.ok = ok;
+        out.message = message;
+        out.instructionCount = machine.getInstructionCount();
+        out.registers = snapshotRegisters();
+        return gson.toJson(out);
+    }
+
+    @Override
+    public String breakpointsSet(int[] addresses) {
+        for (int a : addresses) executor.breakpoints.add(a);
+        return breakpointsJson(executor.breakpoints.toArray());
+    }
+
+    @Override
+    public String breakpointsClear(int[] addresses) {
+        if (addresses == null) executor.breakpoints.removeAll();
+        else for (int a : addresses) executor.breakpoints.remove(a);
+        return breakpointsJson(executor.breakpoints.toArray());
+    }
+
+    @Override
+    public String breakpointsList() {
+        return breakpointsJson(executor.breakpoints.toArray());
+    }
+
+    protected String breakpointsJson(int[] addresses) {
+        BreakpointsResult out = new BreakpointsResult();
+        out.ok = true;
+        out.message = addresses.length + " breakpoint(s)";
+        out.addresses = addresses;
+        return gson.toJson(out);
+    }
+
     protected Registers snapshotRegisters() {
         Registers r = new Registers();
         r.A  = machine.registers.getA();
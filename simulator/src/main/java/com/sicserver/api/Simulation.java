@@ -17,6 +17,40 @@ public interface Simulation {
 
     String memory(int start);
     String memory(int start, Integer endInclusive);
+    // raw memory for /memory.bin (see MemoryBin); with since only the pages written after that generation
+    byte[] memoryBin(int start, int endInclusive, Long since);
 
     String step();
+
+    String run(long maxInstructions, long timeBudgetMillis);
+
+    // reverse execution through the undo log of the last instructions (steps 0 turns it off);
+    // run-back-to undoes until PC is at the address or a breakpoint, null only stops at breakpoints
+    void setUndoSteps(int steps);
+    long undoLogBytes();
+    // memory pages the machine and its snapshots hold, a shared page counted once
+    long memoryBytes();
+    String stepBack();
+    String runBackTo(Integer address, long maxInstructions);
+
+    // binary trace of every executed instruction, to a file mapped into memory or (file null) off-heap;
+    // the query pages forward from a record number or returns the last records before one, only those
+    // touching start..end, and scans at most TRACE_SCAN records per call
+    int TRACE_SCAN = 1 << 20;
+    String traceStart(String file, long capacity);
+    long traceBytes();      // off-heap memory of the trace, a file trace takes none
+    String traceStop();
+    String trace(Long from, Long before, Integer last, int limit, Integer start, Integer end);
+
+    // saves the machine state; one is also taken after every successful load
+    String snapshot();
+    // back to the last saved state, or with loaded to the state right after the load
+    String restore(boolean loaded);
+
+    String breakpointsSet(int[] addresses);
+    String breakpointsClear(int[] addresses); // null clears all
+    String breakpointsList();
+
+    // interpreter engine, "switch" (default), "table" or "jit"; throws IllegalArgumentException for unknown ones
+    void setEngine(String engine);
 }
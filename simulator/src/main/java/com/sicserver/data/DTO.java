@@ -93,6 +93,80 @@ public final class DTO {
         public Registers registers;
     }
 
+    /* =========================
+     * RUN result (batched execution)
+     * ========================= */
+    /** Outcome of a server-side batched run. */
+    public static final class RunResult {
+        public boolean ok;
+        public String message;
+        public String stopReason;      // LIMIT, TIMEOUT, HALT, BREAKPOINT, DATA_BREAKPOINT
+        public long executed;          // instructions executed by this run
+        public int instructionCount;   // total instructions executed since load
+        public Long decodeCacheHits;   // sicxe only: decoded instruction cache statistics (totals)
+        public Long decodeCacheMisses;
+        public Registers registers;
+    }
+
+    /* =========================
+     * Reverse execution (undo log)
+     * ========================= */
+    public static final class StepBackResult {
+        public boolean ok;
+        public String message;
+        public String stopReason;      // run-back-to only: ADDRESS, BREAKPOINT, START (nothing left to undo), LIMIT
+        public long undone;            // instructions undone by this request
+        public int undoAvailable;      // instructions that can still be undone
+        public int instructionCount;
+        public Registers registers;
+    }
+
+    /* =========================
+     * Binary execution trace
+     * ========================= */
+    public static final class TraceRecord {
+        public long n;                 // record number, 0 is the first traced instruction
+        public int pc;
+        public int opcode;             // first instruction byte (opcode and ni flags)
+        public String mnemonic;
+        public int size;
+        public Integer target;         // effective address (operand address or jump target), null if none
+        public String access;          // "read", "write" or null
+        public Integer address;        // start of the access
+        public Integer length;
+    }
+
+    public static final class TraceResult {
+        public boolean ok;
+        public String message;
+        public boolean tracing;        // instructions are being recorded
+        public String file;            // null for an off-heap trace
+        public long capacity;          // records kept, older ones are overwritten
+        public long recorded;          // instructions traced since the trace started or the last load
+        public long first;             // oldest record still kept
+        public Long next;              // query: `from` to page on, or `before` with last; null when all are scanned
+        public List<TraceRecord> records;
+    }
+
+    /* =========================
+     * Snapshot / restore of the machine state
+     * ========================= */
+    public static final class SnapshotResult {
+        public boolean ok;
+        public String message;
+        public int instructionCount;   // of the machine after the request
+        public Registers registers;
+    }
+
+    /* =========================
+     * Breakpoints (server-owned)
+     * ========================= */
+    public static final class BreakpointsResult {
+        public boolean ok;
+        public String message;
+        public int[] addresses;        // all breakpoints after the request, ascending
+    }
+
     /* =========================
      * SYNTAX CHECK results (multi-file, no linking)
      * ========================= */
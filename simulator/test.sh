@@ -15,15 +15,18 @@ curl -sS "http://127.0.0.1:8080/memory?addr=0x0000" | jq
 # 3) memory read (range, inclusive)
 curl -sS "http://127.0.0.1:8080/memory?start=0x0000&end=0x003F" | jq
 
-# 4) toggle a breakpoint (example 0x0030 from your STL/PC-rel case)
-curl -sS -X POST "http://127.0.0.1:8080/breakpoint?addr=0x0030" | jq   # set
-curl -sS -X POST "http://127.0.0.1:8080/breakpoint?addr=0x0030" | jq   # clear
+# 4) set / clear a breakpoint (example 0x0030 from your STL/PC-rel case)
+curl -sS -X POST "http://127.0.0.1:8080/breakpoints/set" -d '{"addr":"0x0030"}' | jq
+curl -sS -X POST "http://127.0.0.1:8080/breakpoints/clear" -d '{"addr":"0x0030"}' | jq
 
 # 5) single step
 curl -sS -X POST "http://127.0.0.1:8080/step" | jq
 # step a few times and watch PC
 for i in {1..5}; do curl -sS -X POST "http://127.0.0.1:8080/step" | jq -r '.registers.PC'; done
 
+# 5b) batched run until halt / breakpoint / limit
+curl -sS -X POST "http://127.0.0.1:8080/run" -d '{"maxInstructions":1000000,"timeBudgetMs":500}' | jq
+
 # 6) load OBJ (success/failure only)
 curl -sS -X POST "http://127.0.0.1:8080/load?filepath=/Users/codehotel/projects/SicTools/tests/sample.obj" | jq
 